@@ -0,0 +1,60 @@
+package com.tup.examen.config;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.spi.RegionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.net.URI;
+import java.util.OptionalLong;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Regiones de la caché de segundo nivel de Hibernate (JCache sobre Caffeine). Se crean acá con su tamaño y
+// vencimiento, y Hibernate falla al arrancar si alguna región que necesita no está configurada
+@Configuration
+public class CacheSegundoNivelConfig {
+    
+    public static final String REGION_PIEZAS = "piezas";
+    public static final String REGION_CONSULTAS_PIEZAS = "piezas-consultas";
+    
+    @Bean(destroyMethod = "close")
+    public CacheManager cacheManagerSegundoNivel(
+            @Value("${cache.segundo-nivel.piezas.tamano-maximo:10000}") long tamanoPiezas,
+            @Value("${cache.segundo-nivel.piezas.ttl-segundos:600}") long ttlPiezas,
+            @Value("${cache.segundo-nivel.consultas.tamano-maximo:1000}") long tamanoConsultas,
+            @Value("${cache.segundo-nivel.consultas.ttl-segundos:300}") long ttlConsultas) {
+        // Un CacheManager propio por contexto: el proveedor comparte los que tienen la misma URI
+        CacheManager cacheManager = Caching.getCachingProvider(CaffeineCachingProvider.class.getName())
+                .getCacheManager(URI.create("examen-segundo-nivel-" + UUID.randomUUID()), getClass().getClassLoader());
+        cacheManager.createCache(REGION_PIEZAS, region(tamanoPiezas, ttlPiezas));
+        cacheManager.createCache(REGION_CONSULTAS_PIEZAS, region(tamanoConsultas, ttlConsultas));
+        cacheManager.createCache(RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME,
+                region(tamanoConsultas, ttlConsultas));
+        // Las marcas de última modificación por tabla invalidan las consultas cacheadas: no deben desalojarse
+        cacheManager.createCache(RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME,
+                new CaffeineConfiguration<>().setStatisticsEnabled(true));
+        return cacheManager;
+    }
+    
+    @Bean
+    public HibernatePropertiesCustomizer hibernateCacheSegundoNivel(CacheManager cacheManagerSegundoNivel) {
+        return propiedades -> {
+            propiedades.put(ConfigSettings.CACHE_MANAGER, cacheManagerSegundoNivel);
+            propiedades.put(ConfigSettings.MISSING_CACHE_STRATEGY, "fail");
+        };
+    }
+    
+    private static CaffeineConfiguration<Object, Object> region(long tamanoMaximo, long ttlSegundos) {
+        return new CaffeineConfiguration<>()
+                .setMaximumSize(OptionalLong.of(tamanoMaximo))
+                .setExpireAfterWrite(OptionalLong.of(TimeUnit.SECONDS.toNanos(ttlSegundos)))
+                .setStatisticsEnabled(true);
+    }
+}
@@ -1,12 +1,16 @@
 package com.tup.examen.config;
 
+import com.tup.examen.model.MovimientoStock;
 import com.tup.examen.model.Pieza;
 import com.tup.examen.repository.PiezaRepository;
+import com.tup.examen.service.LibroStock;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.stereotype.Component;
 
 import java.math.BigDecimal;
+import java.util.List;
+import java.util.stream.Collectors;
 
 @Component
 public class DataInitializer implements CommandLineRunner {
@@ -14,6 +18,9 @@ public class DataInitializer implements CommandLineRunner {
     @Autowired
     private PiezaRepository piezaRepository;
     
+    @Autowired
+    private LibroStock libroStock;
+    
     @Override
     public void run(String... args) throws Exception {
         // Cargar datos de ejemplo si la base de datos está vacía
@@ -33,7 +40,6 @@ public class DataInitializer implements CommandLineRunner {
         pieza1.setMarca("Bosch");
         pieza1.setModelo("Universal");
         pieza1.setCategoria("Motor");
-        piezaRepository.save(pieza1);
         
         Pieza pieza2 = new Pieza();
         pieza2.setNombre("Bujía de Encendido");
@@ -44,7 +50,6 @@ public class DataInitializer implements CommandLineRunner {
         pieza2.setMarca("NGK");
         pieza2.setModelo("Iridium");
         pieza2.setCategoria("Motor");
-        piezaRepository.save(pieza2);
         
         // Piezas de frenos
         Pieza pieza3 = new Pieza();
@@ -56,7 +61,6 @@ public class DataInitializer implements CommandLineRunner {
         pieza3.setMarca("Brembo");
         pieza3.setModelo("Sport");
         pieza3.setCategoria("Frenos");
-        piezaRepository.save(pieza3);
         
         Pieza pieza4 = new Pieza();
         pieza4.setNombre("Disco de Freno");
@@ -67,7 +71,6 @@ public class DataInitializer implements CommandLineRunner {
         pieza4.setMarca("Brembo");
         pieza4.setModelo("Ventilated");
         pieza4.setCategoria("Frenos");
-        piezaRepository.save(pieza4);
         
         // Piezas de suspensión
         Pieza pieza5 = new Pieza();
@@ -79,7 +82,6 @@ public class DataInitializer implements CommandLineRunner {
         pieza5.setMarca("Monroe");
         pieza5.setModelo("Gas-Matic");
         pieza5.setCategoria("Suspensión");
-        piezaRepository.save(pieza5);
         
         // Piezas eléctricas
         Pieza pieza6 = new Pieza();
@@ -91,7 +93,6 @@ public class DataInitializer implements CommandLineRunner {
         pieza6.setMarca("Varta");
         pieza6.setModelo("Blue Dynamic");
         pieza6.setCategoria("Eléctrico");
-        piezaRepository.save(pieza6);
         
         // Piezas de carrocería
         Pieza pieza7 = new Pieza();
@@ -103,7 +104,6 @@ public class DataInitializer implements CommandLineRunner {
         pieza7.setMarca("OEM");
         pieza7.setModelo("Universal");
         pieza7.setCategoria("Carrocería");
-        piezaRepository.save(pieza7);
         
         // Piezas de transmisión
         Pieza pieza8 = new Pieza();
@@ -115,8 +115,12 @@ public class DataInitializer implements CommandLineRunner {
         pieza8.setMarca("Castrol");
         pieza8.setModelo("Transmax");
         pieza8.setCategoria("Transmisión");
-        piezaRepository.save(pieza8);
+        
+        // Un solo saveAll permite que Hibernate agrupe las inserciones en lotes JDBC
+        List<Pieza> piezas = piezaRepository.saveAll(List.of(pieza1, pieza2, pieza3, pieza4, pieza5, pieza6, pieza7, pieza8));
+        libroStock.registrar(piezas.stream().collect(Collectors.toMap(Pieza::getId, Pieza::getStock)),
+                MovimientoStock.TipoMovimiento.ALTA, "inicial");
         
         System.out.println("Datos de ejemplo cargados exitosamente!");
     }
-} 
\ No newline at end of file
+}
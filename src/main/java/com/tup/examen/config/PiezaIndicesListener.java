@@ -0,0 +1,50 @@
+package com.tup.examen.config;
+
+import com.tup.examen.model.Pieza;
+import com.tup.examen.service.IndicePiezas;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+// Mantiene los índices en memoria de piezas al día con cada escritura JPA, venga del servicio o no.
+// Fuera del contexto completo de la aplicación (por ejemplo en @DataJpaTest) los índices no existen y no hace nada.
+public class PiezaIndicesListener {
+    
+    @Autowired
+    private ObjectProvider<IndicePiezas> indices;
+    
+    @PostPersist
+    @PostUpdate
+    public void alGuardar(Pieza pieza) {
+        indices.forEach(indice -> {
+            indice.indexar(pieza);
+            reindexarSiSeRevierte(indice, pieza.getId());
+        });
+    }
+    
+    @PostRemove
+    public void alEliminar(Pieza pieza) {
+        indices.forEach(indice -> {
+            indice.quitar(pieza.getId());
+            reindexarSiSeRevierte(indice, pieza.getId());
+        });
+    }
+    
+    private static void reindexarSiSeRevierte(IndicePiezas indice, Long id) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    indice.marcarPendiente(id);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,38 @@
+package com.tup.examen.controller;
+
+import com.tup.examen.dto.DashboardDTO;
+import com.tup.examen.service.DashboardService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/dashboard")
+@Tag(name = "Panel principal", description = "Indicadores resumidos de inventario y facturación")
+@CrossOrigin(origins = "*")
+public class DashboardController {
+    
+    @Autowired
+    private DashboardService dashboardService;
+    
+    @GetMapping
+    @Operation(
+        summary = "Obtener indicadores del panel",
+        description = "Retorna cantidad de piezas, piezas con stock bajo, valor del inventario, cantidad de facturas y total "
+                + "de ventas pagadas. Los valores se calculan con consultas de agregación y se comparten por unos segundos"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Indicadores obtenidos exitosamente",
+            content = @Content(mediaType = "application/json",
+                schema = @Schema(implementation = DashboardDTO.class)))
+    })
+    public ResponseEntity<DashboardDTO> obtenerResumen() {
+        return ResponseEntity.ok(dashboardService.obtenerResumen());
+    }
+}
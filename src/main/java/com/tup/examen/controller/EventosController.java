@@ -0,0 +1,83 @@
+package com.tup.examen.controller;
+
+import com.tup.examen.service.DifusorEventos;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/eventos")
+@Tag(name = "Eventos en vivo", description = "Cambios de stock, precios y facturas enviados por Server-Sent Events")
+@CrossOrigin(origins = "*")
+public class EventosController {
+    
+    @Autowired
+    private DifusorEventos difusorEventos;
+    
+    @Value("${eventos.sse.timeout-ms:1800000}")
+    private long timeoutMs;
+    
+    @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(
+        summary = "Suscribirse a los cambios",
+        description = "Abre un stream SSE con eventos PIEZA_CREADA, PIEZA_ACTUALIZADA, PIEZA_ELIMINADA, STOCK_ACTUALIZADO, "
+                + "FACTURA_CREADA, FACTURA_ESTADO y CATALOGO_IMPORTADO (uno por bloque de una carga masiva). Al reconectar "
+                + "con Last-Event-ID se reenvían los eventos perdidos; si ya no están en el historial o el id es de una "
+                + "ejecución anterior del servidor se envía RESINCRONIZAR"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Stream de eventos abierto")
+    })
+    public SseEmitter suscribir(
+            @Parameter(description = "ID del último evento recibido (lo envía EventSource al reconectar)", example = "1760781600000120")
+            @RequestHeader(value = "Last-Event-ID", required = false) Long ultimoId) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        DifusorEventos.Suscripcion suscripcion = difusorEventos.suscribir(ultimoId, new CanalSse(emitter));
+        emitter.onCompletion(suscripcion::cancelar);
+        emitter.onTimeout(suscripcion::cancelar);
+        emitter.onError(error -> suscripcion.cancelar());
+        return emitter;
+    }
+    
+    @GetMapping("/estadisticas")
+    @Operation(
+        summary = "Obtener estadísticas del difusor",
+        description = "Retorna suscriptores conectados, último id emitido, eventos publicados y descartados por clientes lentos"
+    )
+    public ResponseEntity<Map<String, Object>> obtenerEstadisticas() {
+        return ResponseEntity.ok(difusorEventos.obtenerEstadisticas());
+    }
+    
+    private record CanalSse(SseEmitter emitter) implements DifusorEventos.Canal {
+        
+        @Override
+        public void enviar(DifusorEventos.EventoCambio evento) throws IOException {
+            if (evento.id() == null && evento.tipo() == null) {
+                emitter.send(SseEmitter.event().comment("latido"));
+                return;
+            }
+            SseEmitter.SseEventBuilder mensaje = SseEmitter.event().name(evento.tipo())
+                    .data(evento.datos(), MediaType.APPLICATION_JSON);
+            if (evento.id() != null) {
+                mensaje.id(String.valueOf(evento.id()));
+            }
+            emitter.send(mensaje);
+        }
+        
+        @Override
+        public void cerrar() {
+            emitter.complete();
+        }
+    }
+}
@@ -1,8 +1,15 @@
 package com.tup.examen.controller;
 
 import com.tup.examen.dto.FacturaDTO;
+import com.tup.examen.dto.FacturaResumenDTO;
+import com.tup.examen.dto.PaginaDTO;
+import com.tup.examen.dto.ResultadoFacturaLoteDTO;
 import com.tup.examen.model.Factura;
+import com.tup.examen.service.FacturaExportacionService;
+import com.tup.examen.service.FacturaLoteService;
 import com.tup.examen.service.FacturaService;
+import com.tup.examen.service.IngestaFacturas;
+import com.tup.examen.service.RegistroIdempotencia;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -13,13 +20,19 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @RestController
 @RequestMapping("/api/facturas")
@@ -27,24 +40,78 @@ import java.util.Optional;
 @CrossOrigin(origins = "*")
 public class FacturaController {
     
+    static final String ENCABEZADO_IDEMPOTENCIA = "Idempotency-Key";
+    static final String ENCABEZADO_REPETIDA = "Idempotent-Replayed";
+    
     @Autowired
     private FacturaService facturaService;
     
+    @Autowired
+    private FacturaExportacionService facturaExportacionService;
+    
+    @Autowired
+    private RegistroIdempotencia registroIdempotencia;
+    
+    @Autowired
+    private IngestaFacturas ingestaFacturas;
+    
+    @Autowired
+    private FacturaLoteService facturaLoteService;
+    
     @GetMapping
     @Operation(
         summary = "Obtener todas las facturas",
-        description = "Retorna una lista completa de todas las facturas registradas en el sistema"
+        description = "Retorna una lista completa de todas las facturas registradas en el sistema. Si se indica 'after' o 'limit' "
+                + "la respuesta se pagina por cursor y incluye el cursor de la página siguiente"
     )
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "Lista de facturas obtenida exitosamente",
             content = @Content(mediaType = "application/json",
                 schema = @Schema(implementation = FacturaDTO.class)))
     })
-    public ResponseEntity<List<FacturaDTO>> obtenerTodasLasFacturas() {
+    public ResponseEntity<?> obtenerTodasLasFacturas(
+            @Parameter(description = "Cursor: ID de la última factura recibida en la página anterior", example = "50")
+            @RequestParam(required = false) Long after,
+            @Parameter(description = "Cantidad máxima de facturas por página (máximo 500)", example = "50")
+            @RequestParam(required = false) Integer limit) {
+        if (after != null || limit != null) {
+            PaginaDTO<FacturaDTO> pagina = facturaService.obtenerPaginaDeFacturas(after, limit);
+            return ResponseEntity.ok(pagina);
+        }
         List<FacturaDTO> facturas = facturaService.obtenerTodasLasFacturas();
         return ResponseEntity.ok(facturas);
     }
     
+    @GetMapping("/resumen")
+    @Operation(
+        summary = "Obtener resumen de facturas",
+        description = "Retorna número, cliente, total, estado y fecha de las facturas, sin sus items, de la más reciente "
+                + "a la más antigua. Se puede filtrar por estado y por nombre de cliente. La respuesta siempre se pagina por "
+                + "cursor (50 facturas por defecto, 500 como máximo) e incluye el cursor de la página siguiente"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Resumen de facturas obtenido exitosamente",
+            content = @Content(mediaType = "application/json",
+                schema = @Schema(implementation = PaginaDTO.class))),
+        @ApiResponse(responseCode = "400", description = "Estado o cursor inválido")
+    })
+    public ResponseEntity<PaginaDTO<FacturaResumenDTO>> obtenerResumenesDeFacturas(
+            @Parameter(description = "Estado de la factura", schema = @Schema(allowableValues = {"PENDIENTE", "PAGADA", "ANULADA", "VENCIDA"}))
+            @RequestParam(required = false) String estado,
+            @Parameter(description = "Nombre (o parte) del cliente", example = "Juan")
+            @RequestParam(required = false) String cliente,
+            @Parameter(description = "Cursor devuelto como 'siguienteCursor' en la página anterior")
+            @RequestParam(required = false) String cursor,
+            @Parameter(description = "Cantidad máxima de facturas por página (máximo 500)", example = "50")
+            @RequestParam(required = false) Integer limit) {
+        try {
+            Factura.EstadoFactura estadoEnum = estado != null ? Factura.EstadoFactura.valueOf(estado.toUpperCase()) : null;
+            return ResponseEntity.ok(facturaService.obtenerPaginaDeResumenes(estadoEnum, cliente, cursor, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
     @GetMapping("/{id}")
     @Operation(
         summary = "Obtener factura por ID",
@@ -131,6 +198,37 @@ public class FacturaController {
         return ResponseEntity.ok(facturas);
     }
     
+    @GetMapping("/exportar")
+    @Operation(
+        summary = "Exportar facturas por período",
+        description = "Exporta las cabeceras de las facturas creadas en el rango de fechas en formato NDJSON (una factura por línea) "
+                + "o CSV. Las filas se leen con un cursor y se escriben directamente en la respuesta, sin cargar el período en memoria"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Exportación iniciada"),
+        @ApiResponse(responseCode = "400", description = "Formato no soportado")
+    })
+    public ResponseEntity<StreamingResponseBody> exportarFacturasPorPeriodo(
+            @Parameter(description = "Fecha de inicio del período", example = "2024-01-01T00:00:00")
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime fechaInicio,
+            @Parameter(description = "Fecha de fin del período", example = "2024-12-31T23:59:59")
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime fechaFin,
+            @Parameter(description = "Formato de salida: ndjson o csv", example = "ndjson")
+            @RequestParam(defaultValue = FacturaExportacionService.FORMATO_NDJSON) String formato) {
+        if (!FacturaExportacionService.esFormatoValido(formato)) {
+            return ResponseEntity.badRequest().build();
+        }
+        boolean csv = FacturaExportacionService.FORMATO_CSV.equalsIgnoreCase(formato);
+        StreamingResponseBody cuerpo = salida ->
+                facturaExportacionService.exportarPorPeriodo(fechaInicio, fechaFin, formato, salida);
+        return ResponseEntity.ok()
+                .contentType(csv ? new MediaType("text", "csv", StandardCharsets.UTF_8)
+                        : new MediaType("application", "x-ndjson", StandardCharsets.UTF_8))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"facturas." + formato.toLowerCase() + "\"")
+                .body(cuerpo);
+    }
+    
     @GetMapping("/buscar")
     @Operation(
         summary = "Buscar facturas por término",
@@ -164,23 +262,83 @@ public class FacturaController {
     @PostMapping
     @Operation(
         summary = "Crear nueva factura",
-        description = "Crea una nueva factura en el sistema con los items especificados y descuenta automáticamente el stock"
+        description = "Crea una nueva factura en el sistema con los items especificados y descuenta automáticamente el stock. "
+                + "Con el encabezado Idempotency-Key, los reintentos con la misma clave devuelven la factura ya creada"
     )
     @ApiResponses(value = {
-        @ApiResponse(responseCode = "201", description = "Factura creada exitosamente"),
-        @ApiResponse(responseCode = "400", description = "Datos inválidos o stock insuficiente")
+        @ApiResponse(responseCode = "201", description = "Factura creada exitosamente (o devuelta desde un intento anterior)"),
+        @ApiResponse(responseCode = "400", description = "Datos inválidos o stock insuficiente"),
+        @ApiResponse(responseCode = "409", description = "La clave ya se usó con otros datos o la solicitud original sigue en proceso")
     })
     public ResponseEntity<FacturaDTO> crearFactura(
             @Parameter(description = "Datos de la factura a crear", required = true)
-            @RequestBody FacturaDTO facturaDTO) {
+            @RequestBody FacturaDTO facturaDTO,
+            @Parameter(description = "Clave única generada por el cliente para reintentar sin duplicar la factura")
+            @RequestHeader(value = ENCABEZADO_IDEMPOTENCIA, required = false) String claveIdempotencia) {
+        try {
+            if (claveIdempotencia == null) {
+                FacturaDTO facturaCreada = facturaService.crearFactura(facturaDTO);
+                return ResponseEntity.status(HttpStatus.CREATED).body(facturaCreada);
+            }
+            RegistroIdempotencia.Resultado resultado = registroIdempotencia.ejecutar(claveIdempotencia, facturaDTO,
+                    () -> facturaService.crearFactura(facturaDTO));
+            return ResponseEntity.status(HttpStatus.CREATED)
+                    .header(ENCABEZADO_REPETIDA, String.valueOf(resultado.repetida()))
+                    .body(resultado.factura());
+        } catch (RegistroIdempotencia.ConflictoIdempotenciaException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    @PostMapping("/lote")
+    @Operation(
+        summary = "Crear facturas en lote",
+        description = "Emite muchas facturas en una sola solicitud: las piezas se leen una vez para todo el lote, el stock se "
+                + "reparte entre las facturas en el orden recibido y los números se reservan en bloque. Devuelve el "
+                + "resultado de cada factura; las rechazadas no impiden crear las demás"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Lote procesado; el resultado detalla cada factura creada o rechazada"),
+        @ApiResponse(responseCode = "400", description = "Lote vacío o que supera el máximo permitido")
+    })
+    public ResponseEntity<List<ResultadoFacturaLoteDTO>> crearFacturasEnLote(
+            @Parameter(description = "Facturas a crear", required = true)
+            @RequestBody List<FacturaDTO> facturas) {
         try {
-            FacturaDTO facturaCreada = facturaService.crearFactura(facturaDTO);
-            return ResponseEntity.status(HttpStatus.CREATED).body(facturaCreada);
+            return ResponseEntity.ok(facturaLoteService.crearLote(facturas));
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().build();
         }
     }
     
+    @PostMapping("/ingesta")
+    @Operation(
+        summary = "Crear factura por ingesta agrupada",
+        description = "Encola la factura para que se confirme junto con otras en una sola transacción. La respuesta llega "
+                + "cuando su lote confirmó; un error en una factura no afecta al resto del lote"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "201", description = "Factura creada exitosamente"),
+        @ApiResponse(responseCode = "400", description = "Datos inválidos o stock insuficiente"),
+        @ApiResponse(responseCode = "503", description = "La cola de ingesta está llena; reintentar más tarde")
+    })
+    public CompletableFuture<ResponseEntity<FacturaDTO>> ingestarFactura(
+            @Parameter(description = "Datos de la factura a crear", required = true)
+            @RequestBody FacturaDTO facturaDTO) {
+        return ingestaFacturas.encolar(facturaDTO).handle((factura, error) -> {
+            if (error == null) {
+                return ResponseEntity.status(HttpStatus.CREATED).body(factura);
+            }
+            Throwable causa = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (causa instanceof IngestaFacturas.IngestaNoDisponibleException) {
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+            }
+            return ResponseEntity.badRequest().build();
+        });
+    }
+    
     @PutMapping("/{id}/estado")
     @Operation(
         summary = "Actualizar estado de factura",
@@ -208,7 +366,8 @@ public class FacturaController {
     @PutMapping("/{id}/anular")
     @Operation(
         summary = "Anular factura",
-        description = "Anula una factura pendiente y restaura automáticamente el stock de las piezas"
+        description = "Anula una factura pendiente y restaura automáticamente el stock de las piezas. Anular una factura "
+                + "ya anulada no vuelve a restaurar el stock"
     )
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "Factura anulada exitosamente"),
@@ -218,8 +377,12 @@ public class FacturaController {
     public ResponseEntity<Void> anularFactura(
             @Parameter(description = "ID de la factura a anular", example = "1")
             @PathVariable Long id) {
-        boolean anulada = facturaService.anularFactura(id);
-        return anulada ? ResponseEntity.ok().build() : ResponseEntity.notFound().build();
+        try {
+            boolean anulada = facturaService.anularFactura(id);
+            return anulada ? ResponseEntity.ok().build() : ResponseEntity.notFound().build();
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().build();
+        }
     }
     
     @GetMapping("/generar-numero")
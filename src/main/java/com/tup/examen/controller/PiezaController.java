@@ -1,6 +1,12 @@
 package com.tup.examen.controller;
 
+import com.tup.examen.dto.CambiosPiezasDTO;
+import com.tup.examen.dto.PaginaDTO;
 import com.tup.examen.dto.PiezaDTO;
+import com.tup.examen.dto.ResultadoCargaDTO;
+import com.tup.examen.dto.ResultadoFacetasDTO;
+import com.tup.examen.dto.StockEnFechaDTO;
+import com.tup.examen.service.PiezaLoteService;
 import com.tup.examen.service.PiezaService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -10,11 +16,16 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.InputStream;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @RestController
@@ -26,21 +37,79 @@ public class PiezaController {
     @Autowired
     private PiezaService piezaService;
     
+    @Autowired
+    private PiezaLoteService piezaLoteService;
+    
     @GetMapping
     @Operation(
         summary = "Obtener todas las piezas",
-        description = "Retorna una lista completa de todas las piezas registradas en el inventario"
+        description = "Retorna todas las piezas del inventario. Si se indica 'after' o 'limit' la respuesta se pagina por cursor "
+                + "y incluye el cursor de la página siguiente"
     )
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "Lista de piezas obtenida exitosamente",
             content = @Content(mediaType = "application/json",
                 schema = @Schema(implementation = PiezaDTO.class)))
     })
-    public ResponseEntity<List<PiezaDTO>> obtenerTodasLasPiezas() {
+    public ResponseEntity<?> obtenerTodasLasPiezas(
+            @Parameter(description = "Cursor: ID de la última pieza recibida en la página anterior", example = "50")
+            @RequestParam(required = false) Long after,
+            @Parameter(description = "Cantidad máxima de piezas por página (máximo 500)", example = "50")
+            @RequestParam(required = false) Integer limit) {
+        if (after != null || limit != null) {
+            PaginaDTO<PiezaDTO> pagina = piezaService.obtenerPaginaDePiezas(after, limit);
+            return ResponseEntity.ok(pagina);
+        }
         List<PiezaDTO> piezas = piezaService.obtenerTodasLasPiezas();
         return ResponseEntity.ok(piezas);
     }
     
+    @GetMapping("/cambios")
+    @Operation(
+        summary = "Obtener cambios de piezas desde una fecha",
+        description = "Sincronización incremental: retorna las piezas creadas o modificadas desde la fecha indicada y los ids "
+                + "de las eliminadas, ordenadas por fecha de actualización. Se pide la página siguiente con siguienteDesde y "
+                + "siguienteDespuesDe mientras hayMas sea true. Sin fecha retorna el catálogo completo; con resincronizar=true "
+                + "el cliente debe descartar su copia y descargar todo"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Cambios obtenidos exitosamente")
+    })
+    public ResponseEntity<CambiosPiezasDTO> obtenerCambios(
+            @Parameter(description = "Fecha y hora ISO-8601 de la última sincronización (siguienteDesde)", example = "2025-01-15T10:30:00")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime desde,
+            @Parameter(description = "Cursor de desempate devuelto como siguienteDespuesDe", example = "120")
+            @RequestParam(required = false) Long despuesDe,
+            @Parameter(description = "Cantidad máxima de piezas por página (máximo 5000)", example = "500")
+            @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(piezaService.obtenerCambios(desde, despuesDe, limit));
+    }
+    
+    @GetMapping("/cache/estadisticas")
+    @Operation(
+        summary = "Estadísticas de la caché de piezas",
+        description = "Retorna aciertos, fallos, desalojos e invalidaciones de la caché de piezas por ID y código"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Estadísticas obtenidas exitosamente")
+    })
+    public ResponseEntity<Map<String, Object>> obtenerEstadisticasCache() {
+        return ResponseEntity.ok(piezaService.obtenerEstadisticasCache());
+    }
+    
+    @GetMapping("/cache/segundo-nivel")
+    @Operation(
+        summary = "Estadísticas de la caché de segundo nivel",
+        description = "Retorna aciertos, fallos, tasa de aciertos y escrituras de cada región de la caché de Hibernate "
+                + "(entidades Pieza y consultas por código y categoría)"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Estadísticas obtenidas exitosamente")
+    })
+    public ResponseEntity<Map<String, Object>> obtenerEstadisticasCacheSegundoNivel() {
+        return ResponseEntity.ok(piezaService.obtenerEstadisticasCacheSegundoNivel());
+    }
+    
     @GetMapping("/{id}")
     @Operation(
         summary = "Obtener pieza por ID",
@@ -58,6 +127,25 @@ public class PiezaController {
                 .orElse(ResponseEntity.notFound().build());
     }
     
+    @GetMapping("/{id}/stock")
+    @Operation(
+        summary = "Obtener stock de una pieza en una fecha",
+        description = "Reconstruye el stock de la pieza en el momento indicado a partir del último snapshot y los movimientos posteriores. Sin fecha, devuelve el stock actual"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Stock calculado exitosamente"),
+        @ApiResponse(responseCode = "404", description = "Pieza no encontrada")
+    })
+    public ResponseEntity<StockEnFechaDTO> obtenerStockEnFecha(
+            @Parameter(description = "ID único de la pieza", example = "1")
+            @PathVariable Long id,
+            @Parameter(description = "Fecha y hora ISO-8601", example = "2025-01-15T10:30:00")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime fecha) {
+        return piezaService.obtenerStockEnFecha(id, fecha)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+    
     @GetMapping("/codigo/{codigo}")
     @Operation(
         summary = "Obtener pieza por código",
@@ -169,6 +257,39 @@ public class PiezaController {
         return ResponseEntity.ok(piezas);
     }
     
+    @GetMapping("/facetas")
+    @Operation(
+        summary = "Búsqueda por facetas",
+        description = "Combina filtros por marca, categoría, modelo, rango de precio y stock. Retorna las piezas que coinciden "
+                + "y la cantidad de piezas por cada valor de marca, categoría y modelo"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Resultado de la búsqueda por facetas",
+            content = @Content(mediaType = "application/json",
+                schema = @Schema(implementation = ResultadoFacetasDTO.class)))
+    })
+    public ResponseEntity<ResultadoFacetasDTO> buscarPorFacetas(
+            @Parameter(description = "Marcas a incluir (se combinan con O)", example = "Bosch")
+            @RequestParam(required = false) List<String> marca,
+            @Parameter(description = "Categorías a incluir (se combinan con O)", example = "Motor")
+            @RequestParam(required = false) List<String> categoria,
+            @Parameter(description = "Modelos a incluir (se combinan con O)", example = "Universal")
+            @RequestParam(required = false) List<String> modelo,
+            @Parameter(description = "Precio mínimo (inclusive)", example = "10.0")
+            @RequestParam(required = false) Double precioMin,
+            @Parameter(description = "Precio máximo (inclusive)", example = "100.0")
+            @RequestParam(required = false) Double precioMax,
+            @Parameter(description = "Stock mínimo (inclusive)", example = "1")
+            @RequestParam(required = false) Integer stockMin,
+            @Parameter(description = "Stock máximo (inclusive)", example = "5")
+            @RequestParam(required = false) Integer stockMax,
+            @Parameter(description = "Cantidad máxima de piezas a retornar (máximo 500)", example = "50")
+            @RequestParam(required = false) Integer limite) {
+        ResultadoFacetasDTO resultado = piezaService.buscarPorFacetas(marca, categoria, modelo,
+                precioMin, precioMax, stockMin, stockMax, limite);
+        return ResponseEntity.ok(resultado);
+    }
+    
     @PostMapping
     @Operation(
         summary = "Crear nueva pieza",
@@ -189,6 +310,48 @@ public class PiezaController {
         }
     }
     
+    @PostMapping("/lote")
+    @Operation(
+        summary = "Crear piezas en lote",
+        description = "Crea miles de piezas en una sola solicitud. Los códigos duplicados se verifican en una única consulta "
+                + "y las inserciones se confirman por bloques; las filas inválidas se informan sin detener el resto del lote"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Lote procesado; el resultado detalla creadas y rechazadas"),
+        @ApiResponse(responseCode = "400", description = "Lote vacío o que supera el máximo permitido")
+    })
+    public ResponseEntity<ResultadoCargaDTO> crearPiezasEnLote(
+            @Parameter(description = "Piezas a crear", required = true)
+            @RequestBody List<PiezaDTO> piezas) {
+        try {
+            return ResponseEntity.ok(piezaLoteService.crearLote(piezas));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    @PostMapping(value = "/importar", consumes = {"text/csv", MediaType.TEXT_PLAIN_VALUE, MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    @Operation(
+        summary = "Importar catálogo CSV",
+        description = "Lee el cuerpo como flujo CSV con encabezado (codigo, nombre, precio, stock y opcionalmente descripcion, "
+                + "marca, modelo, categoria) y actualiza o crea piezas por código en bloques confirmados por separado. "
+                + "Informa filas por segundo y filas rechazadas"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Importación finalizada; el resultado detalla creadas, actualizadas y rechazadas"),
+        @ApiResponse(responseCode = "400", description = "Archivo vacío o encabezado sin las columnas obligatorias")
+    })
+    public ResponseEntity<ResultadoCargaDTO> importarCsv(
+            @Parameter(description = "Separador de campos", example = ",")
+            @RequestParam(defaultValue = ",") char separador,
+            InputStream cuerpo) {
+        try {
+            return ResponseEntity.ok(piezaLoteService.importarCsv(cuerpo, separador));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
     @PutMapping("/{id}")
     @Operation(
         summary = "Actualizar pieza",
@@ -0,0 +1,24 @@
+package com.tup.examen.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Una página de la sincronización incremental. El cliente aplica las piezas (alta o reemplazo) y los
+// borrados, guarda siguienteDesde/siguienteDespuesDe y vuelve a pedir mientras hayMas sea true.
+// Con resincronizar=true sus datos son más viejos que la retención de borrados y debe descargar todo
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CambiosPiezasDTO {
+    
+    private List<PiezaDTO> piezas;
+    private List<Long> eliminadas;
+    private LocalDateTime siguienteDesde;
+    private Long siguienteDespuesDe;
+    private boolean hayMas;
+    private boolean resincronizar;
+}
@@ -0,0 +1,24 @@
+package com.tup.examen.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DashboardDTO {
+    
+    private Long totalPiezas;
+    private Long piezasStockBajo;
+    private BigDecimal valorInventario;
+    private Long totalFacturas;
+    private Long facturasPagadas;
+    private Long facturasPendientes;
+    private BigDecimal totalVentas;
+    // Momento en que se calcularon los valores; pueden tener hasta el TTL de la caché de antigüedad
+    private LocalDateTime generadoEn;
+}
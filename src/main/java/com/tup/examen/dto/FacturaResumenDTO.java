@@ -0,0 +1,22 @@
+package com.tup.examen.dto;
+
+import com.tup.examen.model.Factura;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FacturaResumenDTO {
+    
+    private Long id;
+    private String numeroFactura;
+    private String clienteNombre;
+    private BigDecimal total;
+    private Factura.EstadoFactura estado;
+    private LocalDateTime fechaCreacion;
+}
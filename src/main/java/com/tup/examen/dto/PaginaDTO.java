@@ -0,0 +1,18 @@
+package com.tup.examen.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PaginaDTO<T> {
+    
+    private List<T> items;
+    private String siguienteCursor;
+    private boolean hayMas;
+    private int limite;
+}
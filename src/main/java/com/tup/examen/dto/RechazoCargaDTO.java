@@ -0,0 +1,15 @@
+package com.tup.examen.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RechazoCargaDTO {
+    
+    private int fila;
+    private String codigo;
+    private String motivo;
+}
@@ -0,0 +1,23 @@
+package com.tup.examen.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ResultadoCargaDTO {
+    
+    private int recibidas;
+    private int creadas;
+    private int actualizadas;
+    private int rechazadas;
+    private long duracionMs;
+    private double filasPorSegundo;
+    // Solo se detallan los primeros rechazos para acotar el tamaño de la respuesta
+    private List<RechazoCargaDTO> rechazos = new ArrayList<>();
+}
@@ -0,0 +1,18 @@
+package com.tup.examen.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ResultadoFacetasDTO {
+    
+    private List<PiezaDTO> items;
+    private long total;
+    private Map<String, Map<String, Long>> facetas;
+}
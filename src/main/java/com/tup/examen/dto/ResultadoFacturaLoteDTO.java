@@ -0,0 +1,17 @@
+package com.tup.examen.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ResultadoFacturaLoteDTO {
+    
+    // Posición de la factura en el lote recibido, empezando en 1
+    private int indice;
+    private boolean creada;
+    private FacturaDTO factura;
+    private String motivo;
+}
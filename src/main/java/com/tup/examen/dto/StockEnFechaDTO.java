@@ -0,0 +1,17 @@
+package com.tup.examen.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockEnFechaDTO {
+    
+    private Long piezaId;
+    private LocalDateTime fecha;
+    private Integer stock;
+}
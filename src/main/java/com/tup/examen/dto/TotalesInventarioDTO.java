@@ -0,0 +1,17 @@
+package com.tup.examen.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TotalesInventarioDTO {
+    
+    private Long totalPiezas;
+    private Long piezasStockBajo;
+    private BigDecimal valorInventario;
+}
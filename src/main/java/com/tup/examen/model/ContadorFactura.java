@@ -0,0 +1,24 @@
+package com.tup.examen.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+@Entity
+@Table(name = "contadores_factura")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ContadorFactura {
+    
+    @Id
+    @Column(name = "fecha")
+    private LocalDate fecha;
+    
+    // Último número ya reservado para el día (los bloques en memoria nunca superan este valor)
+    @Column(name = "ultimo_numero", nullable = false)
+    private Long ultimoNumero;
+}
@@ -0,0 +1,47 @@
+package com.tup.examen.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Evento pendiente de publicar hacia sistemas externos. Se inserta en la misma transacción que el cambio
+// que describe, así que existe si y solo si ese cambio se confirmó; el relay lo marca al entregarlo
+@Entity
+@Table(name = "eventos_outbox",
+        indexes = @Index(name = "idx_outbox_entrega", columnList = "fecha_entrega, id"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EventoOutbox {
+    
+    // Ids de secuencia: el alta masiva de facturas inserta los eventos en lotes JDBC
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "eventos_outbox_seq")
+    @SequenceGenerator(name = "eventos_outbox_seq", sequenceName = "eventos_outbox_seq", allocationSize = 50)
+    private Long id;
+    
+    @Column(nullable = false, length = 40)
+    @Enumerated(EnumType.STRING)
+    private TipoEvento tipo;
+    
+    @Column(name = "agregado_id", nullable = false)
+    private Long agregadoId;
+    
+    // Cuerpo del evento en JSON
+    @Lob
+    @Column(nullable = false)
+    private String payload;
+    
+    @Column(name = "fecha_creacion", nullable = false)
+    private LocalDateTime fechaCreacion;
+    
+    @Column(name = "fecha_entrega")
+    private LocalDateTime fechaEntrega;
+    
+    public enum TipoEvento {
+        FACTURA_CREADA, FACTURA_ESTADO_ACTUALIZADO, FACTURA_ANULADA, STOCK_AJUSTADO
+    }
+}
@@ -11,14 +11,15 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "facturas")
+@Table(name = "facturas", indexes = @Index(name = "idx_facturas_fecha_creacion", columnList = "fecha_creacion, id"))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class Factura {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "facturas_seq")
+    @SequenceGenerator(name = "facturas_seq", sequenceName = "facturas_seq", allocationSize = 50)
     private Long id;
     
     @Column(name = "numero_factura", nullable = false, unique = true)
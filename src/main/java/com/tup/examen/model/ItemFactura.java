@@ -15,7 +15,8 @@ import java.math.BigDecimal;
 public class ItemFactura {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "items_factura_seq")
+    @SequenceGenerator(name = "items_factura_seq", sequenceName = "items_factura_seq", allocationSize = 50)
     private Long id;
     
     @ManyToOne(fetch = FetchType.LAZY)
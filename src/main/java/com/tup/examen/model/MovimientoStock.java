@@ -0,0 +1,45 @@
+package com.tup.examen.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Libro de movimientos de stock: solo se insertan filas, nunca se modifican ni se borran.
+// pieza_id no tiene clave foránea para conservar la historia de piezas eliminadas
+@Entity
+@Table(name = "movimientos_stock",
+        indexes = @Index(name = "idx_movimientos_pieza_fecha", columnList = "pieza_id, fecha"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MovimientoStock {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "pieza_id", nullable = false)
+    private Long piezaId;
+    
+    // Positiva si ingresa stock, negativa si egresa
+    @Column(nullable = false)
+    private Integer cantidad;
+    
+    @Column(nullable = false, length = 20)
+    @Enumerated(EnumType.STRING)
+    private TipoMovimiento tipo;
+    
+    // Número de factura o código de pieza que originó el movimiento
+    @Column(length = 50)
+    private String referencia;
+    
+    @Column(nullable = false)
+    private LocalDateTime fecha;
+    
+    public enum TipoMovimiento {
+        ALTA, AJUSTE, VENTA, ANULACION
+    }
+}
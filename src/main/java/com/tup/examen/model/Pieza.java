@@ -1,22 +1,36 @@
 package com.tup.examen.model;
 
+import com.tup.examen.config.CacheSegundoNivelConfig;
+import com.tup.examen.config.PiezaIndicesListener;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "piezas")
+@Table(name = "piezas", indexes = {
+        @Index(name = "idx_piezas_codigo", columnList = "codigo"),
+        // Recorrido de la sincronización incremental por (fecha_actualizacion, id)
+        @Index(name = "idx_piezas_fecha_actualizacion", columnList = "fecha_actualizacion, id")
+})
+@EntityListeners(PiezaIndicesListener.class)
+// READ_WRITE: cada escritura bloquea su entrada (soft lock) hasta que la transacción termina, así ninguna
+// lectura concurrente vuelve a cachear el valor anterior. El descuento por JDBC toma los mismos bloqueos
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = CacheSegundoNivelConfig.REGION_PIEZAS)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class Pieza {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "piezas_seq")
+    @SequenceGenerator(name = "piezas_seq", sequenceName = "piezas_seq", allocationSize = 50)
     private Long id;
     
     @Column(nullable = false, length = 100)
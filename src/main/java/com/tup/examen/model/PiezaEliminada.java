@@ -0,0 +1,26 @@
+package com.tup.examen.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Marca de borrado de una pieza para la sincronización incremental: la fila de piezas ya no existe, así que
+// los clientes se enteran del borrado por acá. Los ids de piezas salen de una secuencia y no se reutilizan
+@Entity
+@Table(name = "piezas_eliminadas",
+        indexes = @Index(name = "idx_piezas_eliminadas_fecha", columnList = "fecha_eliminacion"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PiezaEliminada {
+    
+    @Id
+    @Column(name = "pieza_id")
+    private Long piezaId;
+    
+    @Column(name = "fecha_eliminacion", nullable = false)
+    private LocalDateTime fechaEliminacion;
+}
@@ -0,0 +1,50 @@
+package com.tup.examen.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+// Totales de facturación por día de creación y estado. Se mantiene en la misma transacción que cada alta
+// o cambio de estado, de modo que sumar las filas de un rango equivale a agregar las facturas del rango
+@Entity
+@Table(name = "resumen_diario")
+@IdClass(ResumenDiario.Clave.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ResumenDiario {
+    
+    @Id
+    @Column(name = "fecha")
+    private LocalDate fecha;
+    
+    @Id
+    @Column(name = "estado", length = 20)
+    @Enumerated(EnumType.STRING)
+    private Factura.EstadoFactura estado;
+    
+    @Column(nullable = false)
+    private Long cantidad;
+    
+    @Column(nullable = false, precision = 14, scale = 2)
+    private BigDecimal subtotal;
+    
+    @Column(nullable = false, precision = 14, scale = 2)
+    private BigDecimal impuesto;
+    
+    @Column(nullable = false, precision = 14, scale = 2)
+    private BigDecimal total;
+    
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Clave implements Serializable {
+        private LocalDate fecha;
+        private Factura.EstadoFactura estado;
+    }
+}
@@ -0,0 +1,35 @@
+package com.tup.examen.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Stock acumulado de una pieza con todos sus movimientos hasta hasta_movimiento_id inclusive; fecha_corte es la
+// fecha más reciente entre esos movimientos
+@Entity
+@Table(name = "snapshots_stock",
+        indexes = @Index(name = "idx_snapshots_pieza_corte", columnList = "pieza_id, fecha_corte"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SnapshotStock {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "pieza_id", nullable = false)
+    private Long piezaId;
+    
+    @Column(nullable = false)
+    private Integer stock;
+    
+    @Column(name = "fecha_corte", nullable = false)
+    private LocalDateTime fechaCorte;
+    
+    @Column(name = "hasta_movimiento_id", nullable = false)
+    private Long hastaMovimientoId;
+}
@@ -0,0 +1,21 @@
+package com.tup.examen.repository;
+
+import com.tup.examen.model.ContadorFactura;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.Optional;
+
+@Repository
+public interface ContadorFacturaRepository extends JpaRepository<ContadorFactura, LocalDate> {
+    
+    // SELECT ... FOR UPDATE: las instancias que reservan un bloque para el mismo día se serializan en esta fila
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT c FROM ContadorFactura c WHERE c.fecha = :fecha")
+    Optional<ContadorFactura> bloquearPorFecha(@Param("fecha") LocalDate fecha);
+}
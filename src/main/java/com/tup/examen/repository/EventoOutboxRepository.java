@@ -0,0 +1,26 @@
+package com.tup.examen.repository;
+
+import com.tup.examen.model.EventoOutbox;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface EventoOutboxRepository extends JpaRepository<EventoOutbox, Long> {
+    
+    // Pendientes en orden de creación; el índice (fecha_entrega, id) resuelve filtro y orden sin recorrer los entregados
+    List<EventoOutbox> findByFechaEntregaIsNullOrderByIdAsc(Limit limit);
+    
+    long countByFechaEntregaIsNull();
+    
+    @Modifying
+    @Query("UPDATE EventoOutbox e SET e.fechaEntrega = :fecha WHERE e.id IN :ids AND e.fechaEntrega IS NULL")
+    int marcarEntregados(@Param("ids") Collection<Long> ids, @Param("fecha") LocalDateTime fecha);
+}
@@ -1,33 +1,107 @@
 package com.tup.examen.repository;
 
+import com.tup.examen.dto.FacturaResumenDTO;
 import com.tup.examen.model.Factura;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 @Repository
 public interface FacturaRepository extends JpaRepository<Factura, Long> {
     
+    // Los métodos de lista traen los items en la misma consulta: convertirADTO los recorre y, sin el grafo,
+    // cada factura dispararía un SELECT adicional. La pieza del item no se incluye porque solo se lee su id,
+    // que Hibernate resuelve desde el proxy sin consultar
+    @Override
+    @EntityGraph(attributePaths = "items")
+    List<Factura> findAll();
+    
+    // Paginación en dos fases: primero una página de ids (el LIMIT se aplica sobre facturas, no sobre filas del join)
+    // y luego las facturas de esa página con sus items
+    @Query("SELECT f.id FROM Factura f WHERE f.id > :id ORDER BY f.id")
+    List<Long> listarIdsDespuesDe(@Param("id") Long id, Limit limit);
+    
+    @EntityGraph(attributePaths = "items")
+    @Query("SELECT f FROM Factura f WHERE f.id IN :ids ORDER BY f.id")
+    List<Factura> buscarConItemsPorIds(@Param("ids") Collection<Long> ids);
+    
+    // Proyección liviana: solo columnas de la cabecera, sin hidratar la factura ni tocar sus items
+    String SELECT_RESUMEN = "SELECT new com.tup.examen.dto.FacturaResumenDTO(f.id, f.numeroFactura, f.clienteNombre, "
+            + "f.total, f.estado, f.fechaCreacion) FROM Factura f ";
+    
+    @EntityGraph(attributePaths = "items")
     Optional<Factura> findByNumeroFactura(String numeroFactura);
     
     boolean existsByNumeroFactura(String numeroFactura);
     
+    // Verificación de números repetidos de un lote completo en una sola consulta
+    @Query("SELECT f.numeroFactura FROM Factura f WHERE f.numeroFactura IN :numeros")
+    Set<String> buscarNumerosExistentes(@Param("numeros") Collection<String> numeros);
+    
+    // Transición a ANULADA solo desde un estado anulable: la fila queda bloqueada hasta el commit, así que dos
+    // anulaciones simultáneas no pueden restaurar el stock dos veces. Devuelve 0 si no hubo transición.
+    // Vacía el contexto de persistencia para que una lectura posterior no devuelva la factura con el estado anterior
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Factura f SET f.estado = :anulada WHERE f.id = :id AND f.estado IN :anulables")
+    int marcarAnulada(@Param("id") Long id, @Param("anulada") Factura.EstadoFactura anulada,
+                      @Param("anulables") Collection<Factura.EstadoFactura> anulables);
+    
+    @Query("SELECT f.estado FROM Factura f WHERE f.id = :id")
+    Optional<Factura.EstadoFactura> buscarEstado(@Param("id") Long id);
+    
+    // Cantidad total de cada pieza en la factura, sin cargar los items
+    @Query("SELECT i.pieza.id AS piezaId, SUM(i.cantidad) AS cantidad FROM ItemFactura i "
+            + "WHERE i.factura.id = :id GROUP BY i.pieza.id")
+    List<CantidadPorPieza> sumarCantidadesPorPieza(@Param("id") Long id);
+    
+    // Máximo numérico del sufijo, no del texto: "FAC-...-1000000" es mayor que "FAC-...-999999" aunque ordene antes.
+    // Los números manuales con sufijo no numérico (o demasiado largo para un BIGINT) se ignoran
+    @Query(value = "SELECT MAX(CAST(SUBSTRING(numero_factura, LENGTH(:prefijo) + 1) AS BIGINT)) FROM facturas "
+            + "WHERE numero_factura LIKE CONCAT(:prefijo, '%') "
+            + "AND REGEXP_LIKE(SUBSTRING(numero_factura, LENGTH(:prefijo) + 1), '^[0-9]{1,18}$')", nativeQuery = true)
+    Optional<Long> buscarUltimoSufijoConPrefijo(@Param("prefijo") String prefijo);
+    
+    @EntityGraph(attributePaths = "items")
     List<Factura> findByClienteNombreContainingIgnoreCase(String clienteNombre);
     
+    @EntityGraph(attributePaths = "items")
     List<Factura> findByClienteDocumento(String clienteDocumento);
     
+    @EntityGraph(attributePaths = "items")
     List<Factura> findByEstado(Factura.EstadoFactura estado);
     
+    @EntityGraph(attributePaths = "items")
     List<Factura> findByFechaCreacionBetween(LocalDateTime fechaInicio, LocalDateTime fechaFin);
     
+    // Cursor de solo avance para exportaciones: las filas se leen de a bloques del tamaño de fetch y sin snapshots
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT f FROM Factura f WHERE f.fechaCreacion BETWEEN :fechaInicio AND :fechaFin ORDER BY f.fechaCreacion, f.id")
+    Stream<Factura> streamPorPeriodo(@Param("fechaInicio") LocalDateTime fechaInicio, @Param("fechaFin") LocalDateTime fechaFin);
+    
+    // FacturaDTO.fromEntity lee nombre y código de la pieza de cada item: la pieza entra en el mismo join
+    @EntityGraph(attributePaths = {"items", "items.pieza"})
     @Query("SELECT f FROM Factura f WHERE f.total >= :montoMinimo")
     List<Factura> findByTotalMayorOIgual(@Param("montoMinimo") Double montoMinimo);
     
+    @EntityGraph(attributePaths = "items")
     @Query("SELECT f FROM Factura f WHERE f.clienteNombre LIKE %:termino% OR f.numeroFactura LIKE %:termino%")
     List<Factura> buscarPorTermino(@Param("termino") String termino);
     
@@ -36,4 +110,37 @@ public interface FacturaRepository extends JpaRepository<Factura, Long> {
     
     @Query("SELECT SUM(f.total) FROM Factura f WHERE f.fechaCreacion >= :fechaInicio AND f.fechaCreacion <= :fechaFin AND f.estado = 'PAGADA'")
     Double sumarTotalFacturasPagadasPorPeriodo(@Param("fechaInicio") LocalDateTime fechaInicio, @Param("fechaFin") LocalDateTime fechaFin);
-} 
\ No newline at end of file
+    
+    // Variantes con el extremo final excluido, para la fracción de día anterior al primer día completo de un rango
+    @Query("SELECT COUNT(f) FROM Factura f WHERE f.fechaCreacion >= :fechaInicio AND f.fechaCreacion < :fechaLimite")
+    long contarFacturasAntesDe(@Param("fechaInicio") LocalDateTime fechaInicio, @Param("fechaLimite") LocalDateTime fechaLimite);
+    
+    @Query("SELECT SUM(f.total) FROM Factura f WHERE f.fechaCreacion >= :fechaInicio AND f.fechaCreacion < :fechaLimite AND f.estado = 'PAGADA'")
+    BigDecimal sumarTotalFacturasPagadasAntesDe(@Param("fechaInicio") LocalDateTime fechaInicio, @Param("fechaLimite") LocalDateTime fechaLimite);
+    
+    // Filtros y orden compartidos por la primera página y las siguientes
+    String FILTRO_RESUMEN = "WHERE (:estado IS NULL OR f.estado = :estado) "
+            + "AND (:cliente IS NULL OR LOWER(f.clienteNombre) LIKE LOWER(CONCAT('%', :cliente, '%'))) ";
+    String ORDEN_RESUMEN = "ORDER BY f.fechaCreacion DESC, f.id DESC";
+    
+    // Paginación por cursor sobre (fechaCreacion, id): usa el índice idx_facturas_fecha_creacion y el costo de cada página
+    // no depende de cuántas facturas haya antes
+    @Query(SELECT_RESUMEN + FILTRO_RESUMEN + ORDEN_RESUMEN)
+    List<FacturaResumenDTO> listarResumenesPrimeraPagina(@Param("estado") Factura.EstadoFactura estado,
+                                                         @Param("cliente") String cliente, Limit limit);
+    
+    @Query(SELECT_RESUMEN + FILTRO_RESUMEN
+            + "AND (f.fechaCreacion < :fecha OR (f.fechaCreacion = :fecha AND f.id < :id)) "
+            + ORDEN_RESUMEN)
+    List<FacturaResumenDTO> listarResumenesDespuesDe(@Param("estado") Factura.EstadoFactura estado,
+                                                     @Param("cliente") String cliente,
+                                                     @Param("fecha") LocalDateTime fecha, @Param("id") Long id,
+                                                     Limit limit);
+    
+    interface CantidadPorPieza {
+        
+        Long getPiezaId();
+        
+        Long getCantidad();
+    }
+}
@@ -0,0 +1,38 @@
+package com.tup.examen.repository;
+
+import com.tup.examen.model.MovimientoStock;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface MovimientoStockRepository extends JpaRepository<MovimientoStock, Long>, MovimientoStockRepositoryCustom {
+    
+    // Suma de los movimientos que el snapshot no cubre (id posterior) con fecha hasta la indicada inclusive
+    @Query("SELECT COALESCE(SUM(m.cantidad), 0) FROM MovimientoStock m "
+            + "WHERE m.piezaId = :piezaId AND m.id > :desdeId AND m.fecha <= :hasta")
+    long sumarPosteriores(@Param("piezaId") Long piezaId, @Param("desdeId") long desdeId,
+                          @Param("hasta") LocalDateTime hasta);
+    
+    boolean existsByPiezaId(Long piezaId);
+    
+    List<MovimientoStock> findByPiezaIdOrderByIdAsc(Long piezaId);
+    
+    // Un movimiento por pieza con la cantidad total de la factura, en una sola sentencia. Sin declarar la tabla
+    // que escribe, Hibernate vaciaría toda la caché de segundo nivel al ejecutar un UPDATE/INSERT nativo
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "movimientos_stock"))
+    @Query(value = "INSERT INTO movimientos_stock (pieza_id, cantidad, tipo, referencia, fecha) "
+            + "SELECT i.pieza_id, SUM(i.cantidad), 'ANULACION', f.numero_factura, :fecha "
+            + "FROM items_factura i JOIN facturas f ON f.id = i.factura_id "
+            + "WHERE i.factura_id = :facturaId GROUP BY i.pieza_id, f.numero_factura", nativeQuery = true)
+    int registrarAnulacion(@Param("facturaId") Long facturaId, @Param("fecha") LocalDateTime fecha);
+}
@@ -0,0 +1,11 @@
+package com.tup.examen.repository;
+
+import com.tup.examen.model.MovimientoStock;
+
+import java.util.List;
+
+public interface MovimientoStockRepositoryCustom {
+    
+    // Inserta los movimientos en un único batch JDBC, sin pasar por el contexto de persistencia
+    void insertarEnLote(List<MovimientoStock> movimientos);
+}
@@ -0,0 +1,31 @@
+package com.tup.examen.repository;
+
+import com.tup.examen.model.MovimientoStock;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+class MovimientoStockRepositoryImpl implements MovimientoStockRepositoryCustom {
+    
+    private static final String SQL_INSERTAR = "INSERT INTO movimientos_stock (pieza_id, cantidad, tipo, referencia, fecha) "
+            + "VALUES (?, ?, ?, ?, ?)";
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Override
+    public void insertarEnLote(List<MovimientoStock> movimientos) {
+        if (movimientos.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(SQL_INSERTAR, movimientos, movimientos.size(), (sentencia, movimiento) -> {
+            sentencia.setLong(1, movimiento.getPiezaId());
+            sentencia.setInt(2, movimiento.getCantidad());
+            sentencia.setString(3, movimiento.getTipo().name());
+            sentencia.setString(4, movimiento.getReferencia());
+            sentencia.setTimestamp(5, Timestamp.valueOf(movimiento.getFecha()));
+        });
+    }
+}
@@ -0,0 +1,23 @@
+package com.tup.examen.repository;
+
+import com.tup.examen.model.PiezaEliminada;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface PiezaEliminadaRepository extends JpaRepository<PiezaEliminada, Long> {
+    
+    @Query("SELECT e.piezaId FROM PiezaEliminada e WHERE e.fechaEliminacion >= :desde AND e.fechaEliminacion <= :hasta "
+            + "ORDER BY e.fechaEliminacion, e.piezaId")
+    List<Long> buscarIdsEliminadosEntre(@Param("desde") LocalDateTime desde, @Param("hasta") LocalDateTime hasta);
+    
+    @Modifying
+    @Query("DELETE FROM PiezaEliminada e WHERE e.fechaEliminacion < :limite")
+    int purgarAnterioresA(@Param("limite") LocalDateTime limite);
+}
@@ -1,23 +1,49 @@
 package com.tup.examen.repository;
 
+import com.tup.examen.config.CacheSegundoNivelConfig;
+import com.tup.examen.dto.PiezaDTO;
+import com.tup.examen.dto.TotalesInventarioDTO;
 import com.tup.examen.model.Pieza;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 @Repository
-public interface PiezaRepository extends JpaRepository<Pieza, Long> {
+public interface PiezaRepository extends JpaRepository<Pieza, Long>, PiezaRepositoryCustom {
     
+    // Proyección directa a DTO: las filas no se hidratan como entidades ni entran al contexto de persistencia
+    String SELECT_DTO = "SELECT new com.tup.examen.dto.PiezaDTO(p.id, p.nombre, p.codigo, p.descripcion, p.precio, "
+            + "p.stock, p.marca, p.modelo, p.categoria, p.fechaRegistro, p.fechaActualizacion) FROM Pieza p ";
+    
+    // Búsquedas frecuentes en la caché de consultas: se guardan los ids (las entidades salen de la región de
+    // piezas) y Hibernate descarta el resultado cuando cambia la tabla piezas
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+        @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = CacheSegundoNivelConfig.REGION_CONSULTAS_PIEZAS)
+    })
     Optional<Pieza> findByCodigo(String codigo);
     
     List<Pieza> findByNombreContainingIgnoreCase(String nombre);
     
     List<Pieza> findByMarcaContainingIgnoreCase(String marca);
     
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+        @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = CacheSegundoNivelConfig.REGION_CONSULTAS_PIEZAS)
+    })
     List<Pieza> findByCategoriaContainingIgnoreCase(String categoria);
     
     List<Pieza> findByStockLessThan(Integer stock);
@@ -29,4 +55,67 @@ public interface PiezaRepository extends JpaRepository<Pieza, Long> {
     List<Pieza> buscarPorTermino(@Param("termino") String termino);
     
     boolean existsByCodigo(String codigo);
+    
+    // Verificación de duplicados de un lote completo en una sola consulta
+    @Query("SELECT p.codigo FROM Pieza p WHERE p.codigo IN :codigos")
+    Set<String> buscarCodigosExistentes(@Param("codigos") Collection<String> codigos);
+    
+    // Solo los ids: la importación los bloquea después con bloquearPorIds, en orden de id
+    @Query("SELECT p.id FROM Pieza p WHERE p.codigo IN :codigos")
+    List<Long> buscarIdsPorCodigos(@Param("codigos") Collection<String> codigos);
+    
+    // Bloqueo de escritura en orden de id: dos lotes que comparten piezas las bloquean en el mismo orden
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p FROM Pieza p WHERE p.id IN :ids ORDER BY p.id")
+    List<Pieza> bloquearPorIds(@Param("ids") Collection<Long> ids);
+    
+    // Los ajustes de stock leen bajo bloqueo: una venta concurrente espera y se aplica sobre el valor ajustado
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p FROM Pieza p WHERE p.id = :id")
+    Optional<Pieza> bloquearPorId(@Param("id") Long id);
+    
+    // Paginación por cursor: usa la PK, por lo que el costo no depende de la posición de la página
+    List<Pieza> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+    
+    @Query(SELECT_DTO + "ORDER BY p.id")
+    List<PiezaDTO> listarDTOs();
+    
+    @Query(SELECT_DTO + "WHERE p.id > :id ORDER BY p.id")
+    List<PiezaDTO> listarDTOsDespuesDe(@Param("id") Long id, Limit limit);
+    
+    @Query(SELECT_DTO + "WHERE p.id IN :ids ORDER BY p.id")
+    List<PiezaDTO> listarDTOsPorIds(@Param("ids") Collection<Long> ids);
+    
+    @Query(SELECT_DTO + "WHERE LOWER(p.nombre) LIKE LOWER(CONCAT('%', :nombre, '%'))")
+    List<PiezaDTO> buscarDTOsPorNombre(@Param("nombre") String nombre);
+    
+    @Query(SELECT_DTO + "WHERE LOWER(p.marca) LIKE LOWER(CONCAT('%', :marca, '%'))")
+    List<PiezaDTO> buscarDTOsPorMarca(@Param("marca") String marca);
+    
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+        @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = CacheSegundoNivelConfig.REGION_CONSULTAS_PIEZAS)
+    })
+    @Query(SELECT_DTO + "WHERE LOWER(p.categoria) LIKE LOWER(CONCAT('%', :categoria, '%'))")
+    List<PiezaDTO> buscarDTOsPorCategoria(@Param("categoria") String categoria);
+    
+    @Query(SELECT_DTO + "WHERE p.stock < :stock")
+    List<PiezaDTO> buscarDTOsConStockMenorA(@Param("stock") Integer stock);
+    
+    @Query(SELECT_DTO + "WHERE p.precio BETWEEN :precioMin AND :precioMax")
+    List<PiezaDTO> buscarDTOsPorRangoPrecio(@Param("precioMin") Double precioMin, @Param("precioMax") Double precioMax);
+    
+    // Sincronización incremental: recorre el índice (fecha_actualizacion, id). El desempate por id permite
+    // cortar páginas entre piezas con la misma fecha sin repetir ni saltear filas
+    @Query(SELECT_DTO + "WHERE p.fechaActualizacion >= :desde ORDER BY p.fechaActualizacion, p.id")
+    List<PiezaDTO> listarCambiosDesde(@Param("desde") LocalDateTime desde, Limit limit);
+    
+    @Query(SELECT_DTO + "WHERE p.fechaActualizacion > :desde OR (p.fechaActualizacion = :desde AND p.id > :id) "
+            + "ORDER BY p.fechaActualizacion, p.id")
+    List<PiezaDTO> listarCambiosDespuesDe(@Param("desde") LocalDateTime desde, @Param("id") Long id, Limit limit);
+    
+    // Indicadores del inventario en un solo recorrido de la tabla
+    @Query("SELECT new com.tup.examen.dto.TotalesInventarioDTO(COUNT(p), "
+            + "SUM(CASE WHEN p.stock < :umbralStockBajo THEN 1L ELSE 0L END), SUM(p.precio * p.stock)) FROM Pieza p")
+    TotalesInventarioDTO calcularTotalesInventario(@Param("umbralStockBajo") Integer umbralStockBajo);
 } 
\ No newline at end of file
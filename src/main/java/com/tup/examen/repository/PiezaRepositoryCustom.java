@@ -0,0 +1,23 @@
+package com.tup.examen.repository;
+
+import com.tup.examen.model.Pieza;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.SortedMap;
+
+public interface PiezaRepositoryCustom {
+    
+    // Descuenta el stock de varias piezas en un único batch JDBC, recorriendo los ids en orden ascendente.
+    // Devuelve los ids cuyo UPDATE no afectó filas (pieza inexistente o stock insuficiente)
+    List<Long> descontarStockEnLote(SortedMap<Long, Integer> cantidadesPorId, LocalDateTime ahora);
+    
+    // Devuelve stock a varias piezas en un único batch JDBC, con el mismo orden de ids y el mismo bloqueo en la
+    // caché de segundo nivel que el descuento: solo se invalidan las piezas afectadas y no toda la región
+    void reponerStockEnLote(SortedMap<Long, Integer> cantidadesPorId, LocalDateTime ahora);
+    
+    // Carga las piezas por id pasando por la caché de segundo nivel; sólo las que faltan van a la base.
+    // Las inexistentes se omiten
+    List<Pieza> cargarPorIds(Collection<Long> ids);
+}
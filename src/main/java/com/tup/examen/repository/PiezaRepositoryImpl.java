@@ -0,0 +1,105 @@
+package com.tup.examen.repository;
+
+import com.tup.examen.model.Pieza;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.Session;
+import org.hibernate.cache.spi.access.EntityDataAccess;
+import org.hibernate.cache.spi.access.SoftLock;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Map;
+import java.util.SortedMap;
+
+class PiezaRepositoryImpl implements PiezaRepositoryCustom {
+    
+    // Descuento atómico: la condición sobre el stock evita perder actualizaciones concurrentes y dejar stock negativo
+    private static final String SQL_DESCONTAR_STOCK = "UPDATE piezas SET stock = stock - ?, fecha_actualizacion = ? "
+            + "WHERE id = ? AND stock >= ?";
+    
+    private static final String SQL_REPONER_STOCK = "UPDATE piezas SET stock = stock + ?, fecha_actualizacion = ? "
+            + "WHERE id = ?";
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @PersistenceContext
+    private EntityManager entityManager;
+    
+    @Override
+    public List<Long> descontarStockEnLote(SortedMap<Long, Integer> cantidadesPorId, LocalDateTime ahora) {
+        if (cantidadesPorId.isEmpty()) {
+            return List.of();
+        }
+        // El orden ascendente de ids fija el orden en que se toman los bloqueos de fila y evita deadlocks entre facturas
+        List<Map.Entry<Long, Integer>> lineas = new ArrayList<>(cantidadesPorId.entrySet());
+        Timestamp fecha = Timestamp.valueOf(ahora);
+        List<Object[]> parametros = new ArrayList<>(lineas.size());
+        for (Map.Entry<Long, Integer> linea : lineas) {
+            parametros.add(new Object[]{linea.getValue(), fecha, linea.getKey(), linea.getValue()});
+        }
+        
+        // El batch va directo por JDBC: los cambios pendientes del contexto de persistencia deben llegar antes
+        entityManager.flush();
+        bloquearEnCache(cantidadesPorId.keySet());
+        int[] filas = jdbcTemplate.batchUpdate(SQL_DESCONTAR_STOCK, parametros);
+        List<Long> rechazados = new ArrayList<>();
+        for (int i = 0; i < filas.length; i++) {
+            // Sólo 0 significa que la condición falló; SUCCESS_NO_INFO (-2) se toma como aplicado
+            if (filas[i] == 0) {
+                rechazados.add(lineas.get(i).getKey());
+            }
+        }
+        return rechazados;
+    }
+    
+    @Override
+    public void reponerStockEnLote(SortedMap<Long, Integer> cantidadesPorId, LocalDateTime ahora) {
+        if (cantidadesPorId.isEmpty()) {
+            return;
+        }
+        Timestamp fecha = Timestamp.valueOf(ahora);
+        List<Object[]> parametros = new ArrayList<>(cantidadesPorId.size());
+        cantidadesPorId.forEach((id, cantidad) -> parametros.add(new Object[]{cantidad, fecha, id}));
+        
+        entityManager.flush();
+        bloquearEnCache(cantidadesPorId.keySet());
+        jdbcTemplate.batchUpdate(SQL_REPONER_STOCK, parametros);
+    }
+    
+    @Override
+    public List<Pieza> cargarPorIds(Collection<Long> ids) {
+        List<Pieza> piezas = entityManager.unwrap(Session.class).byMultipleIds(Pieza.class)
+                .enableSessionCheck(true)
+                .multiLoad(List.copyOf(ids));
+        return piezas.stream().filter(Objects::nonNull).toList();
+    }
+    
+    // El UPDATE por JDBC no pasa por Hibernate, así que se hace lo mismo que en una actualización de la entidad:
+    // cada pieza queda bloqueada en la caché de segundo nivel hasta que la transacción termina (las lecturas
+    // concurrentes van a la base y no pueden volver a cachear el stock anterior) y se marcan como modificadas
+    // las consultas cacheadas sobre la tabla
+    private void bloquearEnCache(Collection<Long> ids) {
+        SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+        EntityPersister persister = session.getFactory().getMappingMetamodel().getEntityDescriptor(Pieza.class);
+        String[] tablas = persister.getPropertySpaces();
+        session.getFactory().getCache().getTimestampsCache().preInvalidate(tablas, session);
+        EntityDataAccess cache = persister.getCacheAccessStrategy();
+        for (Long id : ids) {
+            Object clave = cache.generateCacheKey(id, persister, session.getFactory(), session.getTenantIdentifier());
+            SoftLock bloqueo = cache.lockItem(session, clave, null);
+            session.getActionQueue().registerProcess((exito, s) -> cache.unlockItem(s, clave, bloqueo));
+        }
+        session.getActionQueue().registerProcess((exito, s) ->
+                s.getFactory().getCache().getTimestampsCache().invalidate(tablas, s));
+    }
+}
@@ -0,0 +1,33 @@
+package com.tup.examen.repository;
+
+import com.tup.examen.model.Factura;
+import com.tup.examen.model.ResumenDiario;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+@Repository
+public interface ResumenDiarioRepository extends JpaRepository<ResumenDiario, ResumenDiario.Clave>, ResumenDiarioRepositoryCustom {
+    
+    // Recorre a lo sumo (días del rango x estados) filas, sin importar cuántas facturas haya
+    @Query("SELECT COALESCE(SUM(r.cantidad), 0) FROM ResumenDiario r WHERE r.fecha >= :desde AND r.fecha <= :hasta")
+    long contarEntre(@Param("desde") LocalDate desde, @Param("hasta") LocalDate hasta);
+    
+    @Query("SELECT COALESCE(SUM(r.total), 0) FROM ResumenDiario r "
+            + "WHERE r.fecha >= :desde AND r.fecha <= :hasta AND r.estado = :estado")
+    BigDecimal sumarTotalEntre(@Param("desde") LocalDate desde, @Param("hasta") LocalDate hasta,
+                               @Param("estado") Factura.EstadoFactura estado);
+    
+    @Query("SELECT COALESCE(SUM(r.cantidad), 0) FROM ResumenDiario r")
+    long contarTodas();
+    
+    @Query("SELECT COALESCE(SUM(r.cantidad), 0) FROM ResumenDiario r WHERE r.estado = :estado")
+    long contarPorEstado(@Param("estado") Factura.EstadoFactura estado);
+    
+    @Query("SELECT COALESCE(SUM(r.total), 0) FROM ResumenDiario r WHERE r.estado = :estado")
+    BigDecimal sumarTotalPorEstado(@Param("estado") Factura.EstadoFactura estado);
+}
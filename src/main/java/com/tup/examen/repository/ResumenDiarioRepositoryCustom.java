@@ -0,0 +1,23 @@
+package com.tup.examen.repository;
+
+import com.tup.examen.model.Factura;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collection;
+
+public interface ResumenDiarioRepositoryCustom {
+    
+    // Suma cada variación a su fila (fecha, estado), creándola si no existe, en un único batch JDBC
+    void acumular(Collection<Variacion> variaciones);
+    
+    // Mueve los importes de una factura de la fila de un estado a la de otro, leyéndolos de la propia factura
+    void moverFactura(Long facturaId, Factura.EstadoFactura desde, Factura.EstadoFactura hacia);
+    
+    // Recalcula toda la tabla a partir de las facturas
+    int reconstruir();
+    
+    record Variacion(LocalDate fecha, Factura.EstadoFactura estado, long cantidad,
+                     BigDecimal subtotal, BigDecimal impuesto, BigDecimal total) {
+    }
+}
@@ -0,0 +1,82 @@
+package com.tup.examen.repository;
+
+import com.tup.examen.model.Factura;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.Collection;
+
+class ResumenDiarioRepositoryImpl implements ResumenDiarioRepositoryCustom {
+    
+    private static final String SQL_COMBINAR = "WHEN MATCHED THEN UPDATE SET cantidad = r.cantidad + v.cantidad, "
+            + "subtotal = r.subtotal + v.subtotal, impuesto = r.impuesto + v.impuesto, total = r.total + v.total "
+            + "WHEN NOT MATCHED THEN INSERT (fecha, estado, cantidad, subtotal, impuesto, total) "
+            + "VALUES (v.fecha, v.estado, v.cantidad, v.subtotal, v.impuesto, v.total)";
+    
+    private static final String SQL_ACUMULAR = "MERGE INTO resumen_diario r USING (SELECT CAST(? AS DATE) fecha, "
+            + "CAST(? AS VARCHAR(20)) estado, CAST(? AS BIGINT) cantidad, CAST(? AS DECIMAL(14, 2)) subtotal, "
+            + "CAST(? AS DECIMAL(14, 2)) impuesto, CAST(? AS DECIMAL(14, 2)) total) v "
+            + "ON r.fecha = v.fecha AND r.estado = v.estado " + SQL_COMBINAR;
+    
+    private static final String SQL_MOVER = "MERGE INTO resumen_diario r USING (SELECT CAST(f.fecha_creacion AS DATE) fecha, "
+            + "CAST(? AS VARCHAR(20)) estado, CAST(? AS BIGINT) cantidad, f.subtotal * ? subtotal, "
+            + "f.impuesto * ? impuesto, f.total * ? total FROM facturas f WHERE f.id = ?) v "
+            + "ON r.fecha = v.fecha AND r.estado = v.estado " + SQL_COMBINAR;
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Override
+    public void acumular(Collection<Variacion> variaciones) {
+        if (variaciones.isEmpty()) {
+            return;
+        }
+        try {
+            ejecutarAcumular(variaciones);
+        } catch (DuplicateKeyException e) {
+            // Otra transacción insertó la misma fila (primer alta del día) entre el MERGE y el INSERT; la fila
+            // ya existe, así que al repetir el MERGE entra por la rama de actualización
+            ejecutarAcumular(variaciones);
+        }
+    }
+    
+    @Override
+    public void moverFactura(Long facturaId, Factura.EstadoFactura desde, Factura.EstadoFactura hacia) {
+        if (desde == hacia) {
+            return;
+        }
+        try {
+            ejecutarMover(facturaId, desde, hacia);
+        } catch (DuplicateKeyException e) {
+            ejecutarMover(facturaId, desde, hacia);
+        }
+    }
+    
+    @Override
+    public int reconstruir() {
+        jdbcTemplate.update("DELETE FROM resumen_diario");
+        return jdbcTemplate.update("INSERT INTO resumen_diario (fecha, estado, cantidad, subtotal, impuesto, total) "
+                + "SELECT CAST(fecha_creacion AS DATE), estado, COUNT(*), SUM(subtotal), SUM(impuesto), SUM(total) "
+                + "FROM facturas GROUP BY CAST(fecha_creacion AS DATE), estado");
+    }
+    
+    private void ejecutarAcumular(Collection<Variacion> variaciones) {
+        jdbcTemplate.batchUpdate(SQL_ACUMULAR, new ArrayList<>(variaciones), variaciones.size(), (sentencia, variacion) -> {
+            sentencia.setDate(1, Date.valueOf(variacion.fecha()));
+            sentencia.setString(2, variacion.estado().name());
+            sentencia.setLong(3, variacion.cantidad());
+            sentencia.setBigDecimal(4, variacion.subtotal());
+            sentencia.setBigDecimal(5, variacion.impuesto());
+            sentencia.setBigDecimal(6, variacion.total());
+        });
+    }
+    
+    private void ejecutarMover(Long facturaId, Factura.EstadoFactura desde, Factura.EstadoFactura hacia) {
+        // La fila del estado anterior se descuenta antes de sumar en la del nuevo
+        jdbcTemplate.update(SQL_MOVER, desde.name(), -1, -1, -1, -1, facturaId);
+        jdbcTemplate.update(SQL_MOVER, hacia.name(), 1, 1, 1, 1, facturaId);
+    }
+}
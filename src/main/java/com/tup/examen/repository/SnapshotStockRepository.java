@@ -0,0 +1,39 @@
+package com.tup.examen.repository;
+
+import com.tup.examen.model.SnapshotStock;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface SnapshotStockRepository extends JpaRepository<SnapshotStock, Long> {
+    
+    // Con fechas repetidas gana el snapshot que cubre más movimientos
+    Optional<SnapshotStock> findFirstByPiezaIdAndFechaCorteLessThanEqualOrderByFechaCorteDescHastaMovimientoIdDesc(
+            Long piezaId, LocalDateTime fecha);
+    
+    // Para cada pieza con movimientos posteriores al último snapshot (por id, no por fecha), inserta un snapshot
+    // nuevo con el stock anterior más esos movimientos. Cada escritor de movimientos tiene bloqueada la fila de
+    // la pieza al insertarlos, así que los ids visibles de una pieza son un prefijo de los que van a confirmar:
+    // un movimiento que confirma tarde siempre tiene un id mayor que el último compactado, aunque su fecha sea
+    // anterior. Todo el trabajo se hace en la base, en una sentencia
+    @Modifying
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_NATIVE_SPACES, value = "snapshots_stock"))
+    @Query(value = "INSERT INTO snapshots_stock (pieza_id, stock, fecha_corte, hasta_movimiento_id) "
+            + "SELECT m.pieza_id, COALESCE(s.stock, 0) + SUM(m.cantidad), "
+            + "GREATEST(COALESCE(s.fecha_corte, :inicio), MAX(m.fecha)), MAX(m.id) "
+            + "FROM movimientos_stock m "
+            + "LEFT JOIN snapshots_stock s ON s.pieza_id = m.pieza_id AND s.hasta_movimiento_id = "
+            + "(SELECT MAX(s2.hasta_movimiento_id) FROM snapshots_stock s2 WHERE s2.pieza_id = m.pieza_id) "
+            + "WHERE m.id > COALESCE(s.hasta_movimiento_id, 0) "
+            + "GROUP BY m.pieza_id, s.stock, s.fecha_corte", nativeQuery = true)
+    int compactar(@Param("inicio") LocalDateTime inicio);
+}
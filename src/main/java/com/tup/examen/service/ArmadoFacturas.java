@@ -0,0 +1,84 @@
+package com.tup.examen.service;
+
+import com.tup.examen.dto.FacturaDTO;
+import com.tup.examen.dto.ItemFacturaDTO;
+import com.tup.examen.model.Factura;
+import com.tup.examen.model.ItemFactura;
+import com.tup.examen.model.Pieza;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+// Validación y armado de una factura nueva a partir de su DTO, compartidos por el alta individual, la ingesta
+// agrupada y la facturación en lote. La validación cubre las columnas obligatorias y las longitudes de la
+// tabla, así un dato inválido se rechaza antes de llegar a la base
+final class ArmadoFacturas {
+    
+    static final BigDecimal TASA_IMPUESTO = new BigDecimal("0.21"); // 21% IVA
+    
+    private ArmadoFacturas() {
+    }
+    
+    // Devuelve el motivo del rechazo, o null si la factura es válida
+    static String validar(FacturaDTO factura) {
+        if (factura == null) {
+            return "Factura vacía";
+        }
+        if (factura.getClienteNombre() == null || factura.getClienteNombre().isBlank()) {
+            return "El nombre del cliente es obligatorio";
+        }
+        if (factura.getClienteNombre().length() > 100) {
+            return "El nombre del cliente supera los 100 caracteres";
+        }
+        if (excede(factura.getClienteDocumento(), 20) || excede(factura.getClienteEmail(), 100)
+                || excede(factura.getClienteTelefono(), 20)) {
+            return "Los datos de contacto del cliente superan la longitud permitida";
+        }
+        if (factura.getItems() == null || factura.getItems().isEmpty()) {
+            return "La factura no contiene items";
+        }
+        for (ItemFacturaDTO item : factura.getItems()) {
+            if (item == null || item.getPiezaId() == null) {
+                return "Cada item debe indicar la pieza";
+            }
+            if (item.getCantidad() == null || item.getCantidad() <= 0) {
+                return "La cantidad debe ser mayor a cero para la pieza: " + item.getPiezaId();
+            }
+            if (excede(item.getDescripcion(), 200)) {
+                return "La descripción del item supera los 200 caracteres";
+            }
+        }
+        return null;
+    }
+    
+    // Los precios salen de las piezas ya leídas; cada item del DTO debe tener su pieza en el mapa
+    static Factura construir(FacturaDTO dto, String numeroFactura, Map<Long, Pieza> piezas) {
+        Factura factura = new Factura();
+        factura.setNumeroFactura(numeroFactura);
+        factura.setClienteNombre(dto.getClienteNombre());
+        factura.setClienteDocumento(dto.getClienteDocumento());
+        factura.setClienteEmail(dto.getClienteEmail());
+        factura.setClienteTelefono(dto.getClienteTelefono());
+    
+        BigDecimal subtotal = BigDecimal.ZERO;
+        for (ItemFacturaDTO itemDTO : dto.getItems()) {
+            Pieza pieza = piezas.get(itemDTO.getPiezaId());
+            ItemFactura item = new ItemFactura();
+            item.setFactura(factura);
+            item.setPieza(pieza);
+            item.setCantidad(itemDTO.getCantidad());
+            item.setPrecioUnitario(pieza.getPrecio());
+            item.setDescripcion(itemDTO.getDescripcion());
+            subtotal = subtotal.add(pieza.getPrecio().multiply(BigDecimal.valueOf(itemDTO.getCantidad())));
+            factura.getItems().add(item);
+        }
+        factura.setSubtotal(subtotal);
+        factura.setImpuesto(subtotal.multiply(TASA_IMPUESTO));
+        factura.setTotal(subtotal.add(factura.getImpuesto()));
+        return factura;
+    }
+    
+    private static boolean excede(String valor, int longitud) {
+        return valor != null && valor.length() > longitud;
+    }
+}
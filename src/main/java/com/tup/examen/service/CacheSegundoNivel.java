@@ -0,0 +1,57 @@
+package com.tup.examen.service;
+
+import com.tup.examen.config.CacheSegundoNivelConfig;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.cache.spi.RegionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Aciertos y fallos por región de la caché de segundo nivel, tomados de las estadísticas de Hibernate
+// (requiere hibernate.generate_statistics)
+@Component
+public class CacheSegundoNivel {
+    
+    private static final List<String> REGIONES = List.of(
+            CacheSegundoNivelConfig.REGION_PIEZAS,
+            CacheSegundoNivelConfig.REGION_CONSULTAS_PIEZAS,
+            RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME);
+    
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    
+    public Map<String, Object> obtenerEstadisticas() {
+        Statistics estadisticas = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        Map<String, Object> resultado = new LinkedHashMap<>();
+        resultado.put("estadisticasHabilitadas", estadisticas.isStatisticsEnabled());
+        Map<String, Object> regiones = new LinkedHashMap<>();
+        for (String nombre : REGIONES) {
+            CacheRegionStatistics region = estadisticas.getCacheRegionStatistics(nombre);
+            if (region != null) {
+                regiones.put(nombre, resumen(region.getHitCount(), region.getMissCount(), region.getPutCount()));
+            }
+        }
+        resultado.put("regiones", regiones);
+        resultado.put("entidades", resumen(estadisticas.getSecondLevelCacheHitCount(),
+                estadisticas.getSecondLevelCacheMissCount(), estadisticas.getSecondLevelCachePutCount()));
+        resultado.put("consultas", resumen(estadisticas.getQueryCacheHitCount(),
+                estadisticas.getQueryCacheMissCount(), estadisticas.getQueryCachePutCount()));
+        return resultado;
+    }
+    
+    private static Map<String, Object> resumen(long aciertos, long fallos, long escrituras) {
+        long totalLecturas = aciertos + fallos;
+        Map<String, Object> resumen = new LinkedHashMap<>();
+        resumen.put("aciertos", aciertos);
+        resumen.put("fallos", fallos);
+        resumen.put("tasaAciertos", totalLecturas == 0 ? 0.0 : (double) aciertos / totalLecturas);
+        resumen.put("escrituras", escrituras);
+        return resumen;
+    }
+}
@@ -0,0 +1,85 @@
+package com.tup.examen.service;
+
+import com.tup.examen.dto.DashboardDTO;
+import com.tup.examen.dto.TotalesInventarioDTO;
+import com.tup.examen.model.Factura;
+import com.tup.examen.repository.PiezaRepository;
+import com.tup.examen.repository.ResumenDiarioRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Indicadores del panel principal. Se calculan con consultas de agregación (inventario sobre piezas, ventas
+// sobre resumen_diario) y se comparten entre todos los clientes durante un TTL corto: con muchos paneles
+// abiertos, la base recibe a lo sumo un cálculo por TTL
+@Service
+public class DashboardService {
+    
+    private final PiezaRepository piezaRepository;
+    private final ResumenDiarioRepository resumenDiarioRepository;
+    private final int umbralStockBajo;
+    private final long ttlMillis;
+    private final Clock reloj;
+    
+    // Un único cálculo a la vez; los demás esperan y reutilizan su resultado
+    private final ReentrantLock recalculo = new ReentrantLock();
+    private volatile Instantanea actual;
+    
+    @Autowired
+    public DashboardService(PiezaRepository piezaRepository, ResumenDiarioRepository resumenDiarioRepository,
+                            @Value("${dashboard.stock-bajo.umbral:10}") int umbralStockBajo,
+                            @Value("${dashboard.cache.ttl-segundos:5}") long ttlSegundos) {
+        // Zona local: la fecha de cálculo se muestra junto a las fechas de facturas, que usan LocalDateTime.now()
+        this(piezaRepository, resumenDiarioRepository, umbralStockBajo, Duration.ofSeconds(ttlSegundos),
+                Clock.systemDefaultZone());
+    }
+    
+    DashboardService(PiezaRepository piezaRepository, ResumenDiarioRepository resumenDiarioRepository,
+                     int umbralStockBajo, Duration ttl, Clock reloj) {
+        this.piezaRepository = piezaRepository;
+        this.resumenDiarioRepository = resumenDiarioRepository;
+        this.umbralStockBajo = umbralStockBajo;
+        this.ttlMillis = ttl.toMillis();
+        this.reloj = reloj;
+    }
+    
+    public DashboardDTO obtenerResumen() {
+        Instantanea instantanea = actual;
+        if (instantanea != null && instantanea.vigenteHasta() > reloj.millis()) {
+            return instantanea.resumen();
+        }
+        recalculo.lock();
+        try {
+            instantanea = actual;
+            if (instantanea == null || instantanea.vigenteHasta() <= reloj.millis()) {
+                instantanea = new Instantanea(calcular(), reloj.millis() + ttlMillis);
+                actual = instantanea;
+            }
+            return instantanea.resumen();
+        } finally {
+            recalculo.unlock();
+        }
+    }
+    
+    private DashboardDTO calcular() {
+        TotalesInventarioDTO inventario = piezaRepository.calcularTotalesInventario(umbralStockBajo);
+        return new DashboardDTO(
+                inventario.getTotalPiezas(),
+                inventario.getPiezasStockBajo() != null ? inventario.getPiezasStockBajo() : 0L,
+                inventario.getValorInventario() != null ? inventario.getValorInventario() : BigDecimal.ZERO,
+                resumenDiarioRepository.contarTodas(),
+                resumenDiarioRepository.contarPorEstado(Factura.EstadoFactura.PAGADA),
+                resumenDiarioRepository.contarPorEstado(Factura.EstadoFactura.PENDIENTE),
+                resumenDiarioRepository.sumarTotalPorEstado(Factura.EstadoFactura.PAGADA),
+                LocalDateTime.now(reloj));
+    }
+    
+    private record Instantanea(DashboardDTO resumen, long vigenteHasta) {
+    }
+}
@@ -0,0 +1,247 @@
+package com.tup.examen.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Difusión de eventos de cambio a muchos suscriptores (SSE). Publicar nunca bloquea: el evento se agrega al
+// historial y al buffer acotado de cada suscriptor, y un pool chico de hilos los envía. Si un cliente lento
+// llena su buffer se descartan sus eventos más viejos. El historial permite retomar desde Last-Event-ID
+@Component
+public class DifusorEventos {
+    
+    // Sin id: se envía como comentario para mantener viva la conexión y detectar clientes caídos
+    static final EventoCambio LATIDO = new EventoCambio(null, null, Map.of());
+    // El cliente perdió eventos (por historial agotado o buffer lleno) y debe recargar el estado completo
+    static final EventoCambio RESINCRONIZAR = new EventoCambio(null, "RESINCRONIZAR", Map.of());
+    
+    private final int capacidadHistorial;
+    private final int capacidadBuffer;
+    private final ExecutorService envios;
+    
+    private final ArrayDeque<EventoCambio> historial = new ArrayDeque<>();
+    private final Set<Suscriptor> suscriptores = new LinkedHashSet<>();
+    private long ultimoId;
+    
+    private final AtomicLong publicados = new AtomicLong();
+    private final AtomicLong descartados = new AtomicLong();
+    
+    @Autowired
+    public DifusorEventos(@Value("${eventos.sse.historial:1000}") int capacidadHistorial,
+                          @Value("${eventos.sse.buffer-cliente:256}") int capacidadBuffer,
+                          @Value("${eventos.sse.hilos-envio:4}") int hilosEnvio) {
+        this(capacidadHistorial, capacidadBuffer, Executors.newFixedThreadPool(hilosEnvio, tarea -> {
+            Thread hilo = new Thread(tarea, "difusor-eventos");
+            hilo.setDaemon(true);
+            return hilo;
+        }), System.currentTimeMillis() * 1000);
+    }
+    
+    DifusorEventos(int capacidadHistorial, int capacidadBuffer, ExecutorService envios) {
+        this(capacidadHistorial, capacidadBuffer, envios, 0);
+    }
+    
+    // Los ids parten del instante de arranque: tras un reinicio quedan por encima de los de la ejecución
+    // anterior (mientras ésta haya publicado menos de mil eventos por milisegundo de vida), así un cliente
+    // que reconecta con un id viejo cae fuera del historial y recibe RESINCRONIZAR
+    DifusorEventos(int capacidadHistorial, int capacidadBuffer, ExecutorService envios, long idInicial) {
+        this.capacidadHistorial = capacidadHistorial;
+        this.capacidadBuffer = capacidadBuffer;
+        this.envios = envios;
+        this.ultimoId = idInicial;
+    }
+    
+    @PreDestroy
+    void detener() {
+        List<Suscriptor> activos;
+        synchronized (this) {
+            activos = new ArrayList<>(suscriptores);
+            suscriptores.clear();
+        }
+        activos.forEach(suscriptor -> suscriptor.canal.cerrar());
+        envios.shutdownNow();
+    }
+    
+    // Publica cuando la transacción actual confirma: un cambio revertido no debe llegar a los clientes
+    public void publicarAlConfirmar(String tipo, Map<String, Object> datos) {
+        Transacciones.alConfirmar(() -> publicar(tipo, datos));
+    }
+    
+    public void publicar(String tipo, Map<String, Object> datos) {
+        List<Suscriptor> porDrenar = new ArrayList<>();
+        synchronized (this) {
+            EventoCambio evento = new EventoCambio(++ultimoId, tipo, datos);
+            historial.addLast(evento);
+            if (historial.size() > capacidadHistorial) {
+                historial.removeFirst();
+            }
+            for (Suscriptor suscriptor : suscriptores) {
+                if (suscriptor.encolar(evento)) {
+                    porDrenar.add(suscriptor);
+                }
+            }
+        }
+        publicados.incrementAndGet();
+        porDrenar.forEach(this::programar);
+    }
+    
+    // El registro y la reposición del historial ocurren bajo el mismo lock que la publicación, así que el
+    // suscriptor recibe cada evento exactamente una vez: o desde el historial o en vivo
+    public Suscripcion suscribir(Long ultimoIdRecibido, Canal canal) {
+        Suscriptor suscriptor = new Suscriptor(canal);
+        boolean drenar = false;
+        synchronized (this) {
+            if (ultimoIdRecibido != null) {
+                EventoCambio primero = historial.peekFirst();
+                long primeroDisponible = primero != null ? primero.id() : ultimoId + 1;
+                if (ultimoIdRecibido + 1 < primeroDisponible || ultimoIdRecibido > ultimoId) {
+                    // Parte de lo que el cliente no vio ya salió del historial, o el id es de otra ejecución
+                    drenar |= suscriptor.desfasar();
+                }
+                for (EventoCambio evento : historial) {
+                    if (evento.id() > ultimoIdRecibido) {
+                        drenar |= suscriptor.encolar(evento);
+                    }
+                }
+            }
+            suscriptores.add(suscriptor);
+        }
+        if (drenar) {
+            programar(suscriptor);
+        }
+        return () -> cancelar(suscriptor);
+    }
+    
+    @Scheduled(fixedDelayString = "${eventos.sse.latido-ms:15000}")
+    public void latido() {
+        List<Suscriptor> porDrenar = new ArrayList<>();
+        synchronized (this) {
+            for (Suscriptor suscriptor : suscriptores) {
+                if (suscriptor.encolar(LATIDO)) {
+                    porDrenar.add(suscriptor);
+                }
+            }
+        }
+        porDrenar.forEach(this::programar);
+    }
+    
+    public synchronized Map<String, Object> obtenerEstadisticas() {
+        return Map.of(
+                "suscriptores", suscriptores.size(),
+                "ultimoId", ultimoId,
+                "publicados", publicados.get(),
+                "descartados", descartados.get());
+    }
+    
+    private void cancelar(Suscriptor suscriptor) {
+        synchronized (this) {
+            suscriptores.remove(suscriptor);
+        }
+    }
+    
+    private void programar(Suscriptor suscriptor) {
+        try {
+            envios.execute(suscriptor::drenar);
+        } catch (RuntimeException e) {
+            // Pool detenido: la aplicación se está cerrando
+            cancelar(suscriptor);
+        }
+    }
+    
+    public record EventoCambio(Long id, String tipo, Map<String, Object> datos) {
+    }
+    
+    // Destino de los eventos de un suscriptor; enviar puede bloquear, pero solo ocupa un hilo de envío
+    public interface Canal {
+        
+        void enviar(EventoCambio evento) throws IOException;
+        
+        void cerrar();
+    }
+    
+    public interface Suscripcion {
+        
+        void cancelar();
+    }
+    
+    private class Suscriptor {
+        
+        private final Canal canal;
+        private final ArrayDeque<EventoCambio> buffer = new ArrayDeque<>();
+        // Hay una tarea de envío programada o en curso; garantiza un solo envío a la vez y en orden
+        private boolean enEnvio;
+        // Se descartaron eventos: antes de los siguientes se envía RESINCRONIZAR
+        private boolean desfasado;
+        
+        Suscriptor(Canal canal) {
+            this.canal = canal;
+        }
+        
+        // Devuelve true si hace falta programar el envío
+        boolean encolar(EventoCambio evento) {
+            synchronized (buffer) {
+                if (buffer.size() >= capacidadBuffer) {
+                    buffer.removeFirst();
+                    descartados.incrementAndGet();
+                    desfasado = true;
+                }
+                buffer.addLast(evento);
+                return reservarEnvio();
+            }
+        }
+        
+        boolean desfasar() {
+            synchronized (buffer) {
+                desfasado = true;
+                return reservarEnvio();
+            }
+        }
+        
+        private boolean reservarEnvio() {
+            if (enEnvio) {
+                return false;
+            }
+            enEnvio = true;
+            return true;
+        }
+        
+        void drenar() {
+            while (true) {
+                EventoCambio evento;
+                synchronized (buffer) {
+                    if (desfasado) {
+                        desfasado = false;
+                        evento = RESINCRONIZAR;
+                    } else {
+                        evento = buffer.pollFirst();
+                    }
+                    if (evento == null) {
+                        enEnvio = false;
+                        return;
+                    }
+                }
+                try {
+                    canal.enviar(evento);
+                } catch (IOException | RuntimeException e) {
+                    // Conexión cerrada por el cliente
+                    cancelar(this);
+                    canal.cerrar();
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.tup.examen.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+import com.tup.examen.model.Factura;
+import com.tup.examen.repository.FacturaRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+@Service
+public class FacturaExportacionService {
+    
+    public static final String FORMATO_NDJSON = "ndjson";
+    public static final String FORMATO_CSV = "csv";
+    
+    // Cada cuántas filas se vacía el contexto de persistencia y se envía lo escrito al cliente
+    static final int FILAS_POR_LIMPIEZA = 1000;
+    
+    private static final JsonFactory JSON = JsonFactory.builder()
+            .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+            .build();
+    
+    private static final String ENCABEZADO_CSV = "id,numeroFactura,clienteNombre,clienteDocumento,clienteEmail,clienteTelefono,"
+            + "subtotal,impuesto,total,estado,fechaCreacion,fechaPago";
+    
+    @Autowired
+    private FacturaRepository facturaRepository;
+    
+    @PersistenceContext
+    private EntityManager entityManager;
+    
+    public static boolean esFormatoValido(String formato) {
+        return FORMATO_NDJSON.equalsIgnoreCase(formato) || FORMATO_CSV.equalsIgnoreCase(formato);
+    }
+    
+    @Transactional(readOnly = true)
+    public long exportarPorPeriodo(LocalDateTime fechaInicio, LocalDateTime fechaFin, String formato, OutputStream salida) {
+        if (!esFormatoValido(formato)) {
+            throw new RuntimeException("Formato de exportación no soportado: " + formato);
+        }
+        boolean csv = FORMATO_CSV.equalsIgnoreCase(formato);
+        long filas = 0;
+        try (Stream<Factura> facturas = facturaRepository.streamPorPeriodo(fechaInicio, fechaFin)) {
+            Writer escritor = new BufferedWriter(new OutputStreamWriter(salida, StandardCharsets.UTF_8));
+            JsonGenerator json = null;
+            if (csv) {
+                escritor.write(ENCABEZADO_CSV);
+                escritor.write('\n');
+            } else {
+                // Un único generador para todo el flujo; cada factura es un valor raíz separado por salto de línea
+                json = JSON.createGenerator(escritor);
+                json.setRootValueSeparator(null);
+            }
+            Iterator<Factura> iterador = facturas.iterator();
+            while (iterador.hasNext()) {
+                Factura factura = iterador.next();
+                if (csv) {
+                    escribirCsv(factura, escritor);
+                } else {
+                    escribirJson(factura, json);
+                }
+                filas++;
+                // Sin limpiar, el contexto retendría todas las facturas leídas hasta el final de la transacción
+                if (filas % FILAS_POR_LIMPIEZA == 0) {
+                    entityManager.clear();
+                    if (json != null) {
+                        json.flush();
+                    }
+                    escritor.flush();
+                }
+            }
+            if (json != null) {
+                json.close();
+            }
+            escritor.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error al escribir la exportación", e);
+        }
+        return filas;
+    }
+    
+    private void escribirJson(Factura factura, JsonGenerator json) throws IOException {
+        json.writeStartObject();
+        json.writeNumberField("id", factura.getId());
+        json.writeStringField("numeroFactura", factura.getNumeroFactura());
+        json.writeStringField("clienteNombre", factura.getClienteNombre());
+        json.writeStringField("clienteDocumento", factura.getClienteDocumento());
+        json.writeStringField("clienteEmail", factura.getClienteEmail());
+        json.writeStringField("clienteTelefono", factura.getClienteTelefono());
+        escribirNumero(json, "subtotal", factura.getSubtotal());
+        escribirNumero(json, "impuesto", factura.getImpuesto());
+        escribirNumero(json, "total", factura.getTotal());
+        json.writeStringField("estado", factura.getEstado() != null ? factura.getEstado().name() : null);
+        json.writeStringField("fechaCreacion", texto(factura.getFechaCreacion()));
+        json.writeStringField("fechaPago", texto(factura.getFechaPago()));
+        json.writeEndObject();
+        json.writeRaw('\n');
+    }
+    
+    private static void escribirNumero(JsonGenerator json, String campo, BigDecimal valor) throws IOException {
+        if (valor == null) {
+            json.writeNullField(campo);
+        } else {
+            json.writeNumberField(campo, valor);
+        }
+    }
+    
+    private void escribirCsv(Factura factura, Writer escritor) throws IOException {
+        escritor.write(String.valueOf(factura.getId()));
+        escribirCampoCsv(escritor, factura.getNumeroFactura());
+        escribirCampoCsv(escritor, factura.getClienteNombre());
+        escribirCampoCsv(escritor, factura.getClienteDocumento());
+        escribirCampoCsv(escritor, factura.getClienteEmail());
+        escribirCampoCsv(escritor, factura.getClienteTelefono());
+        escribirCampoCsv(escritor, texto(factura.getSubtotal()));
+        escribirCampoCsv(escritor, texto(factura.getImpuesto()));
+        escribirCampoCsv(escritor, texto(factura.getTotal()));
+        escribirCampoCsv(escritor, factura.getEstado() != null ? factura.getEstado().name() : null);
+        escribirCampoCsv(escritor, texto(factura.getFechaCreacion()));
+        escribirCampoCsv(escritor, texto(factura.getFechaPago()));
+        escritor.write('\n');
+    }
+    
+    private static void escribirCampoCsv(Writer escritor, String valor) throws IOException {
+        escritor.write(',');
+        if (valor == null) {
+            return;
+        }
+        if (valor.indexOf(',') >= 0 || valor.indexOf('"') >= 0 || valor.indexOf('\n') >= 0 || valor.indexOf('\r') >= 0) {
+            escritor.write('"');
+            escritor.write(valor.replace("\"", "\"\""));
+            escritor.write('"');
+        } else {
+            escritor.write(valor);
+        }
+    }
+    
+    private static String texto(Object valor) {
+        if (valor instanceof BigDecimal numero) {
+            return numero.toPlainString();
+        }
+        return valor == null ? null : valor.toString();
+    }
+}
@@ -0,0 +1,206 @@
+package com.tup.examen.service;
+
+import com.tup.examen.dto.FacturaDTO;
+import com.tup.examen.dto.ResultadoFacturaLoteDTO;
+import com.tup.examen.model.EventoOutbox;
+import com.tup.examen.model.Factura;
+import com.tup.examen.model.MovimientoStock;
+import com.tup.examen.model.Pieza;
+import com.tup.examen.repository.FacturaRepository;
+import com.tup.examen.repository.PiezaRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+// Facturación masiva: valida todo el lote, bloquea cada pieza referenciada una sola vez, reparte el stock
+// entre las facturas en el orden recibido y confirma las aceptadas en una transacción. Las facturas que no
+// pueden emitirse se informan en el resultado sin afectar al resto
+@Service
+public class FacturaLoteService {
+    
+    @Autowired
+    private FacturaRepository facturaRepository;
+    
+    @Autowired
+    private PiezaRepository piezaRepository;
+    
+    @Autowired
+    private PiezaCache piezaCache;
+    
+    @Autowired
+    private IndiceFacetas indiceFacetas;
+    
+    @Autowired
+    private NumeradorFacturas numeradorFacturas;
+    
+    @Autowired
+    private LibroStock libroStock;
+    
+    @Autowired
+    private Outbox outbox;
+    
+    @Autowired
+    private ResumenesDiarios resumenesDiarios;
+    
+    @Autowired
+    private DifusorEventos difusorEventos;
+    
+    @PersistenceContext
+    private EntityManager entityManager;
+    
+    @Value("${facturas.lote.maximo:1000}")
+    private int maximoPorLote;
+    
+    @Transactional
+    public List<ResultadoFacturaLoteDTO> crearLote(List<FacturaDTO> facturas) {
+        if (facturas == null || facturas.isEmpty()) {
+            throw new RuntimeException("El lote no contiene facturas");
+        }
+        if (facturas.size() > maximoPorLote) {
+            throw new RuntimeException("El lote supera el máximo de " + maximoPorLote + " facturas");
+        }
+        ResultadoFacturaLoteDTO[] resultados = new ResultadoFacturaLoteDTO[facturas.size()];
+        
+        // Validación sin tocar la base y una sola consulta de números ya emitidos
+        Set<String> numerosDelLote = new HashSet<>();
+        for (int i = 0; i < facturas.size(); i++) {
+            FacturaDTO factura = facturas.get(i);
+            String motivo = ArmadoFacturas.validar(factura);
+            if (motivo == null && tieneNumero(factura) && !numerosDelLote.add(factura.getNumeroFactura())) {
+                motivo = "Número de factura repetido dentro del lote";
+            }
+            if (motivo != null) {
+                resultados[i] = rechazo(i, motivo);
+            }
+        }
+        Set<String> existentes = numerosDelLote.isEmpty() ? Set.of()
+                : facturaRepository.buscarNumerosExistentes(numerosDelLote);
+        
+        // Todas las piezas del lote se leen y bloquean en una consulta, en orden de id
+        Set<Long> piezaIds = new TreeSet<>();
+        for (int i = 0; i < facturas.size(); i++) {
+            if (resultados[i] == null) {
+                facturas.get(i).getItems().forEach(item -> piezaIds.add(item.getPiezaId()));
+            }
+        }
+        Map<Long, Pieza> piezas = new HashMap<>();
+        Map<Long, Integer> disponible = new HashMap<>();
+        for (Pieza pieza : piezaIds.isEmpty() ? List.<Pieza>of() : piezaRepository.bloquearPorIds(piezaIds)) {
+            piezas.put(pieza.getId(), pieza);
+            disponible.put(pieza.getId(), pieza.getStock());
+        }
+        
+        // Reparto del stock en el orden del lote; la demanda aceptada se acumula por pieza
+        SortedMap<Long, Integer> demandaTotal = new TreeMap<>();
+        List<Integer> aceptadas = new ArrayList<>();
+        int sinNumero = 0;
+        for (int i = 0; i < facturas.size(); i++) {
+            if (resultados[i] != null) {
+                continue;
+            }
+            FacturaDTO factura = facturas.get(i);
+            if (tieneNumero(factura) && existentes.contains(factura.getNumeroFactura())) {
+                resultados[i] = rechazo(i, "Ya existe una factura con ese número");
+                continue;
+            }
+            Map<Long, Integer> demanda = new TreeMap<>();
+            factura.getItems().forEach(item -> demanda.merge(item.getPiezaId(), item.getCantidad(), Integer::sum));
+            String motivo = verificarStock(demanda, piezas, disponible);
+            if (motivo != null) {
+                resultados[i] = rechazo(i, motivo);
+                continue;
+            }
+            demanda.forEach((piezaId, cantidad) -> {
+                disponible.merge(piezaId, -cantidad, Integer::sum);
+                demandaTotal.merge(piezaId, cantidad, Integer::sum);
+            });
+            aceptadas.add(i);
+            if (!tieneNumero(factura)) {
+                sinNumero++;
+            }
+        }
+        
+        if (!aceptadas.isEmpty()) {
+            // Un único UPDATE por pieza para todo el lote, enviado como batch JDBC
+            if (!piezaRepository.descontarStockEnLote(demandaTotal, LocalDateTime.now()).isEmpty()) {
+                throw new RuntimeException("El stock cambió durante el proceso del lote");
+            }
+            demandaTotal.forEach((piezaId, cantidad) -> {
+                piezaCache.invalidar(piezaId);
+                Transacciones.alConfirmar(() -> indiceFacetas.marcarPendiente(piezaId));
+                difusorEventos.publicarAlConfirmar("STOCK_ACTUALIZADO", Map.of("piezaId", piezaId, "variacion", -cantidad));
+            });
+            
+            Iterator<String> numeros = numeradorFacturas.reservar(sinNumero).iterator();
+            List<Factura> creadas = new ArrayList<>(aceptadas.size());
+            List<MovimientoStock> movimientos = new ArrayList<>();
+            for (Integer i : aceptadas) {
+                FacturaDTO dto = facturas.get(i);
+                Factura factura = ArmadoFacturas.construir(dto, tieneNumero(dto) ? dto.getNumeroFactura() : numeros.next(), piezas);
+                // Con ids de secuencia y hibernate.jdbc.batch_size, facturas e items se insertan en lotes al hacer flush
+                entityManager.persist(factura);
+                creadas.add(factura);
+                movimientos.addAll(salidas(factura));
+            }
+            entityManager.flush();
+            libroStock.registrar(movimientos);
+            resumenesDiarios.registrarAltas(creadas);
+            for (int j = 0; j < aceptadas.size(); j++) {
+                int i = aceptadas.get(j);
+                FacturaDTO creada = FacturaDTO.fromEntity(creadas.get(j));
+                outbox.registrar(EventoOutbox.TipoEvento.FACTURA_CREADA, creada.getId(), creada);
+                difusorEventos.publicarAlConfirmar("FACTURA_CREADA", FacturaService.eventoFactura(creadas.get(j)));
+                resultados[i] = new ResultadoFacturaLoteDTO(i + 1, true, creada, null);
+            }
+        }
+        return List.of(resultados);
+    }
+    
+    private static String verificarStock(Map<Long, Integer> demanda, Map<Long, Pieza> piezas,
+                                         Map<Long, Integer> disponible) {
+        for (Map.Entry<Long, Integer> linea : demanda.entrySet()) {
+            Pieza pieza = piezas.get(linea.getKey());
+            if (pieza == null) {
+                return "Pieza no encontrada con id: " + linea.getKey();
+            }
+            if (disponible.get(linea.getKey()) < linea.getValue()) {
+                return "Stock insuficiente para la pieza: " + pieza.getCodigo();
+            }
+        }
+        return null;
+    }
+    
+    // Un movimiento de venta por pieza y factura, para que el libro conserve la referencia de cada factura
+    private static List<MovimientoStock> salidas(Factura factura) {
+        Map<Long, Integer> cantidades = new TreeMap<>();
+        factura.getItems().forEach(item -> cantidades.merge(item.getPieza().getId(), -item.getCantidad(), Integer::sum));
+        LocalDateTime ahora = LocalDateTime.now();
+        List<MovimientoStock> movimientos = new ArrayList<>(cantidades.size());
+        cantidades.forEach((piezaId, cantidad) -> movimientos.add(new MovimientoStock(null, piezaId, cantidad,
+                MovimientoStock.TipoMovimiento.VENTA, factura.getNumeroFactura(), ahora)));
+        return movimientos;
+    }
+    
+    private static boolean tieneNumero(FacturaDTO factura) {
+        return factura.getNumeroFactura() != null && !factura.getNumeroFactura().isBlank();
+    }
+    
+    private static ResultadoFacturaLoteDTO rechazo(int indice, String motivo) {
+        return new ResultadoFacturaLoteDTO(indice + 1, false, null, motivo);
+    }
+}
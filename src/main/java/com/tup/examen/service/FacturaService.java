@@ -1,23 +1,35 @@
 package com.tup.examen.service;
 
 import com.tup.examen.dto.FacturaDTO;
+import com.tup.examen.dto.FacturaResumenDTO;
 import com.tup.examen.dto.ItemFacturaDTO;
+import com.tup.examen.dto.PaginaDTO;
+import com.tup.examen.model.EventoOutbox;
 import com.tup.examen.model.Factura;
 import com.tup.examen.model.ItemFactura;
+import com.tup.examen.model.MovimientoStock;
 import com.tup.examen.model.Pieza;
 import com.tup.examen.repository.FacturaRepository;
 import com.tup.examen.repository.PiezaRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
 
 @Service
@@ -29,11 +41,35 @@ public class FacturaService {
     @Autowired
     private PiezaRepository piezaRepository;
     
-    private static final BigDecimal TASA_IMPUESTO = new BigDecimal("0.21"); // 21% IVA
-    private static final DateTimeFormatter FACTURA_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd");
+    @Autowired
+    private PiezaCache piezaCache;
+    
+    @Autowired
+    private IndiceFacetas indiceFacetas;
+    
+    @Autowired
+    private NumeradorFacturas numeradorFacturas;
+    
+    @Autowired
+    private LibroStock libroStock;
+    
+    @Autowired
+    private Outbox outbox;
     
+    @Autowired
+    private ResumenesDiarios resumenesDiarios;
+    
+    @Autowired
+    private DifusorEventos difusorEventos;
+    
+    private static final Set<Factura.EstadoFactura> ESTADOS_ANULABLES =
+            EnumSet.of(Factura.EstadoFactura.PENDIENTE, Factura.EstadoFactura.VENCIDA);
+    
+    public static final int LIMITE_PAGINA_POR_DEFECTO = 50;
+    public static final int LIMITE_PAGINA_MAXIMO = 500;
+    
+    @Transactional(readOnly = true)
     public List<FacturaDTO> obtenerTodasLasFacturas() {
-        // ----TODO: Implementar método
         List<Factura> facturas = facturaRepository.findAll();
         List<FacturaDTO> dtos = new ArrayList<>();
         for (Factura f : facturas) {
@@ -42,8 +78,28 @@ public class FacturaService {
         return dtos;
     }
     
+    @Transactional(readOnly = true)
+    public PaginaDTO<FacturaDTO> obtenerPaginaDeFacturas(Long despuesDeId, Integer limite) {
+        int limiteEfectivo = limite == null ? LIMITE_PAGINA_POR_DEFECTO
+                : Math.max(1, Math.min(limite, LIMITE_PAGINA_MAXIMO));
+        long cursor = despuesDeId == null ? 0L : despuesDeId;
+        
+        List<Long> ids = facturaRepository.listarIdsDespuesDe(cursor, Limit.of(limiteEfectivo + 1));
+        boolean hayMas = ids.size() > limiteEfectivo;
+        if (hayMas) {
+            ids = ids.subList(0, limiteEfectivo);
+        }
+        List<FacturaDTO> items = ids.isEmpty() ? List.of()
+                : facturaRepository.buscarConItemsPorIds(ids).stream()
+                        .map(this::convertirADTO)
+                        .collect(Collectors.toList());
+        
+        String siguienteCursor = hayMas ? String.valueOf(ids.get(ids.size() - 1)) : null;
+        return new PaginaDTO<>(items, siguienteCursor, hayMas, limiteEfectivo);
+    }
+    
+    @Transactional(readOnly = true)
     public Optional<FacturaDTO> obtenerFacturaPorId(Long id) {
-        // ----TODO: Implementar método
         Optional<Factura> factura = facturaRepository.findById(id);
         if (factura.isPresent()) {
             return Optional.of(convertirADTO(factura.get()));
@@ -51,8 +107,8 @@ public class FacturaService {
         return Optional.empty();
     }
     
+    @Transactional(readOnly = true)
     public Optional<FacturaDTO> obtenerFacturaPorNumero(String numeroFactura) {
-        // ----TODO: Implementar método
         Optional<Factura> factura = facturaRepository.findByNumeroFactura(numeroFactura);
         if (factura.isPresent()) {
             return Optional.of(convertirADTO(factura.get()));
@@ -60,8 +116,8 @@ public class FacturaService {
         return Optional.empty();
     }
     
+    @Transactional(readOnly = true)
     public List<FacturaDTO> buscarFacturasPorCliente(String clienteNombre) {
-        // ----TODO: Implementar método
         List<Factura> facturas = facturaRepository.findByClienteNombreContainingIgnoreCase(clienteNombre);
         List<FacturaDTO> dtos = new ArrayList<>();
         for (Factura f : facturas) {
@@ -70,8 +126,8 @@ public class FacturaService {
         return dtos;
     }
     
+    @Transactional(readOnly = true)
     public List<FacturaDTO> buscarFacturasPorEstado(Factura.EstadoFactura estado) {
-        // ----TODO: Implementar método
         List<Factura> facturas = facturaRepository.findByEstado(estado);
         List<FacturaDTO> dtos = new ArrayList<>();
         for (Factura f : facturas) {
@@ -80,8 +136,8 @@ public class FacturaService {
         return dtos;
     }
     
+    @Transactional(readOnly = true)
     public List<FacturaDTO> buscarFacturasPorPeriodo(LocalDateTime fechaInicio, LocalDateTime fechaFin) {
-        // ----TODO: Implementar método
         List<Factura> facturas = facturaRepository.findByFechaCreacionBetween(fechaInicio, fechaFin);
         List<FacturaDTO> dtos = new ArrayList<>();
         for (Factura f : facturas) {
@@ -90,8 +146,8 @@ public class FacturaService {
         return dtos;
     }
     
+    @Transactional(readOnly = true)
     public List<FacturaDTO> buscarFacturasPorTermino(String termino) {
-        // ----TODO: Implementar método
         List<Factura> facturas = facturaRepository.buscarPorTermino(termino);
         List<FacturaDTO> dtos = new ArrayList<>();
         for (Factura f : facturas) {
@@ -100,66 +156,119 @@ public class FacturaService {
         return dtos;
     }
     
+    @Transactional(readOnly = true)
+    public PaginaDTO<FacturaResumenDTO> obtenerPaginaDeResumenes(Factura.EstadoFactura estado, String cliente,
+                                                                 String cursor, Integer limite) {
+        int limiteEfectivo = limite == null ? LIMITE_PAGINA_POR_DEFECTO
+                : Math.max(1, Math.min(limite, LIMITE_PAGINA_MAXIMO));
+        Limit limit = Limit.of(limiteEfectivo + 1);
+        
+        List<FacturaResumenDTO> items;
+        if (cursor == null || cursor.isBlank()) {
+            items = facturaRepository.listarResumenesPrimeraPagina(estado, cliente, limit);
+        } else {
+            CursorResumen posicion = CursorResumen.decodificar(cursor);
+            items = facturaRepository.listarResumenesDespuesDe(estado, cliente, posicion.fecha(), posicion.id(), limit);
+        }
+        boolean hayMas = items.size() > limiteEfectivo;
+        if (hayMas) {
+            items = items.subList(0, limiteEfectivo);
+        }
+        
+        String siguienteCursor = null;
+        if (hayMas) {
+            FacturaResumenDTO ultima = items.get(items.size() - 1);
+            siguienteCursor = new CursorResumen(ultima.getFechaCreacion(), ultima.getId()).codificar();
+        }
+        return new PaginaDTO<>(items, siguienteCursor, hayMas, limiteEfectivo);
+    }
+    
     @Transactional
     public FacturaDTO crearFactura(FacturaDTO facturaDTO) {
-        // ----TODO: Implementar método
-        
-        // Validar que no exista una factura con el mismo número
-        // Procesar items y calcular totales
-        // Validar stock disponible
-        // Crear item de factura
-        // Calcular subtotal del item
-        // Actualizar stock de la pieza
-        // Calcular subtotal total
-        // Calcular impuestos y total
-        if (facturaRepository.existsByNumeroFactura(facturaDTO.getNumeroFactura())) {
-            throw new RuntimeException("Ya existe una factura con ese número");
+        return registrarFactura(facturaDTO);
+    }
+    
+    // Alta sin transacción propia: se ejecuta en la del llamador. La ingesta por lotes la usa dentro de un
+    // savepoint por factura; pasar por un método @Transactional marcaría como rollback-only todo el lote
+    public FacturaDTO registrarFactura(FacturaDTO facturaDTO) {
+        // Mismas reglas que la ingesta y el lote: un dato inválido no llega a la base ni consume número
+        String motivo = ArmadoFacturas.validar(facturaDTO);
+        if (motivo != null) {
+            throw new RuntimeException(motivo);
         }
-
-        Factura factura = new Factura();
-        factura.setNumeroFactura(facturaDTO.getNumeroFactura());
-        factura.setClienteNombre(facturaDTO.getClienteNombre());
-        factura.setClienteDocumento(facturaDTO.getClienteDocumento());
-        factura.setClienteEmail(facturaDTO.getClienteEmail());
-        factura.setClienteTelefono(facturaDTO.getClienteTelefono());
-
-        BigDecimal subtotal = BigDecimal.ZERO;
-
-        for (ItemFacturaDTO itemDTO : facturaDTO.getItems()) {
-            Pieza pieza = piezaRepository.findById(itemDTO.getPiezaId()).get();
-            ItemFactura item = new ItemFactura();
-            item.setFactura(factura);
-            item.setPieza(pieza);
-            item.setCantidad(itemDTO.getCantidad());
-            item.setPrecioUnitario(pieza.getPrecio());
-            item.setDescripcion(itemDTO.getDescripcion());
-
-            BigDecimal subtotalItem = pieza.getPrecio().multiply(BigDecimal.valueOf(itemDTO.getCantidad()));
-            subtotal = subtotal.add(subtotalItem);
-
-            factura.getItems().add(item);
-            pieza.setStock(pieza.getStock() - itemDTO.getCantidad());
-            piezaRepository.save(pieza);
+        // Si el cliente no trae un número reservado se asigna uno del numerador
+        String numeroFactura = facturaDTO.getNumeroFactura() == null || facturaDTO.getNumeroFactura().isBlank()
+                ? numeradorFacturas.siguiente() : facturaDTO.getNumeroFactura();
+        if (facturaRepository.existsByNumeroFactura(numeroFactura)) {
+            throw new RuntimeException("Ya existe una factura con ese número");
         }
 
-        factura.setSubtotal(subtotal);
-        factura.setImpuesto(subtotal.multiply(TASA_IMPUESTO));
-
-        factura.setTotal(factura.getSubtotal().add(factura.getImpuesto()));
+        Map<Long, Pieza> piezas = descontarStock(facturaDTO.getItems(), numeroFactura);
+        Factura factura = ArmadoFacturas.construir(facturaDTO, numeroFactura, piezas);
 
         Factura guardada = facturaRepository.save(factura);
-        return convertirADTO(guardada);
+        resumenesDiarios.registrarAlta(guardada);
+        FacturaDTO creada = convertirADTO(guardada);
+        outbox.registrar(EventoOutbox.TipoEvento.FACTURA_CREADA, guardada.getId(), creada);
+        difusorEventos.publicarAlConfirmar("FACTURA_CREADA", eventoFactura(guardada));
+        return creada;
        
     }
     
+    // Carga todas las piezas de la factura (de la caché de segundo nivel y en una consulta las que falten),
+    // valida el stock de cada línea antes de tocar nada y descuenta en un único batch. Las cantidades se
+    // agrupan por pieza para que dos líneas de la misma pieza no pasen la validación por separado
+    private Map<Long, Pieza> descontarStock(List<ItemFacturaDTO> items, String numeroFactura) {
+        SortedMap<Long, Integer> cantidadesPorId = new TreeMap<>();
+        for (ItemFacturaDTO itemDTO : items) {
+            cantidadesPorId.merge(itemDTO.getPiezaId(), itemDTO.getCantidad(), Integer::sum);
+        }
+        
+        Map<Long, Pieza> piezas = new HashMap<>();
+        for (Pieza pieza : piezaRepository.cargarPorIds(cantidadesPorId.keySet())) {
+            piezas.put(pieza.getId(), pieza);
+        }
+        for (Map.Entry<Long, Integer> linea : cantidadesPorId.entrySet()) {
+            Pieza pieza = piezas.get(linea.getKey());
+            if (pieza == null) {
+                throw new RuntimeException("Pieza no encontrada con id: " + linea.getKey());
+            }
+            if (pieza.getStock() < linea.getValue()) {
+                throw new RuntimeException("Stock insuficiente para la pieza: " + pieza.getCodigo());
+            }
+        }
+        
+        // La validación previa evita el batch en el caso común; el UPDATE condicional sigue protegiendo
+        // contra otra transacción que haya descontado entre la lectura y la escritura
+        List<Long> rechazados = piezaRepository.descontarStockEnLote(cantidadesPorId, LocalDateTime.now());
+        if (!rechazados.isEmpty()) {
+            throw new RuntimeException("Stock insuficiente para la pieza: " + piezas.get(rechazados.get(0)).getCodigo());
+        }
+        Map<Long, Integer> salidas = new HashMap<>();
+        cantidadesPorId.forEach((piezaId, cantidad) -> salidas.put(piezaId, -cantidad));
+        libroStock.registrar(salidas, MovimientoStock.TipoMovimiento.VENTA, numeroFactura);
+        for (Map.Entry<Long, Integer> linea : cantidadesPorId.entrySet()) {
+            Long piezaId = linea.getKey();
+            piezaCache.invalidar(piezaId);
+            // El UPDATE no pasa por el ciclo de vida de la entidad, así que el índice de facetas se resincroniza al confirmar
+            Transacciones.alConfirmar(() -> indiceFacetas.marcarPendiente(piezaId));
+            difusorEventos.publicarAlConfirmar("STOCK_ACTUALIZADO", Map.of("piezaId", piezaId, "variacion", -linea.getValue()));
+        }
+        return piezas;
+    }
+    
     @Transactional
     public Optional<FacturaDTO> actualizarEstadoFactura(Long id, Factura.EstadoFactura nuevoEstado) {
-        // ---TODO: Implementar método
         Optional<Factura> facturaOpt = facturaRepository.findById(id);
         if (facturaOpt.isPresent()) {
             Factura factura = facturaOpt.get();
+            Factura.EstadoFactura anterior = factura.getEstado();
             factura.setEstado(nuevoEstado);
             Factura guardada = facturaRepository.save(factura);
+            resumenesDiarios.registrarCambioEstado(guardada, anterior);
+            difusorEventos.publicarAlConfirmar("FACTURA_ESTADO", Map.of("id", id, "estado", nuevoEstado));
+            outbox.registrar(EventoOutbox.TipoEvento.FACTURA_ESTADO_ACTUALIZADO, id,
+                    Map.of("id", id, "numeroFactura", guardada.getNumeroFactura(), "estado", nuevoEstado));
             return Optional.of(convertirADTO(guardada));
         }
         return Optional.empty();
@@ -167,46 +276,83 @@ public class FacturaService {
     
     @Transactional
     public boolean anularFactura(Long id) {
-        // ---TODO: Implementar método
-        Optional<Factura> facturaOpt = facturaRepository.findById(id);
-        if (facturaOpt.isPresent()) {
-            Factura factura = facturaOpt.get();
-            factura.setEstado(Factura.EstadoFactura.ANULADA);
-
-            for (ItemFactura item : factura.getItems()) {
-                Pieza pieza = item.getPieza();
-                pieza.setStock(pieza.getStock() + item.getCantidad());
-                piezaRepository.save(pieza);
+        // Sin cargar la factura ni sus items: la transición de estado y la restauración son sentencias por conjunto.
+        // Se intenta un estado de origen por vez para saber de qué fila del resumen diario sale la factura
+        Factura.EstadoFactura anterior = null;
+        for (Factura.EstadoFactura estado : ESTADOS_ANULABLES) {
+            if (facturaRepository.marcarAnulada(id, Factura.EstadoFactura.ANULADA, EnumSet.of(estado)) == 1) {
+                anterior = estado;
+                break;
             }
-
-            facturaRepository.save(factura);
+        }
+        if (anterior == null) {
+            Optional<Factura.EstadoFactura> estado = facturaRepository.buscarEstado(id);
+            if (estado.isEmpty()) {
+                return false;
+            }
+            if (estado.get() == Factura.EstadoFactura.PAGADA) {
+                throw new RuntimeException("No se puede anular una factura ya pagada");
+            }
+            // Ya estaba anulada: el stock se restauró en la primera anulación
             return true;
         }
-        return false;
         
+        resumenesDiarios.registrarCambioEstado(id, anterior, Factura.EstadoFactura.ANULADA);
+        
+        List<FacturaRepository.CantidadPorPieza> cantidades = facturaRepository.sumarCantidadesPorPieza(id);
+        List<Long> piezaIds = cantidades.stream().map(FacturaRepository.CantidadPorPieza::getPiezaId).toList();
+        if (!piezaIds.isEmpty()) {
+            // Batch JDBC por id: bloquea en la caché solo las piezas de la factura en lugar de vaciar la región
+            SortedMap<Long, Integer> repuestas = new TreeMap<>();
+            cantidades.forEach(linea -> repuestas.put(linea.getPiezaId(), linea.getCantidad().intValue()));
+            piezaRepository.reponerStockEnLote(repuestas, LocalDateTime.now());
+            libroStock.registrarAnulacion(id);
+        }
+        for (FacturaRepository.CantidadPorPieza linea : cantidades) {
+            Long piezaId = linea.getPiezaId();
+            piezaCache.invalidar(piezaId);
+            Transacciones.alConfirmar(() -> indiceFacetas.marcarPendiente(piezaId));
+            difusorEventos.publicarAlConfirmar("STOCK_ACTUALIZADO", Map.of("piezaId", piezaId, "variacion", linea.getCantidad()));
+        }
+        difusorEventos.publicarAlConfirmar("FACTURA_ESTADO", Map.of("id", id, "estado", Factura.EstadoFactura.ANULADA));
+        // El evento lleva las cantidades repuestas por pieza: los consumidores no dependen de FACTURA_CREADA
+        List<Map<String, Object>> items = cantidades.stream()
+                .map(linea -> Map.<String, Object>of("piezaId", linea.getPiezaId(), "cantidad", linea.getCantidad()))
+                .toList();
+        outbox.registrar(EventoOutbox.TipoEvento.FACTURA_ANULADA, id, Map.of("id", id, "items", items));
+        return true;
     }
     
     public String generarNumeroFactura() {
-        String fecha = LocalDateTime.now().format(FACTURA_FORMATTER);
-        Long count = facturaRepository.count() + 1;
-        return String.format("FAC-%s-%06d", fecha, count);
+        return numeradorFacturas.siguiente();
     }
     
+    // Ambas estadísticas salen de resumen_diario; solo las fracciones de día en los extremos leen facturas
     public Long contarFacturasPorPeriodo(LocalDateTime fechaInicio, LocalDateTime fechaFin) {
-        return facturaRepository.contarFacturasPorPeriodo(fechaInicio, fechaFin);
+        return resumenesDiarios.contarFacturas(fechaInicio, fechaFin);
     }
     
     public Double sumarTotalFacturasPagadasPorPeriodo(LocalDateTime fechaInicio, LocalDateTime fechaFin) {
-        Double total = facturaRepository.sumarTotalFacturasPagadasPorPeriodo(fechaInicio, fechaFin);
-        return total != null ? total : 0.0;
+        return resumenesDiarios.sumarTotalPagadas(fechaInicio, fechaFin).doubleValue();
     }
     
+    @Transactional(readOnly = true)
     public List<FacturaDTO> buscarFacturasPorMontoMinimo(Double montoMinimo) {
         return facturaRepository.findByTotalMayorOIgual(montoMinimo).stream()
                 .map(FacturaDTO::fromEntity)
                 .collect(Collectors.toList());
     }
 
+    // Evento compacto para los clientes en vivo: solo la cabecera, sin items
+    static Map<String, Object> eventoFactura(Factura factura) {
+        Map<String, Object> datos = new LinkedHashMap<>();
+        datos.put("id", factura.getId());
+        datos.put("numeroFactura", factura.getNumeroFactura());
+        datos.put("estado", factura.getEstado());
+        datos.put("total", factura.getTotal());
+        return datos;
+    }
+    
     private FacturaDTO convertirADTO(Factura factura) {
         FacturaDTO dto = new FacturaDTO();
         dto.setId(factura.getId());
@@ -237,4 +383,24 @@ public class FacturaService {
 
         return dto;
     }
-} 
\ No newline at end of file
+    
+    // Cursor opaco con la posición (fechaCreacion, id) de la última factura entregada
+    record CursorResumen(LocalDateTime fecha, Long id) {
+        
+        String codificar() {
+            String valor = fecha + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(valor.getBytes(StandardCharsets.UTF_8));
+        }
+        
+        static CursorResumen decodificar(String cursor) {
+            try {
+                String valor = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separador = valor.indexOf('|');
+                return new CursorResumen(LocalDateTime.parse(valor.substring(0, separador)),
+                        Long.valueOf(valor.substring(separador + 1)));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Cursor inválido: " + cursor);
+            }
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package com.tup.examen.service;
+
+import com.tup.examen.model.Pieza;
+import com.tup.examen.repository.PiezaRepository;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Índice de bitmaps para la búsqueda por facetas: cada pieza ocupa una posición (slot) y cada valor
+// distinto de marca, categoría y modelo tiene un BitSet con las posiciones de las piezas que lo tienen.
+@Component
+public class IndiceFacetas implements IndicePiezas {
+    
+    public static final String MARCA = "marca";
+    public static final String CATEGORIA = "categoria";
+    public static final String MODELO = "modelo";
+    
+    private static final int TAMANO_LOTE_CARGA = 1000;
+    
+    @Autowired
+    private PiezaRepository piezaRepository;
+    
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Integer> slotPorId = new HashMap<>();
+    private final Deque<Integer> slotsLibres = new ArrayDeque<>();
+    private final BitSet ocupados = new BitSet();
+    private final Map<String, Faceta> facetas = new LinkedHashMap<>();
+    private long[] idPorSlot = new long[64];
+    private BigDecimal[] precioPorSlot = new BigDecimal[64];
+    private int[] stockPorSlot = new int[64];
+    private int siguienteSlot;
+    
+    private final Set<Long> pendientes = ConcurrentHashMap.newKeySet();
+    
+    public IndiceFacetas() {
+        facetas.put(MARCA, new Faceta());
+        facetas.put(CATEGORIA, new Faceta());
+        facetas.put(MODELO, new Faceta());
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconstruir() {
+        lock.writeLock().lock();
+        try {
+            slotPorId.clear();
+            slotsLibres.clear();
+            ocupados.clear();
+            facetas.values().forEach(Faceta::limpiarTodo);
+            siguienteSlot = 0;
+            pendientes.clear();
+            long cursor = 0L;
+            List<Pieza> lote;
+            do {
+                lote = piezaRepository.findByIdGreaterThanOrderByIdAsc(cursor, Limit.of(TAMANO_LOTE_CARGA));
+                for (Pieza pieza : lote) {
+                    indexarSinBloqueo(pieza);
+                    cursor = pieza.getId();
+                }
+            } while (lote.size() == TAMANO_LOTE_CARGA);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    @Override
+    public void indexar(Pieza pieza) {
+        if (pieza.getId() == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            indexarSinBloqueo(pieza);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    @Override
+    public void quitar(Long id) {
+        lock.writeLock().lock();
+        try {
+            Integer slot = slotPorId.remove(id);
+            if (slot != null) {
+                ocupados.clear(slot);
+                facetas.values().forEach(faceta -> faceta.limpiar(slot));
+                precioPorSlot[slot] = null;
+                slotsLibres.push(slot);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    @Override
+    public void marcarPendiente(Long id) {
+        pendientes.add(id);
+    }
+    
+    // Actualiza solo el stock, para escrituras que no pasan por el ciclo de vida de la entidad
+    public void actualizarStock(Long id, int stock) {
+        lock.writeLock().lock();
+        try {
+            Integer slot = slotPorId.get(id);
+            if (slot != null) {
+                stockPorSlot[slot] = stock;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    public Resultado buscar(Map<String, List<String>> filtros, BigDecimal precioMin, BigDecimal precioMax,
+                            Integer stockMin, Integer stockMax, int limite) {
+        sincronizarPendientes();
+        lock.readLock().lock();
+        try {
+            // Rango de precio y stock: se evalúa una sola vez sobre los valores en memoria
+            BitSet base = (BitSet) ocupados.clone();
+            if (precioMin != null || precioMax != null || stockMin != null || stockMax != null) {
+                for (int slot = base.nextSetBit(0); slot >= 0; slot = base.nextSetBit(slot + 1)) {
+                    if (!enRango(slot, precioMin, precioMax, stockMin, stockMax)) {
+                        base.clear(slot);
+                    }
+                }
+            }
+            
+            Map<String, BitSet> bitsPorFiltro = new HashMap<>();
+            for (Map.Entry<String, Faceta> entrada : facetas.entrySet()) {
+                List<String> valores = filtros.get(entrada.getKey());
+                if (valores != null && !valores.isEmpty()) {
+                    bitsPorFiltro.put(entrada.getKey(), entrada.getValue().unionDe(valores));
+                }
+            }
+            
+            BitSet coincidencias = (BitSet) base.clone();
+            bitsPorFiltro.values().forEach(coincidencias::and);
+            
+            // Cada faceta se cuenta aplicando todos los filtros menos el propio, así se ven las alternativas
+            Map<String, Map<String, Long>> conteos = new LinkedHashMap<>();
+            for (Map.Entry<String, Faceta> entrada : facetas.entrySet()) {
+                BitSet universo = coincidencias;
+                if (bitsPorFiltro.containsKey(entrada.getKey())) {
+                    universo = (BitSet) base.clone();
+                    for (Map.Entry<String, BitSet> filtro : bitsPorFiltro.entrySet()) {
+                        if (!filtro.getKey().equals(entrada.getKey())) {
+                            universo.and(filtro.getValue());
+                        }
+                    }
+                }
+                conteos.put(entrada.getKey(), entrada.getValue().contar(universo));
+            }
+            
+            List<Long> ids = new ArrayList<>();
+            for (int slot = coincidencias.nextSetBit(0); slot >= 0; slot = coincidencias.nextSetBit(slot + 1)) {
+                ids.add(idPorSlot[slot]);
+            }
+            ids.sort(Comparator.naturalOrder());
+            List<Long> pagina = ids.size() > limite ? new ArrayList<>(ids.subList(0, limite)) : ids;
+            return new Resultado(pagina, ids.size(), conteos);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    private boolean enRango(int slot, BigDecimal precioMin, BigDecimal precioMax, Integer stockMin, Integer stockMax) {
+        BigDecimal precio = precioPorSlot[slot];
+        if (precioMin != null && (precio == null || precio.compareTo(precioMin) < 0)) {
+            return false;
+        }
+        if (precioMax != null && (precio == null || precio.compareTo(precioMax) > 0)) {
+            return false;
+        }
+        if (stockMin != null && stockPorSlot[slot] < stockMin) {
+            return false;
+        }
+        return stockMax == null || stockPorSlot[slot] <= stockMax;
+    }
+    
+    private void sincronizarPendientes() {
+        if (pendientes.isEmpty()) {
+            return;
+        }
+        List<Long> ids = new ArrayList<>(pendientes);
+        pendientes.removeAll(ids);
+        Map<Long, Pieza> actuales = new HashMap<>();
+        for (Pieza pieza : piezaRepository.findAllById(ids)) {
+            actuales.put(pieza.getId(), pieza);
+        }
+        for (Long id : ids) {
+            Pieza pieza = actuales.get(id);
+            if (pieza != null) {
+                indexar(pieza);
+            } else {
+                quitar(id);
+            }
+        }
+    }
+    
+    private void indexarSinBloqueo(Pieza pieza) {
+        Integer slot = slotPorId.get(pieza.getId());
+        if (slot == null) {
+            slot = slotsLibres.isEmpty() ? siguienteSlot++ : slotsLibres.pop();
+            asegurarCapacidad(slot);
+            slotPorId.put(pieza.getId(), slot);
+            idPorSlot[slot] = pieza.getId();
+            ocupados.set(slot);
+        }
+        facetas.get(MARCA).asignar(slot, pieza.getMarca());
+        facetas.get(CATEGORIA).asignar(slot, pieza.getCategoria());
+        facetas.get(MODELO).asignar(slot, pieza.getModelo());
+        precioPorSlot[slot] = pieza.getPrecio();
+        stockPorSlot[slot] = pieza.getStock() != null ? pieza.getStock() : 0;
+    }
+    
+    private void asegurarCapacidad(int slot) {
+        if (slot < idPorSlot.length) {
+            return;
+        }
+        int capacidad = Math.max(idPorSlot.length * 2, slot + 1);
+        idPorSlot = Arrays.copyOf(idPorSlot, capacidad);
+        precioPorSlot = Arrays.copyOf(precioPorSlot, capacidad);
+        stockPorSlot = Arrays.copyOf(stockPorSlot, capacidad);
+        facetas.values().forEach(faceta -> faceta.asegurarCapacidad(capacidad));
+    }
+    
+    @Getter
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
+    public static final class Resultado {
+        private final List<Long> ids;
+        private final long total;
+        private final Map<String, Map<String, Long>> facetas;
+    }
+    
+    // Los valores se comparan sin distinguir mayúsculas; se muestra la primera forma registrada
+    private static final class Faceta {
+        private final Map<String, BitSet> bitsPorValor = new HashMap<>();
+        private final Map<String, String> etiquetas = new HashMap<>();
+        private String[] clavePorSlot = new String[64];
+        
+        void asignar(int slot, String valor) {
+            String clave = clave(valor);
+            String anterior = clavePorSlot[slot];
+            if (anterior != null && anterior.equals(clave)) {
+                return;
+            }
+            limpiar(slot);
+            if (clave != null) {
+                bitsPorValor.computeIfAbsent(clave, c -> new BitSet()).set(slot);
+                etiquetas.putIfAbsent(clave, valor.trim());
+                clavePorSlot[slot] = clave;
+            }
+        }
+        
+        void limpiar(int slot) {
+            String clave = clavePorSlot[slot];
+            if (clave == null) {
+                return;
+            }
+            BitSet bits = bitsPorValor.get(clave);
+            bits.clear(slot);
+            if (bits.isEmpty()) {
+                bitsPorValor.remove(clave);
+                etiquetas.remove(clave);
+            }
+            clavePorSlot[slot] = null;
+        }
+        
+        void limpiarTodo() {
+            bitsPorValor.clear();
+            etiquetas.clear();
+            Arrays.fill(clavePorSlot, null);
+        }
+        
+        BitSet unionDe(List<String> valores) {
+            BitSet union = new BitSet();
+            for (String valor : valores) {
+                BitSet bits = bitsPorValor.get(clave(valor));
+                if (bits != null) {
+                    union.or(bits);
+                }
+            }
+            return union;
+        }
+        
+        Map<String, Long> contar(BitSet universo) {
+            List<Map.Entry<String, Long>> conteos = new ArrayList<>();
+            for (Map.Entry<String, BitSet> entrada : bitsPorValor.entrySet()) {
+                BitSet interseccion = (BitSet) entrada.getValue().clone();
+                interseccion.and(universo);
+                long cantidad = interseccion.cardinality();
+                if (cantidad > 0) {
+                    conteos.add(Map.entry(etiquetas.get(entrada.getKey()), cantidad));
+                }
+            }
+            conteos.sort(Map.Entry.<String, Long>comparingByValue().reversed()
+                    .thenComparing(Map.Entry.comparingByKey()));
+            Map<String, Long> resultado = new LinkedHashMap<>();
+            conteos.forEach(entrada -> resultado.put(entrada.getKey(), entrada.getValue()));
+            return resultado;
+        }
+        
+        void asegurarCapacidad(int capacidad) {
+            clavePorSlot = Arrays.copyOf(clavePorSlot, capacidad);
+        }
+        
+        private static String clave(String valor) {
+            if (valor == null || valor.isBlank()) {
+                return null;
+            }
+            return valor.trim().toLowerCase(Locale.ROOT);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.tup.examen.service;
+
+import com.tup.examen.model.Pieza;
+
+// Índice en memoria sobre las piezas que se mantiene al día desde PiezaIndicesListener
+public interface IndicePiezas {
+    
+    void indexar(Pieza pieza);
+    
+    void quitar(Long id);
+    
+    // La pieza fue tocada por una transacción revertida y debe volver a leerse de la base
+    void marcarPendiente(Long id);
+}
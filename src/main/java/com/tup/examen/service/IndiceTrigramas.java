@@ -0,0 +1,206 @@
+package com.tup.examen.service;
+
+import com.tup.examen.model.Pieza;
+import com.tup.examen.repository.PiezaRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Índice invertido de trigramas sobre nombre, descripción y código de las piezas.
+// Responde búsquedas por subcadena con la misma semántica que LIKE %termino% sin recorrer la tabla.
+@Component
+public class IndiceTrigramas implements IndicePiezas {
+    
+    private static final int N = 3;
+    private static final int TAMANO_LOTE_CARGA = 1000;
+    
+    @Autowired
+    private PiezaRepository piezaRepository;
+    
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, String> textoPorId = new HashMap<>();
+    private final Map<String, Set<Long>> postings = new HashMap<>();
+    
+    // Piezas tocadas por una transacción revertida: se vuelven a leer de la base antes de la próxima búsqueda
+    private final Set<Long> pendientes = ConcurrentHashMap.newKeySet();
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconstruir() {
+        lock.writeLock().lock();
+        try {
+            textoPorId.clear();
+            postings.clear();
+            pendientes.clear();
+            long cursor = 0L;
+            List<Pieza> lote;
+            do {
+                lote = piezaRepository.findByIdGreaterThanOrderByIdAsc(cursor, Limit.of(TAMANO_LOTE_CARGA));
+                for (Pieza pieza : lote) {
+                    indexarSinBloqueo(pieza.getId(), textoIndexable(pieza));
+                    cursor = pieza.getId();
+                }
+            } while (lote.size() == TAMANO_LOTE_CARGA);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    @Override
+    public void indexar(Pieza pieza) {
+        if (pieza.getId() == null) {
+            return;
+        }
+        String texto = textoIndexable(pieza);
+        lock.writeLock().lock();
+        try {
+            quitarSinBloqueo(pieza.getId());
+            indexarSinBloqueo(pieza.getId(), texto);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    @Override
+    public void quitar(Long id) {
+        lock.writeLock().lock();
+        try {
+            quitarSinBloqueo(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    @Override
+    public void marcarPendiente(Long id) {
+        pendientes.add(id);
+    }
+    
+    // Devuelve los IDs (ordenados) de las piezas cuyo nombre, descripción o código contienen el término
+    public List<Long> buscar(String termino) {
+        sincronizarPendientes();
+        lock.readLock().lock();
+        try {
+            List<Long> resultado = new ArrayList<>();
+            if (termino.length() < N) {
+                // Sin trigramas para intersectar: se recorre el texto en memoria
+                for (Map.Entry<Long, String> entrada : textoPorId.entrySet()) {
+                    if (entrada.getValue().contains(termino)) {
+                        resultado.add(entrada.getKey());
+                    }
+                }
+            } else {
+                List<Set<Long>> listas = new ArrayList<>();
+                for (String trigrama : trigramas(termino)) {
+                    Set<Long> lista = postings.get(trigrama);
+                    if (lista == null) {
+                        return Collections.emptyList();
+                    }
+                    listas.add(lista);
+                }
+                listas.sort(Comparator.comparingInt(Set::size));
+                Set<Long> menor = listas.get(0);
+                for (Long id : menor) {
+                    if (contenidoEnTodas(id, listas) && textoPorId.get(id).contains(termino)) {
+                        resultado.add(id);
+                    }
+                }
+            }
+            Collections.sort(resultado);
+            return resultado;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    public int cantidadIndexada() {
+        lock.readLock().lock();
+        try {
+            return textoPorId.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    private void sincronizarPendientes() {
+        if (pendientes.isEmpty()) {
+            return;
+        }
+        List<Long> ids = new ArrayList<>(pendientes);
+        pendientes.removeAll(ids);
+        Map<Long, Pieza> actuales = new HashMap<>();
+        for (Pieza pieza : piezaRepository.findAllById(ids)) {
+            actuales.put(pieza.getId(), pieza);
+        }
+        for (Long id : ids) {
+            Pieza pieza = actuales.get(id);
+            if (pieza != null) {
+                indexar(pieza);
+            } else {
+                quitar(id);
+            }
+        }
+    }
+    
+    private static boolean contenidoEnTodas(Long id, List<Set<Long>> listas) {
+        for (int i = 1; i < listas.size(); i++) {
+            if (!listas.get(i).contains(id)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private void indexarSinBloqueo(Long id, String texto) {
+        textoPorId.put(id, texto);
+        for (String trigrama : trigramas(texto)) {
+            postings.computeIfAbsent(trigrama, t -> new HashSet<>()).add(id);
+        }
+    }
+    
+    private void quitarSinBloqueo(Long id) {
+        String texto = textoPorId.remove(id);
+        if (texto == null) {
+            return;
+        }
+        for (String trigrama : trigramas(texto)) {
+            Set<Long> lista = postings.get(trigrama);
+            if (lista != null) {
+                lista.remove(id);
+                if (lista.isEmpty()) {
+                    postings.remove(trigrama);
+                }
+            }
+        }
+    }
+    
+    private static Set<String> trigramas(String texto) {
+        Set<String> resultado = new HashSet<>();
+        for (int i = 0; i + N <= texto.length(); i++) {
+            resultado.add(texto.substring(i, i + N));
+        }
+        return resultado;
+    }
+    
+    // Los campos se separan con un salto de línea para que una coincidencia no cruce de un campo a otro
+    private static String textoIndexable(Pieza pieza) {
+        return valor(pieza.getNombre()) + "\n" + valor(pieza.getDescripcion()) + "\n" + valor(pieza.getCodigo());
+    }
+    
+    private static String valor(String campo) {
+        return campo != null ? campo : "";
+    }
+}
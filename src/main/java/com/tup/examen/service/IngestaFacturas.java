@@ -0,0 +1,228 @@
+package com.tup.examen.service;
+
+import com.tup.examen.dto.FacturaDTO;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Ingesta asíncrona de facturas con commit agrupado: las solicitudes esperan en una cola acotada y un único
+// hilo escritor las confirma de a lotes (cada N ms o M facturas) en una sola transacción. Cada factura corre
+// en su propio savepoint, de modo que un error solo revierte esa factura y no el resto del lote.
+// Un error de base al hacer flush deja igualmente la transacción JPA marcada como rollback-only: en ese caso
+// el lote se repite sin las facturas que fallaron y, si vuelve a fallar, cada factura va en su propia transacción.
+// El futuro de cada solicitud se completa recién cuando su lote confirmó
+@Component
+public class IngestaFacturas {
+    
+    @Autowired
+    private FacturaService facturaService;
+    
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    @PersistenceContext
+    private EntityManager entityManager;
+    
+    @Value("${facturas.ingesta.capacidad-cola:10000}")
+    private int capacidadCola;
+    
+    @Value("${facturas.ingesta.tamano-lote:200}")
+    private int tamanoLote;
+    
+    @Value("${facturas.ingesta.espera-maxima-ms:20}")
+    private long esperaMaximaMs;
+    
+    private BlockingQueue<Solicitud> cola;
+    private TransactionTemplate transaccionLote;
+    private Thread escritor;
+    private volatile boolean activo;
+    
+    @PostConstruct
+    void iniciar() {
+        cola = new ArrayBlockingQueue<>(capacidadCola);
+        transaccionLote = new TransactionTemplate(transactionManager);
+        activo = true;
+        escritor = new Thread(this::escribir, "ingesta-facturas");
+        escritor.setDaemon(true);
+        escritor.start();
+    }
+    
+    @PreDestroy
+    void detener() throws InterruptedException {
+        // Deja de aceptar solicitudes y espera a que el escritor vacíe la cola
+        activo = false;
+        escritor.join(TimeUnit.SECONDS.toMillis(30));
+        List<Solicitud> pendientes = new ArrayList<>();
+        cola.drainTo(pendientes);
+        pendientes.forEach(s -> s.resultado().completeExceptionally(new IngestaNoDisponibleException("La ingesta se detuvo")));
+    }
+    
+    public CompletableFuture<FacturaDTO> encolar(FacturaDTO facturaDTO) {
+        // Los datos inválidos se rechazan antes de entrar a la cola, con las mismas reglas que el alta y el lote
+        String motivo = ArmadoFacturas.validar(facturaDTO);
+        if (motivo != null) {
+            return CompletableFuture.failedFuture(new RuntimeException(motivo));
+        }
+        Solicitud solicitud = new Solicitud(facturaDTO, new CompletableFuture<>());
+        if (!activo || !cola.offer(solicitud)) {
+            // Sin espera: con la cola llena es preferible rechazar y que el cliente reintente
+            return CompletableFuture.failedFuture(new IngestaNoDisponibleException("La cola de ingesta de facturas está llena"));
+        }
+        return solicitud.resultado();
+    }
+    
+    public int pendientes() {
+        return cola.size();
+    }
+    
+    private void escribir() {
+        while (activo || !cola.isEmpty()) {
+            try {
+                List<Solicitud> lote = tomarLote();
+                if (!lote.isEmpty()) {
+                    procesarLote(lote);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+    
+    // Espera la primera solicitud y junta las que lleguen hasta completar el lote o agotar la espera máxima
+    private List<Solicitud> tomarLote() throws InterruptedException {
+        List<Solicitud> lote = new ArrayList<>();
+        Solicitud primera = cola.poll(100, TimeUnit.MILLISECONDS);
+        if (primera == null) {
+            return lote;
+        }
+        lote.add(primera);
+        long limite = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(esperaMaximaMs);
+        while (lote.size() < tamanoLote) {
+            cola.drainTo(lote, tamanoLote - lote.size());
+            long restante = limite - System.nanoTime();
+            if (lote.size() >= tamanoLote || restante <= 0) {
+                break;
+            }
+            Solicitud siguiente = cola.poll(restante, TimeUnit.NANOSECONDS);
+            if (siguiente == null) {
+                break;
+            }
+            lote.add(siguiente);
+        }
+        return lote;
+    }
+    
+    private void procesarLote(List<Solicitud> lote) {
+        Map<Solicitud, RuntimeException> rechazadas = new IdentityHashMap<>();
+        try {
+            confirmarLote(lote, rechazadas).forEach(Runnable::run);
+            return;
+        } catch (RuntimeException e) {
+            // Ninguna factura del lote quedó confirmada
+        }
+        List<Solicitud> restantes = lote.stream().filter(s -> !rechazadas.containsKey(s)).toList();
+        if (!rechazadas.isEmpty() && !restantes.isEmpty()) {
+            try {
+                List<Runnable> respuestas = confirmarLote(restantes, new IdentityHashMap<>());
+                rechazadas.forEach((s, error) -> s.resultado().completeExceptionally(error));
+                respuestas.forEach(Runnable::run);
+                return;
+            } catch (RuntimeException e) {
+                // Vuelve a fallar: se sigue de a una factura
+            }
+        }
+        rechazadas.forEach((s, error) -> s.resultado().completeExceptionally(error));
+        restantes.forEach(this::confirmarSola);
+    }
+    
+    // Devuelve las respuestas a entregar si el lote confirma; las facturas que fallan quedan en rechazadas
+    private List<Runnable> confirmarLote(List<Solicitud> lote, Map<Solicitud, RuntimeException> rechazadas) {
+        List<Runnable> respuestas = new ArrayList<>(lote.size());
+        transaccionLote.executeWithoutResult(status -> {
+            for (Solicitud solicitud : lote) {
+                try {
+                    FacturaDTO creada = enSavepoint(() -> {
+                        FacturaDTO factura = facturaService.registrarFactura(solicitud.factura());
+                        // Los errores de base se producen dentro del savepoint y no al confirmar el lote
+                        entityManager.flush();
+                        return factura;
+                    });
+                    respuestas.add(() -> solicitud.resultado().complete(creada));
+                } catch (RuntimeException e) {
+                    rechazadas.put(solicitud, e);
+                    respuestas.add(() -> solicitud.resultado().completeExceptionally(e));
+                } finally {
+                    // Lo confirmado ya está escrito; tras un rollback al savepoint el contexto puede quedar desfasado
+                    entityManager.clear();
+                }
+            }
+        });
+        return respuestas;
+    }
+    
+    private void confirmarSola(Solicitud solicitud) {
+        try {
+            FacturaDTO creada = transaccionLote.execute(status -> facturaService.registrarFactura(solicitud.factura()));
+            solicitud.resultado().complete(creada);
+        } catch (RuntimeException e) {
+            solicitud.resultado().completeExceptionally(e);
+        }
+    }
+    
+    // HibernateJpaDialect no expone savepoints a PROPAGATION_NESTED, así que se toman sobre la conexión JDBC
+    // de la transacción en curso. El JdbcTemplate del descuento de stock usa esa misma conexión
+    private FacturaDTO enSavepoint(Supplier<FacturaDTO> operacion) {
+        Session session = entityManager.unwrap(Session.class);
+        Savepoint savepoint = session.doReturningWork(Connection::setSavepoint);
+        List<TransactionSynchronization> previas = TransactionSynchronizationManager.getSynchronizations();
+        FacturaDTO resultado;
+        try {
+            resultado = operacion.get();
+        } catch (RuntimeException e) {
+            session.doWork(conexion -> conexion.rollback(savepoint));
+            restaurarSincronizaciones(previas);
+            throw e;
+        }
+        session.doWork(conexion -> conexion.releaseSavepoint(savepoint));
+        return resultado;
+    }
+    
+    // Las acciones post-commit que registró la factura revertida (eventos, facetas, invalidaciones) no deben
+    // ejecutarse cuando el lote confirme: se vuelve a las sincronizaciones que había antes del savepoint
+    private static void restaurarSincronizaciones(List<TransactionSynchronization> previas) {
+        TransactionSynchronizationManager.clearSynchronization();
+        TransactionSynchronizationManager.initSynchronization();
+        previas.forEach(TransactionSynchronizationManager::registerSynchronization);
+    }
+    
+    private record Solicitud(FacturaDTO factura, CompletableFuture<FacturaDTO> resultado) {
+    }
+    
+    public static class IngestaNoDisponibleException extends RuntimeException {
+        public IngestaNoDisponibleException(String mensaje) {
+            super(mensaje);
+        }
+    }
+}
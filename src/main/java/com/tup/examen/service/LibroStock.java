@@ -0,0 +1,79 @@
+package com.tup.examen.service;
+
+import com.tup.examen.model.MovimientoStock;
+import com.tup.examen.model.SnapshotStock;
+import com.tup.examen.repository.MovimientoStockRepository;
+import com.tup.examen.repository.SnapshotStockRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+    
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+    
+// Historia de stock: cada cambio se agrega como movimiento (solo INSERT, sin competir por filas) y un
+// compactador periódico acumula los movimientos en snapshots. El stock en cualquier momento es el último
+// snapshot anterior más los movimientos que no cubre. Pieza.stock sigue siendo el valor vigente que protege
+// contra el stock negativo (el UPDATE condicional); el libro registra cómo se llegó a él
+@Component
+public class LibroStock {
+    
+    // Anterior a cualquier movimiento; evita comparar contra null en las consultas por intervalo
+    static final LocalDateTime INICIO = LocalDateTime.of(2000, 1, 1, 0, 0);
+    
+    @Autowired
+    private MovimientoStockRepository movimientoStockRepository;
+    
+    @Autowired
+    private SnapshotStockRepository snapshotStockRepository;
+    
+    public void registrar(Long piezaId, int cantidad, MovimientoStock.TipoMovimiento tipo, String referencia) {
+        if (cantidad != 0) {
+            registrar(Map.of(piezaId, cantidad), tipo, referencia);
+        }
+    }
+    
+    public void registrar(Map<Long, Integer> cantidadesPorPieza, MovimientoStock.TipoMovimiento tipo, String referencia) {
+        LocalDateTime ahora = LocalDateTime.now();
+        List<MovimientoStock> movimientos = new ArrayList<>(cantidadesPorPieza.size());
+        cantidadesPorPieza.forEach((piezaId, cantidad) -> {
+            if (cantidad != null && cantidad != 0) {
+                movimientos.add(new MovimientoStock(null, piezaId, cantidad, tipo, referencia, ahora));
+            }
+        });
+        movimientoStockRepository.insertarEnLote(movimientos);
+    }
+    
+    public void registrar(List<MovimientoStock> movimientos) {
+        movimientoStockRepository.insertarEnLote(movimientos);
+    }
+    
+    public void registrarAnulacion(Long facturaId) {
+        movimientoStockRepository.registrarAnulacion(facturaId, LocalDateTime.now());
+    }
+    
+    @Transactional(readOnly = true)
+    public int stockEn(Long piezaId, LocalDateTime fecha) {
+        SnapshotStock snapshot = snapshotStockRepository
+                .findFirstByPiezaIdAndFechaCorteLessThanEqualOrderByFechaCorteDescHastaMovimientoIdDesc(piezaId, fecha)
+                .orElse(null);
+        long desdeId = snapshot != null ? snapshot.getHastaMovimientoId() : 0;
+        int base = snapshot != null ? snapshot.getStock() : 0;
+        return base + (int) movimientoStockRepository.sumarPosteriores(piezaId, desdeId, fecha);
+    }
+    
+    public boolean tieneHistoria(Long piezaId) {
+        return movimientoStockRepository.existsByPiezaId(piezaId);
+    }
+    
+    // El corte es el último id confirmado de cada pieza, no la hora: un movimiento que confirma después queda
+    // para la próxima pasada aunque su fecha sea anterior al snapshot
+    @Scheduled(cron = "${stock.compactacion.cron:0 */5 * * * *}")
+    @Transactional
+    public int compactar() {
+        return snapshotStockRepository.compactar(INICIO);
+    }
+}
@@ -0,0 +1,205 @@
+package com.tup.examen.service;
+
+import com.tup.examen.model.ContadorFactura;
+import com.tup.examen.repository.ContadorFacturaRepository;
+import com.tup.examen.repository.FacturaRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Numeración de facturas por bloques (hi/lo): la base solo guarda el último número reservado de cada día y
+// cada instancia reparte en memoria los números de su bloque. Los números sin usar de un bloque se pierden
+// al reiniciar, por lo que puede haber huecos, pero nunca duplicados.
+// El bloque siguiente se reserva en un hilo propio cuando al actual le quedan pocos números: la reserva no
+// corre dentro de la transacción de quien pide el número ni le exige una segunda conexión del pool
+@Component
+public class NumeradorFacturas {
+    
+    private static final DateTimeFormatter FORMATO_FECHA = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final int INTENTOS_RESERVA = 3;
+    
+    @Autowired
+    private ContadorFacturaRepository contadorFacturaRepository;
+    
+    @Autowired
+    private FacturaRepository facturaRepository;
+    
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    @Value("${facturas.numeracion.tamano-bloque:50}")
+    private int tamanoBloque;
+    
+    @Value("${facturas.numeracion.anticipo:10}")
+    private int anticipo;
+    
+    private TransactionTemplate transaccionPropia;
+    
+    private final ExecutorService reservas = Executors.newSingleThreadExecutor(tarea -> {
+        Thread hilo = new Thread(tarea, "numerador-facturas");
+        hilo.setDaemon(true);
+        return hilo;
+    });
+    
+    private volatile Bloque bloque;
+    
+    // Bloque siguiente pedido por adelantado; se lee y se reemplaza solo con el lock de renovación
+    private CompletableFuture<Bloque> proximo;
+    
+    private final ReentrantLock renovacion = new ReentrantLock();
+    
+    @PostConstruct
+    void inicializar() {
+        // La reserva confirma por su cuenta: un rollback de la factura no debe devolver el bloque a la base
+        transaccionPropia = new TransactionTemplate(transactionManager);
+        transaccionPropia.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+    
+    @PreDestroy
+    void detener() {
+        reservas.shutdownNow();
+    }
+    
+    public String siguiente() {
+        LocalDate hoy = LocalDate.now();
+        while (true) {
+            Bloque actual = bloque;
+            if (actual != null && actual.fecha().equals(hoy)) {
+                long numero = actual.siguiente().getAndIncrement();
+                if (numero <= actual.hasta()) {
+                    // Cada número se entrega una sola vez, así que el anticipo se pide una vez por bloque
+                    if (actual.hasta() - numero == Math.min(anticipo, tamanoBloque - 1)) {
+                        anticipar(actual);
+                    }
+                    return formatear(hoy, numero);
+                }
+            }
+            renovarBloque(hoy, actual);
+        }
+    }
+    
+    public List<String> reservar(int cantidad) {
+        List<String> numeros = new ArrayList<>(cantidad);
+        for (int i = 0; i < cantidad; i++) {
+            numeros.add(siguiente());
+        }
+        return numeros;
+    }
+    
+    static String formatear(LocalDate fecha, long numero) {
+        return String.format("%s%06d", prefijo(fecha), numero);
+    }
+    
+    private static String prefijo(LocalDate fecha) {
+        return "FAC-" + fecha.format(FORMATO_FECHA) + "-";
+    }
+    
+    private void anticipar(Bloque actual) {
+        renovacion.lock();
+        try {
+            if (bloque == actual && proximo == null) {
+                proximo = pedirBloque(actual.fecha());
+            }
+        } finally {
+            renovacion.unlock();
+        }
+    }
+    
+    // ReentrantLock en lugar de synchronized: la espera del bloque puede incluir I/O contra la base y, con
+    // hilos virtuales, bloquear dentro de un monitor fija el hilo portador durante toda la consulta
+    private void renovarBloque(LocalDate fecha, Bloque agotado) {
+        renovacion.lock();
+        try {
+            if (bloque != agotado) {
+                // Otro hilo ya renovó el bloque mientras se esperaba el lock
+                return;
+            }
+            Bloque nuevo = tomarProximo(fecha);
+            if (nuevo == null) {
+                // Primer número del día, reinicio o anticipo todavía sin pedir: se reserva y se espera
+                nuevo = esperar(pedirBloque(fecha));
+            }
+            bloque = nuevo;
+        } finally {
+            renovacion.unlock();
+        }
+    }
+    
+    // Devuelve el bloque anticipado si es del día pedido; uno de otro día o una reserva fallida se descartan
+    private Bloque tomarProximo(LocalDate fecha) {
+        CompletableFuture<Bloque> pedido = proximo;
+        proximo = null;
+        if (pedido == null) {
+            return null;
+        }
+        try {
+            Bloque anticipado = pedido.join();
+            return anticipado.fecha().equals(fecha) ? anticipado : null;
+        } catch (CompletionException e) {
+            return null;
+        }
+    }
+    
+    private CompletableFuture<Bloque> pedirBloque(LocalDate fecha) {
+        return CompletableFuture.supplyAsync(() -> {
+            long desde = reservarEnBase(fecha, tamanoBloque);
+            return new Bloque(fecha, new AtomicLong(desde), desde + tamanoBloque - 1);
+        }, reservas);
+    }
+    
+    private static Bloque esperar(CompletableFuture<Bloque> pedido) {
+        try {
+            return pedido.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException causa) {
+                throw causa;
+            }
+            throw e;
+        }
+    }
+    
+    private long reservarEnBase(LocalDate fecha, int cantidad) {
+        for (int intento = 1; ; intento++) {
+            try {
+                return transaccionPropia.execute(status -> {
+                    ContadorFactura contador = contadorFacturaRepository.bloquearPorFecha(fecha)
+                            .orElseGet(() -> crearContador(fecha));
+                    long desde = contador.getUltimoNumero() + 1;
+                    contador.setUltimoNumero(contador.getUltimoNumero() + cantidad);
+                    return desde;
+                });
+            } catch (DataIntegrityViolationException e) {
+                // Otra instancia creó la fila del día al mismo tiempo; se reintenta bloqueando la fila existente
+                if (intento >= INTENTOS_RESERVA) {
+                    throw e;
+                }
+            }
+        }
+    }
+    
+    private ContadorFactura crearContador(LocalDate fecha) {
+        // El primer contador del día parte del mayor número ya emitido, para no repetir números existentes
+        long ultimo = facturaRepository.buscarUltimoSufijoConPrefijo(prefijo(fecha)).orElse(0L);
+        return contadorFacturaRepository.saveAndFlush(new ContadorFactura(fecha, ultimo));
+    }
+    
+    private record Bloque(LocalDate fecha, AtomicLong siguiente, long hasta) {
+    }
+}
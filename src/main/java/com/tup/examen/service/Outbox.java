@@ -0,0 +1,36 @@
+package com.tup.examen.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tup.examen.model.EventoOutbox;
+import com.tup.examen.repository.EventoOutboxRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+// Registro de eventos para sistemas externos. Solo agrega una fila en la transacción del llamador: la
+// publicación la hace RelayOutbox en segundo plano, fuera del camino de la solicitud
+@Component
+public class Outbox {
+    
+    @Autowired
+    private EventoOutboxRepository eventoOutboxRepository;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    // MANDATORY: un evento escrito fuera de la transacción del cambio podría publicarse sin que el cambio exista
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void registrar(EventoOutbox.TipoEvento tipo, Long agregadoId, Object payload) {
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("No se pudo serializar el evento " + tipo, e);
+        }
+        eventoOutboxRepository.save(new EventoOutbox(null, tipo, agregadoId, json, LocalDateTime.now(), null));
+    }
+}
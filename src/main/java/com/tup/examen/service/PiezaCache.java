@@ -0,0 +1,181 @@
+package com.tup.examen.service;
+
+import com.tup.examen.dto.PiezaDTO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Caché de piezas por ID y por código, acotada por tamaño (LRU) y por tiempo de vida
+@Component
+public class PiezaCache {
+    
+    private final int tamanoMaximo;
+    private final long ttlMillis;
+    private final Clock reloj;
+    
+    private final LinkedHashMap<Long, Entrada> porId;
+    private final Map<String, Long> idPorCodigo = new HashMap<>();
+    
+    // Se incrementa en cada invalidación: una lectura iniciada antes no puede volver a guardar su resultado
+    private final AtomicLong generacion = new AtomicLong();
+    
+    private final AtomicLong aciertos = new AtomicLong();
+    private final AtomicLong fallos = new AtomicLong();
+    private final AtomicLong desalojos = new AtomicLong();
+    private final AtomicLong invalidaciones = new AtomicLong();
+    
+    @Autowired
+    public PiezaCache(@Value("${piezas.cache.tamano-maximo:10000}") int tamanoMaximo,
+                      @Value("${piezas.cache.ttl-segundos:300}") long ttlSegundos) {
+        this(tamanoMaximo, Duration.ofSeconds(ttlSegundos), Clock.systemUTC());
+    }
+    
+    PiezaCache(int tamanoMaximo, Duration ttl, Clock reloj) {
+        this.tamanoMaximo = tamanoMaximo;
+        this.ttlMillis = ttl.toMillis();
+        this.reloj = reloj;
+        this.porId = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entrada> eldest) {
+                if (size() > PiezaCache.this.tamanoMaximo) {
+                    idPorCodigo.remove(eldest.getValue().pieza.getCodigo(), eldest.getKey());
+                    desalojos.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+    
+    public synchronized Optional<PiezaDTO> buscarPorId(Long id) {
+        Entrada entrada = obtenerVigente(id);
+        if (entrada == null) {
+            fallos.incrementAndGet();
+            return Optional.empty();
+        }
+        aciertos.incrementAndGet();
+        return Optional.of(copiar(entrada.pieza));
+    }
+    
+    public synchronized Optional<PiezaDTO> buscarPorCodigo(String codigo) {
+        Long id = idPorCodigo.get(codigo);
+        Entrada entrada = id != null ? obtenerVigente(id) : null;
+        if (entrada == null || !codigo.equals(entrada.pieza.getCodigo())) {
+            fallos.incrementAndGet();
+            return Optional.empty();
+        }
+        aciertos.incrementAndGet();
+        return Optional.of(copiar(entrada.pieza));
+    }
+    
+    public long generacionActual() {
+        return generacion.get();
+    }
+    
+    // Si hubo una invalidación desde que se leyó la pieza, el valor puede estar desactualizado y se descarta
+    public synchronized void guardar(PiezaDTO pieza, long generacionLeida) {
+        if (pieza.getId() == null || generacion.get() != generacionLeida) {
+            return;
+        }
+        Entrada anterior = porId.put(pieza.getId(), new Entrada(copiar(pieza), reloj.millis() + ttlMillis));
+        if (anterior != null && !Objects.equals(anterior.pieza.getCodigo(), pieza.getCodigo())) {
+            idPorCodigo.remove(anterior.pieza.getCodigo(), pieza.getId());
+        }
+        if (pieza.getCodigo() != null) {
+            idPorCodigo.put(pieza.getCodigo(), pieza.getId());
+        }
+    }
+    
+    // Se invalida también al confirmar, por si otra lectura cacheó el valor anterior mientras la escritura no era visible
+    public void invalidar(Long id) {
+        if (id == null) {
+            return;
+        }
+        quitar(id);
+        Transacciones.alConfirmar(() -> quitar(id));
+    }
+    
+    public void invalidarPorCodigo(String codigo) {
+        Long id;
+        synchronized (this) {
+            id = idPorCodigo.remove(codigo);
+        }
+        invalidar(id);
+    }
+    
+    public synchronized void invalidarTodo() {
+        generacion.incrementAndGet();
+        invalidaciones.addAndGet(porId.size());
+        porId.clear();
+        idPorCodigo.clear();
+    }
+    
+    public synchronized Map<String, Object> obtenerEstadisticas() {
+        long totalLecturas = aciertos.get() + fallos.get();
+        Map<String, Object> estadisticas = new LinkedHashMap<>();
+        estadisticas.put("aciertos", aciertos.get());
+        estadisticas.put("fallos", fallos.get());
+        estadisticas.put("tasaAciertos", totalLecturas == 0 ? 0.0 : (double) aciertos.get() / totalLecturas);
+        estadisticas.put("desalojos", desalojos.get());
+        estadisticas.put("invalidaciones", invalidaciones.get());
+        estadisticas.put("tamano", porId.size());
+        estadisticas.put("tamanoMaximo", tamanoMaximo);
+        estadisticas.put("ttlSegundos", ttlMillis / 1000);
+        return estadisticas;
+    }
+    
+    private synchronized void quitar(Long id) {
+        generacion.incrementAndGet();
+        Entrada entrada = porId.remove(id);
+        if (entrada != null) {
+            idPorCodigo.remove(entrada.pieza.getCodigo(), id);
+            invalidaciones.incrementAndGet();
+        }
+    }
+    
+    private Entrada obtenerVigente(Long id) {
+        Entrada entrada = porId.get(id);
+        if (entrada != null && entrada.expiraEn <= reloj.millis()) {
+            porId.remove(id);
+            idPorCodigo.remove(entrada.pieza.getCodigo(), id);
+            desalojos.incrementAndGet();
+            return null;
+        }
+        return entrada;
+    }
+    
+    private static PiezaDTO copiar(PiezaDTO pieza) {
+        return new PiezaDTO(
+                pieza.getId(),
+                pieza.getNombre(),
+                pieza.getCodigo(),
+                pieza.getDescripcion(),
+                pieza.getPrecio(),
+                pieza.getStock(),
+                pieza.getMarca(),
+                pieza.getModelo(),
+                pieza.getCategoria(),
+                pieza.getFechaRegistro(),
+                pieza.getFechaActualizacion()
+        );
+    }
+    
+    private static final class Entrada {
+        private final PiezaDTO pieza;
+        private final long expiraEn;
+        
+        private Entrada(PiezaDTO pieza, long expiraEn) {
+            this.pieza = pieza;
+            this.expiraEn = expiraEn;
+        }
+    }
+}
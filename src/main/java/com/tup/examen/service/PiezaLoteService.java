@@ -0,0 +1,374 @@
+package com.tup.examen.service;
+
+import com.tup.examen.dto.PiezaDTO;
+import com.tup.examen.dto.RechazoCargaDTO;
+import com.tup.examen.dto.ResultadoCargaDTO;
+import com.tup.examen.model.EventoOutbox;
+import com.tup.examen.model.MovimientoStock;
+import com.tup.examen.model.Pieza;
+import com.tup.examen.repository.PiezaRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+@Service
+public class PiezaLoteService {
+    
+    static final int MAXIMO_RECHAZOS_DETALLADOS = 100;
+    
+    static final String CATALOGO_IMPORTADO = "CATALOGO_IMPORTADO";
+    
+    private static final List<String> COLUMNAS_OBLIGATORIAS = List.of("codigo", "nombre", "precio", "stock");
+    
+    @Autowired
+    private PiezaRepository piezaRepository;
+    
+    @Autowired
+    private PiezaCache piezaCache;
+    
+    @Autowired
+    private LibroStock libroStock;
+    
+    @Autowired
+    private Outbox outbox;
+    
+    @Autowired
+    private DifusorEventos difusorEventos;
+    
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    
+    @PersistenceContext
+    private EntityManager entityManager;
+    
+    @Value("${piezas.lote.tamano-chunk:500}")
+    private int tamanoChunk;
+    
+    @Value("${piezas.lote.maximo:50000}")
+    private int maximoPorLote;
+    
+    public ResultadoCargaDTO crearLote(List<PiezaDTO> piezas) {
+        if (piezas == null || piezas.isEmpty()) {
+            throw new RuntimeException("El lote no contiene piezas");
+        }
+        if (piezas.size() > maximoPorLote) {
+            throw new RuntimeException("El lote supera el máximo de " + maximoPorLote + " piezas");
+        }
+        long inicio = System.nanoTime();
+        ResultadoCargaDTO resultado = new ResultadoCargaDTO();
+        resultado.setRecibidas(piezas.size());
+        
+        List<Integer> filasValidas = new ArrayList<>();
+        Set<String> codigosDelLote = new HashSet<>();
+        for (int i = 0; i < piezas.size(); i++) {
+            PiezaDTO pieza = piezas.get(i);
+            String motivo = validar(pieza);
+            if (motivo == null && !codigosDelLote.add(pieza.getCodigo())) {
+                motivo = "Código repetido dentro del lote";
+            }
+            if (motivo != null) {
+                rechazar(resultado, i + 1, pieza == null ? null : pieza.getCodigo(), motivo);
+            } else {
+                filasValidas.add(i);
+            }
+        }
+        
+        // Una sola consulta de duplicados para todo el lote en lugar de un existsByCodigo por pieza
+        Set<String> existentes = codigosDelLote.isEmpty() ? Set.of()
+                : piezaRepository.buscarCodigosExistentes(codigosDelLote);
+        List<Integer> filasAInsertar = new ArrayList<>();
+        for (Integer fila : filasValidas) {
+            String codigo = piezas.get(fila).getCodigo();
+            if (existentes.contains(codigo)) {
+                rechazar(resultado, fila + 1, codigo, "Ya existe una pieza con el código: " + codigo);
+            } else {
+                filasAInsertar.add(fila);
+            }
+        }
+        
+        // Cada bloque se confirma por separado: un error solo descarta su propio bloque
+        for (int desde = 0; desde < filasAInsertar.size(); desde += tamanoChunk) {
+            List<Integer> bloque = filasAInsertar.subList(desde, Math.min(desde + tamanoChunk, filasAInsertar.size()));
+            try {
+                transactionTemplate.executeWithoutResult(status -> insertarBloque(piezas, bloque));
+                resultado.setCreadas(resultado.getCreadas() + bloque.size());
+                bloque.forEach(fila -> piezaCache.invalidarPorCodigo(piezas.get(fila).getCodigo()));
+            } catch (RuntimeException e) {
+                String motivo = "Error al guardar el bloque: " + NestedExceptionUtils.getMostSpecificCause(e).getMessage();
+                bloque.forEach(fila -> rechazar(resultado, fila + 1, piezas.get(fila).getCodigo(), motivo));
+            }
+        }
+        
+        return finalizar(resultado, inicio);
+    }
+    
+    public ResultadoCargaDTO importarCsv(InputStream entrada, char separador) {
+        long inicio = System.nanoTime();
+        ResultadoCargaDTO resultado = new ResultadoCargaDTO();
+        try (BufferedReader lector = new BufferedReader(new InputStreamReader(entrada, StandardCharsets.UTF_8))) {
+            String encabezado = lector.readLine();
+            if (encabezado == null) {
+                throw new RuntimeException("El archivo está vacío");
+            }
+            Map<String, Integer> columnas = leerEncabezado(encabezado, separador);
+            
+            // El siguiente bloque no se lee hasta confirmar el actual: la memoria queda acotada al tamaño
+            // del bloque y el ritmo de lectura del cuerpo lo marca la base de datos
+            List<FilaCsv> bloque = new ArrayList<>(tamanoChunk);
+            int numeroFila = 1;
+            String linea;
+            while ((linea = lector.readLine()) != null) {
+                numeroFila++;
+                if (linea.isBlank()) {
+                    continue;
+                }
+                resultado.setRecibidas(resultado.getRecibidas() + 1);
+                try {
+                    PiezaDTO pieza = convertirFila(separarCampos(linea, separador), columnas);
+                    String motivo = validar(pieza);
+                    if (motivo != null) {
+                        rechazar(resultado, numeroFila, pieza.getCodigo(), motivo);
+                        continue;
+                    }
+                    bloque.add(new FilaCsv(numeroFila, pieza));
+                } catch (RuntimeException e) {
+                    rechazar(resultado, numeroFila, null, e.getMessage());
+                    continue;
+                }
+                if (bloque.size() == tamanoChunk) {
+                    upsertBloque(bloque, resultado);
+                    bloque.clear();
+                }
+            }
+            if (!bloque.isEmpty()) {
+                upsertBloque(bloque, resultado);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error al leer el archivo CSV: " + e.getMessage());
+        }
+        return finalizar(resultado, inicio);
+    }
+    
+    private void upsertBloque(List<FilaCsv> bloque, ResultadoCargaDTO resultado) {
+        Set<String> codigos = new HashSet<>();
+        bloque.forEach(fila -> codigos.add(fila.pieza().getCodigo()));
+        try {
+            int[] conteos = transactionTemplate.execute(status -> {
+                // Las piezas existentes del bloque se leen bloqueadas y en orden de id, como en la facturación: una
+                // venta concurrente espera a que el bloque confirme y cada ajuste sale del stock realmente pisado
+                Map<String, Pieza> porCodigo = new HashMap<>();
+                List<Long> ids = piezaRepository.buscarIdsPorCodigos(codigos);
+                if (!ids.isEmpty()) {
+                    piezaRepository.bloquearPorIds(ids).forEach(pieza -> porCodigo.put(pieza.getCodigo(), pieza));
+                }
+                int creadas = 0;
+                int actualizadas = 0;
+                Map<Long, Integer> altas = new HashMap<>();
+                Map<Long, Integer> ajustes = new HashMap<>();
+                Map<Long, Integer> stockFinal = new HashMap<>();
+                for (FilaCsv fila : bloque) {
+                    PiezaDTO datos = fila.pieza();
+                    Pieza pieza = porCodigo.get(datos.getCodigo());
+                    if (pieza == null) {
+                        pieza = PiezaService.convertirAEntidad(datos);
+                        entityManager.persist(pieza);
+                        porCodigo.put(pieza.getCodigo(), pieza);
+                        altas.merge(pieza.getId(), pieza.getStock(), Integer::sum);
+                        creadas++;
+                    } else {
+                        ajustes.merge(pieza.getId(), datos.getStock() - pieza.getStock(), Integer::sum);
+                        stockFinal.put(pieza.getId(), datos.getStock());
+                        copiarDatos(datos, pieza);
+                        actualizadas++;
+                    }
+                }
+                // Los eventos se registran antes del flush: el clear del final descartaría los que no se escribieron
+                ajustes.forEach((piezaId, variacion) -> {
+                    if (variacion != 0) {
+                        outbox.registrar(EventoOutbox.TipoEvento.STOCK_AJUSTADO, piezaId,
+                                PiezaService.eventoAjuste(piezaId, variacion, stockFinal.get(piezaId), "importacion"));
+                    }
+                });
+                entityManager.flush();
+                libroStock.registrar(altas, MovimientoStock.TipoMovimiento.ALTA, "importacion");
+                libroStock.registrar(ajustes, MovimientoStock.TipoMovimiento.AJUSTE, "importacion");
+                entityManager.clear();
+                // Un evento por bloque en lugar de uno por pieza, para no desbordar el historial de los clientes
+                difusorEventos.publicarAlConfirmar(CATALOGO_IMPORTADO,
+                        Map.of("creadas", creadas, "actualizadas", actualizadas));
+                return new int[] {creadas, actualizadas};
+            });
+            resultado.setCreadas(resultado.getCreadas() + conteos[0]);
+            resultado.setActualizadas(resultado.getActualizadas() + conteos[1]);
+            codigos.forEach(piezaCache::invalidarPorCodigo);
+        } catch (RuntimeException e) {
+            String motivo = "Error al guardar el bloque: " + NestedExceptionUtils.getMostSpecificCause(e).getMessage();
+            bloque.forEach(fila -> rechazar(resultado, fila.numero(), fila.pieza().getCodigo(), motivo));
+        }
+    }
+    
+    private static void copiarDatos(PiezaDTO datos, Pieza pieza) {
+        pieza.setNombre(datos.getNombre());
+        pieza.setDescripcion(datos.getDescripcion());
+        pieza.setPrecio(datos.getPrecio());
+        pieza.setStock(datos.getStock());
+        pieza.setMarca(datos.getMarca());
+        pieza.setModelo(datos.getModelo());
+        pieza.setCategoria(datos.getCategoria());
+    }
+    
+    private static Map<String, Integer> leerEncabezado(String encabezado, char separador) {
+        // Se descarta el BOM que agregan algunas planillas al exportar en UTF-8
+        if (encabezado.startsWith("\uFEFF")) {
+            encabezado = encabezado.substring(1);
+        }
+        Map<String, Integer> columnas = new HashMap<>();
+        List<String> nombres = separarCampos(encabezado, separador);
+        for (int i = 0; i < nombres.size(); i++) {
+            columnas.put(nombres.get(i).trim().toLowerCase(Locale.ROOT), i);
+        }
+        for (String obligatoria : COLUMNAS_OBLIGATORIAS) {
+            if (!columnas.containsKey(obligatoria)) {
+                throw new RuntimeException("Falta la columna obligatoria: " + obligatoria);
+            }
+        }
+        return columnas;
+    }
+    
+    private static PiezaDTO convertirFila(List<String> campos, Map<String, Integer> columnas) {
+        PiezaDTO pieza = new PiezaDTO();
+        pieza.setCodigo(campo(campos, columnas, "codigo"));
+        pieza.setNombre(campo(campos, columnas, "nombre"));
+        pieza.setDescripcion(campo(campos, columnas, "descripcion"));
+        pieza.setMarca(campo(campos, columnas, "marca"));
+        pieza.setModelo(campo(campos, columnas, "modelo"));
+        pieza.setCategoria(campo(campos, columnas, "categoria"));
+        String precio = campo(campos, columnas, "precio");
+        String stock = campo(campos, columnas, "stock");
+        try {
+            pieza.setPrecio(precio == null ? null : new BigDecimal(precio));
+            pieza.setStock(stock == null ? null : Integer.valueOf(stock));
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("Precio o stock con formato inválido");
+        }
+        return pieza;
+    }
+    
+    private static String campo(List<String> campos, Map<String, Integer> columnas, String nombre) {
+        Integer indice = columnas.get(nombre);
+        if (indice == null || indice >= campos.size()) {
+            return null;
+        }
+        String valor = campos.get(indice).trim();
+        return valor.isEmpty() ? null : valor;
+    }
+    
+    // Separa una línea respetando campos entre comillas dobles ("" dentro de comillas es una comilla literal)
+    static List<String> separarCampos(String linea, char separador) {
+        List<String> campos = new ArrayList<>();
+        StringBuilder actual = new StringBuilder();
+        boolean entreComillas = false;
+        for (int i = 0; i < linea.length(); i++) {
+            char c = linea.charAt(i);
+            if (entreComillas) {
+                if (c == '"' && i + 1 < linea.length() && linea.charAt(i + 1) == '"') {
+                    actual.append('"');
+                    i++;
+                } else if (c == '"') {
+                    entreComillas = false;
+                } else {
+                    actual.append(c);
+                }
+            } else if (c == '"') {
+                entreComillas = true;
+            } else if (c == separador) {
+                campos.add(actual.toString());
+                actual.setLength(0);
+            } else {
+                actual.append(c);
+            }
+        }
+        campos.add(actual.toString());
+        return campos;
+    }
+    
+    private static ResultadoCargaDTO finalizar(ResultadoCargaDTO resultado, long inicio) {
+        long nanos = System.nanoTime() - inicio;
+        resultado.setDuracionMs(nanos / 1_000_000);
+        resultado.setFilasPorSegundo(nanos == 0 ? 0 : resultado.getRecibidas() * 1_000_000_000.0 / nanos);
+        return resultado;
+    }
+    
+    private record FilaCsv(int numero, PiezaDTO pieza) {
+    }
+    
+    private void insertarBloque(List<PiezaDTO> piezas, List<Integer> bloque) {
+        Map<Long, Integer> altas = new HashMap<>();
+        for (Integer fila : bloque) {
+            Pieza pieza = PiezaService.convertirAEntidad(piezas.get(fila));
+            entityManager.persist(pieza);
+            altas.put(pieza.getId(), pieza.getStock());
+        }
+        // Se vacía el contexto de persistencia para que la memoria no crezca con el tamaño del lote
+        entityManager.flush();
+        libroStock.registrar(altas, MovimientoStock.TipoMovimiento.ALTA, "lote");
+        entityManager.clear();
+        difusorEventos.publicarAlConfirmar(CATALOGO_IMPORTADO, Map.of("creadas", bloque.size(), "actualizadas", 0));
+    }
+    
+    static String validar(PiezaDTO pieza) {
+        if (pieza == null) {
+            return "Fila vacía";
+        }
+        if (esVacio(pieza.getCodigo())) {
+            return "El código es obligatorio";
+        }
+        if (esVacio(pieza.getNombre())) {
+            return "El nombre es obligatorio";
+        }
+        if (pieza.getPrecio() == null || pieza.getPrecio().signum() < 0) {
+            return "El precio es obligatorio y no puede ser negativo";
+        }
+        if (pieza.getStock() == null || pieza.getStock() < 0) {
+            return "El stock es obligatorio y no puede ser negativo";
+        }
+        if (excede(pieza.getCodigo(), 50) || excede(pieza.getNombre(), 100) || excede(pieza.getDescripcion(), 200)
+                || excede(pieza.getMarca(), 50) || excede(pieza.getModelo(), 50) || excede(pieza.getCategoria(), 20)) {
+            return "Algún campo supera la longitud máxima permitida";
+        }
+        return null;
+    }
+    
+    private static boolean esVacio(String valor) {
+        return valor == null || valor.isBlank();
+    }
+    
+    private static boolean excede(String valor, int longitud) {
+        return valor != null && valor.length() > longitud;
+    }
+    
+    private void rechazar(ResultadoCargaDTO resultado, int fila, String codigo, String motivo) {
+        resultado.setRechazadas(resultado.getRechazadas() + 1);
+        if (resultado.getRechazos().size() < MAXIMO_RECHAZOS_DETALLADOS) {
+            resultado.getRechazos().add(new RechazoCargaDTO(fila, codigo, motivo));
+        }
+    }
+}
@@ -1,73 +1,223 @@
 package com.tup.examen.service;
 
+import com.tup.examen.dto.CambiosPiezasDTO;
+import com.tup.examen.dto.PaginaDTO;
 import com.tup.examen.dto.PiezaDTO;
+import com.tup.examen.dto.ResultadoFacetasDTO;
+import com.tup.examen.dto.StockEnFechaDTO;
+import com.tup.examen.model.EventoOutbox;
+import com.tup.examen.model.MovimientoStock;
 import com.tup.examen.model.Pieza;
+import com.tup.examen.model.PiezaEliminada;
+import com.tup.examen.repository.PiezaEliminadaRepository;
 import com.tup.examen.repository.PiezaRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
 @Service
 public class PiezaService {
     
+    public static final int LIMITE_PAGINA_POR_DEFECTO = 50;
+    public static final int LIMITE_PAGINA_MAXIMO = 500;
+    public static final int LIMITE_CAMBIOS_POR_DEFECTO = 500;
+    public static final int LIMITE_CAMBIOS_MAXIMO = 5000;
+    
+    // Anterior a cualquier alta: una sincronización sin fecha recorre todo el catálogo
+    private static final LocalDateTime SIN_FECHA = LocalDateTime.of(2000, 1, 1, 0, 0);
+    
     @Autowired
     private PiezaRepository piezaRepository;
     
+    @Autowired
+    private PiezaCache piezaCache;
+    
+    @Autowired
+    private IndiceTrigramas indiceTrigramas;
+    
+    @Autowired
+    private IndiceFacetas indiceFacetas;
+    
+    @Autowired
+    private LibroStock libroStock;
+    
+    @Autowired
+    private DifusorEventos difusorEventos;
+    
+    @Autowired
+    private Outbox outbox;
+    
+    @Autowired
+    private CacheSegundoNivel cacheSegundoNivel;
+    
+    @Autowired
+    private PiezaEliminadaRepository piezaEliminadaRepository;
+    
+    @Value("${piezas.cambios.margen-segundos:30}")
+    private long margenCambiosSegundos;
+    
+    @Value("${piezas.eliminadas.retencion-dias:30}")
+    private long retencionEliminadasDias;
+    
     public List<PiezaDTO> obtenerTodasLasPiezas() {
-        return piezaRepository.findAll().stream()
-                .map(this::convertirADTO)
-                .collect(Collectors.toList());
+        return piezaRepository.listarDTOs();
+    }
+    
+    public PaginaDTO<PiezaDTO> obtenerPaginaDePiezas(Long despuesDeId, Integer limite) {
+        int limiteEfectivo = limite == null ? LIMITE_PAGINA_POR_DEFECTO
+                : Math.max(1, Math.min(limite, LIMITE_PAGINA_MAXIMO));
+        long cursor = despuesDeId == null ? 0L : despuesDeId;
+        
+        // Se pide un registro extra para saber si existe una página siguiente sin hacer un COUNT
+        List<PiezaDTO> items = piezaRepository.listarDTOsDespuesDe(cursor, Limit.of(limiteEfectivo + 1));
+        boolean hayMas = items.size() > limiteEfectivo;
+        if (hayMas) {
+            items = items.subList(0, limiteEfectivo);
+        }
+        
+        String siguienteCursor = hayMas ? String.valueOf(items.get(items.size() - 1).getId()) : null;
+        return new PaginaDTO<>(items, siguienteCursor, hayMas, limiteEfectivo);
+    }
+    
+    @Transactional(readOnly = true)
+    public CambiosPiezasDTO obtenerCambios(LocalDateTime desde, Long despuesDeId, Integer limite) {
+        int limiteEfectivo = limite == null ? LIMITE_CAMBIOS_POR_DEFECTO
+                : Math.max(1, Math.min(limite, LIMITE_CAMBIOS_MAXIMO));
+        LocalDateTime inicio = LocalDateTime.now();
+        if (desde != null && desde.isBefore(inicio.minusDays(retencionEliminadasDias))) {
+            // Los borrados de ese período ya se purgaron: el cliente no puede ponerse al día sin descargar todo
+            return new CambiosPiezasDTO(List.of(), List.of(), null, null, false, true);
+        }
+        
+        LocalDateTime base = desde != null ? desde : SIN_FECHA;
+        List<PiezaDTO> piezas = despuesDeId == null
+                ? piezaRepository.listarCambiosDesde(base, Limit.of(limiteEfectivo + 1))
+                : piezaRepository.listarCambiosDespuesDe(base, despuesDeId, Limit.of(limiteEfectivo + 1));
+        boolean hayMas = piezas.size() > limiteEfectivo;
+        LocalDateTime siguienteDesde;
+        Long siguienteDespuesDe;
+        LocalDateTime hastaEliminadas;
+        if (hayMas) {
+            piezas = piezas.subList(0, limiteEfectivo);
+            PiezaDTO ultima = piezas.get(piezas.size() - 1);
+            siguienteDesde = ultima.getFechaActualizacion();
+            siguienteDespuesDe = ultima.getId();
+            hastaEliminadas = siguienteDesde;
+        } else {
+            // La fecha se asigna antes del commit: un cambio todavía sin confirmar puede quedar con fecha anterior
+            // a esta consulta. La próxima sincronización repite el margen y vuelve a recibir lo que haya llegado
+            siguienteDesde = inicio.minusSeconds(margenCambiosSegundos);
+            siguienteDespuesDe = null;
+            hastaEliminadas = inicio;
+        }
+        // En una descarga completa no hay copia local de la que borrar
+        List<Long> eliminadas = desde == null ? List.of()
+                : piezaEliminadaRepository.buscarIdsEliminadosEntre(base, hastaEliminadas);
+        return new CambiosPiezasDTO(piezas, eliminadas, siguienteDesde, siguienteDespuesDe, hayMas, false);
+    }
+    
+    @Scheduled(cron = "${piezas.eliminadas.purga.cron:0 30 3 * * *}")
+    @Transactional
+    public int purgarEliminadas() {
+        return piezaEliminadaRepository.purgarAnterioresA(LocalDateTime.now().minusDays(retencionEliminadasDias));
     }
     
     public Optional<PiezaDTO> obtenerPiezaPorId(Long id) {
-        return piezaRepository.findById(id)
+        Optional<PiezaDTO> cacheada = piezaCache.buscarPorId(id);
+        if (cacheada.isPresent()) {
+            return cacheada;
+        }
+        long generacion = piezaCache.generacionActual();
+        Optional<PiezaDTO> pieza = piezaRepository.findById(id)
                 .map(this::convertirADTO);
+        pieza.ifPresent(dto -> piezaCache.guardar(dto, generacion));
+        return pieza;
     }
     
     public Optional<PiezaDTO> obtenerPiezaPorCodigo(String codigo) {
-        return piezaRepository.findByCodigo(codigo)
+        Optional<PiezaDTO> cacheada = piezaCache.buscarPorCodigo(codigo);
+        if (cacheada.isPresent()) {
+            return cacheada;
+        }
+        long generacion = piezaCache.generacionActual();
+        Optional<PiezaDTO> pieza = piezaRepository.findByCodigo(codigo)
                 .map(this::convertirADTO);
+        pieza.ifPresent(dto -> piezaCache.guardar(dto, generacion));
+        return pieza;
+    }
+    
+    public Map<String, Object> obtenerEstadisticasCache() {
+        return piezaCache.obtenerEstadisticas();
+    }
+    
+    public Map<String, Object> obtenerEstadisticasCacheSegundoNivel() {
+        return cacheSegundoNivel.obtenerEstadisticas();
     }
     
     public List<PiezaDTO> buscarPorNombre(String nombre) {
-        return piezaRepository.findByNombreContainingIgnoreCase(nombre).stream()
-                .map(this::convertirADTO)
-                .collect(Collectors.toList());
+        return piezaRepository.buscarDTOsPorNombre(nombre);
     }
     
     public List<PiezaDTO> buscarPorMarca(String marca) {
-        return piezaRepository.findByMarcaContainingIgnoreCase(marca).stream()
-                .map(this::convertirADTO)
-                .collect(Collectors.toList());
+        return piezaRepository.buscarDTOsPorMarca(marca);
     }
     
     public List<PiezaDTO> buscarPorCategoria(String categoria) {
-        return piezaRepository.findByCategoriaContainingIgnoreCase(categoria).stream()
-                .map(this::convertirADTO)
-                .collect(Collectors.toList());
+        return piezaRepository.buscarDTOsPorCategoria(categoria);
     }
     
     public List<PiezaDTO> buscarPiezasConStockBajo(Integer stockMinimo) {
-        return piezaRepository.findByStockLessThan(stockMinimo).stream()
-                .map(this::convertirADTO)
-                .collect(Collectors.toList());
+        return piezaRepository.buscarDTOsConStockMenorA(stockMinimo);
     }
     
     public List<PiezaDTO> buscarPorRangoPrecio(Double precioMin, Double precioMax) {
-        return piezaRepository.findByPrecioBetween(precioMin, precioMax).stream()
-                .map(this::convertirADTO)
-                .collect(Collectors.toList());
+        return piezaRepository.buscarDTOsPorRangoPrecio(precioMin, precioMax);
     }
     
     public List<PiezaDTO> buscarPorTermino(String termino) {
-        return piezaRepository.buscarPorTermino(termino).stream()
-                .map(this::convertirADTO)
+        List<Long> ids = indiceTrigramas.buscar(termino);
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        // Se verifica contra lo leído por si el índice todavía no refleja una escritura sin confirmar
+        return piezaRepository.listarDTOsPorIds(ids).stream()
+                .filter(pieza -> contieneTermino(pieza, termino))
                 .collect(Collectors.toList());
     }
     
+    public ResultadoFacetasDTO buscarPorFacetas(List<String> marcas, List<String> categorias, List<String> modelos,
+                                                Double precioMin, Double precioMax,
+                                                Integer stockMin, Integer stockMax, Integer limite) {
+        int limiteEfectivo = limite == null ? LIMITE_PAGINA_POR_DEFECTO
+                : Math.max(1, Math.min(limite, LIMITE_PAGINA_MAXIMO));
+        Map<String, List<String>> filtros = new HashMap<>();
+        filtros.put(IndiceFacetas.MARCA, marcas);
+        filtros.put(IndiceFacetas.CATEGORIA, categorias);
+        filtros.put(IndiceFacetas.MODELO, modelos);
+        
+        IndiceFacetas.Resultado resultado = indiceFacetas.buscar(filtros,
+                precioMin != null ? BigDecimal.valueOf(precioMin) : null,
+                precioMax != null ? BigDecimal.valueOf(precioMax) : null,
+                stockMin, stockMax, limiteEfectivo);
+        
+        List<PiezaDTO> items = resultado.getIds().isEmpty() ? List.of()
+                : piezaRepository.listarDTOsPorIds(resultado.getIds());
+        return new ResultadoFacetasDTO(items, resultado.getTotal(), resultado.getFacetas());
+    }
+    
+    @Transactional
     public PiezaDTO crearPieza(PiezaDTO piezaDTO) {
         if (piezaRepository.existsByCodigo(piezaDTO.getCodigo())) {
             throw new RuntimeException("Ya existe una pieza con el código: " + piezaDTO.getCodigo());
@@ -75,39 +225,105 @@ public class PiezaService {
         
         Pieza pieza = convertirAEntidad(piezaDTO);
         Pieza piezaGuardada = piezaRepository.save(pieza);
+        libroStock.registrar(piezaGuardada.getId(), piezaGuardada.getStock(), MovimientoStock.TipoMovimiento.ALTA,
+                piezaGuardada.getCodigo());
+        piezaCache.invalidarPorCodigo(piezaGuardada.getCodigo());
+        difusorEventos.publicarAlConfirmar("PIEZA_CREADA", eventoPieza(piezaGuardada));
         return convertirADTO(piezaGuardada);
     }
     
+    @Transactional
     public Optional<PiezaDTO> actualizarPieza(Long id, PiezaDTO piezaDTO) {
         // ----TODO: Implementar método
-        if (piezaRepository.existsById(id)) {
+        // La fila queda bloqueada hasta el commit, así el ajuste registrado es exactamente el que se aplica
+        Optional<Pieza> actual = piezaRepository.bloquearPorId(id);
+        if (actual.isPresent()) {
+            int stockAnterior = actual.get().getStock();
             Pieza pieza = convertirAEntidad(piezaDTO);
             pieza.setId(id);
             Pieza piezaGuardada = piezaRepository.save(pieza);
+            int variacion = piezaGuardada.getStock() - stockAnterior;
+            libroStock.registrar(id, variacion, MovimientoStock.TipoMovimiento.AJUSTE, piezaGuardada.getCodigo());
+            if (variacion != 0) {
+                outbox.registrar(EventoOutbox.TipoEvento.STOCK_AJUSTADO, id,
+                        eventoAjuste(id, variacion, piezaGuardada.getStock(), piezaGuardada.getCodigo()));
+            }
+            piezaCache.invalidar(id);
+            piezaCache.invalidarPorCodigo(piezaGuardada.getCodigo());
+            difusorEventos.publicarAlConfirmar("PIEZA_ACTUALIZADA", eventoPieza(piezaGuardada));
             return Optional.of(convertirADTO(piezaGuardada));
         }
         return Optional.empty();
     }
     
+    @Transactional
     public boolean eliminarPieza(Long id) {
         if (piezaRepository.existsById(id)) {
             piezaRepository.deleteById(id);
+            // Marca de borrado para los clientes que sincronizan por GET /api/piezas/cambios
+            piezaEliminadaRepository.save(new PiezaEliminada(id, LocalDateTime.now()));
+            piezaCache.invalidar(id);
+            difusorEventos.publicarAlConfirmar("PIEZA_ELIMINADA", Map.of("id", id));
             return true;
         }
         return false;
     }
     
+    @Transactional
     public boolean actualizarStock(Long id, Integer nuevoStock) {
         // ----TODO: Implementar método
-        Optional<Pieza> pieza = piezaRepository.findById(id);
+        Optional<Pieza> pieza = piezaRepository.bloquearPorId(id);
         if (pieza.isPresent()) {
+            int variacion = nuevoStock - pieza.get().getStock();
+            libroStock.registrar(id, variacion, MovimientoStock.TipoMovimiento.AJUSTE, pieza.get().getCodigo());
             pieza.get().setStock(nuevoStock);
             piezaRepository.save(pieza.get());
+            if (variacion != 0) {
+                outbox.registrar(EventoOutbox.TipoEvento.STOCK_AJUSTADO, id,
+                        eventoAjuste(id, variacion, nuevoStock, pieza.get().getCodigo()));
+            }
+            piezaCache.invalidar(id);
+            difusorEventos.publicarAlConfirmar("STOCK_ACTUALIZADO", Map.of("piezaId", id, "stock", nuevoStock,
+                    "variacion", variacion));
             return true;
         }
         return false;
     }
     
+    // Stock de la pieza en cualquier momento, reconstruido desde el libro de movimientos
+    public Optional<StockEnFechaDTO> obtenerStockEnFecha(Long id, LocalDateTime fecha) {
+        if (!libroStock.tieneHistoria(id) && !piezaRepository.existsById(id)) {
+            return Optional.empty();
+        }
+        LocalDateTime momento = fecha != null ? fecha : LocalDateTime.now();
+        return Optional.of(new StockEnFechaDTO(id, momento, libroStock.stockEn(id, momento)));
+    }
+    
+    private static Map<String, Object> eventoPieza(Pieza pieza) {
+        Map<String, Object> datos = new LinkedHashMap<>();
+        datos.put("id", pieza.getId());
+        datos.put("codigo", pieza.getCodigo());
+        datos.put("precio", pieza.getPrecio());
+        datos.put("stock", pieza.getStock());
+        return datos;
+    }
+    
+    // Evento de outbox de un ajuste: la variación aplicada, el stock resultante y la referencia del libro
+    static Map<String, Object> eventoAjuste(Long piezaId, int variacion, int stock, String referencia) {
+        Map<String, Object> datos = new LinkedHashMap<>();
+        datos.put("piezaId", piezaId);
+        datos.put("variacion", variacion);
+        datos.put("stock", stock);
+        datos.put("referencia", referencia);
+        return datos;
+    }
+    
+    private static boolean contieneTermino(PiezaDTO pieza, String termino) {
+        return (pieza.getNombre() != null && pieza.getNombre().contains(termino))
+                || (pieza.getDescripcion() != null && pieza.getDescripcion().contains(termino))
+                || (pieza.getCodigo() != null && pieza.getCodigo().contains(termino));
+    }
+    
     private PiezaDTO convertirADTO(Pieza pieza) {
         return new PiezaDTO(
                 pieza.getId(),
@@ -124,7 +340,7 @@ public class PiezaService {
         );
     }
     
-    private Pieza convertirAEntidad(PiezaDTO piezaDTO) {
+    static Pieza convertirAEntidad(PiezaDTO piezaDTO) {
         Pieza pieza = new Pieza();
         pieza.setNombre(piezaDTO.getNombre());
         pieza.setCodigo(piezaDTO.getCodigo());
@@ -0,0 +1,177 @@
+package com.tup.examen.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.tup.examen.dto.FacturaDTO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+// Resultados de creación de facturas por clave de idempotencia, acotados por tamaño y por tiempo de vida.
+// Una solicitud repetida devuelve el resultado guardado sin tocar la base; si la primera todavía está en curso,
+// la repetida espera su resultado en lugar de ejecutarse en paralelo.
+// Las solicitudes en curso nunca se desalojan. Al llenarse el registro se desalojan las terminadas más
+// viejas aunque no hayan vencido, así que la ventana efectiva es el menor entre el TTL y
+// tamanoMaximo / solicitudes por segundo
+@Component
+public class RegistroIdempotencia {
+    
+    public static final int LONGITUD_MAXIMA_CLAVE = 255;
+    
+    // Serialización canónica de la solicitud para calcular su huella: propiedades en orden alfabético
+    private static final ObjectMapper JSON_CANONICO = JsonMapper.builder()
+            .findAndAddModules()
+            .enable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY)
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .build();
+    
+    private final int tamanoMaximo;
+    private final long ttlMillis;
+    private final long esperaMaximaMillis;
+    private final Clock reloj;
+    
+    // En orden de inserción: con un TTL fijo, las primeras entradas son siempre las más próximas a vencer
+    private final LinkedHashMap<String, Entrada> entradas;
+    
+    @Autowired
+    public RegistroIdempotencia(@Value("${facturas.idempotencia.tamano-maximo:200000}") int tamanoMaximo,
+                                @Value("${facturas.idempotencia.ttl-segundos:600}") long ttlSegundos,
+                                @Value("${facturas.idempotencia.espera-maxima-segundos:30}") long esperaMaximaSegundos) {
+        this(tamanoMaximo, Duration.ofSeconds(ttlSegundos), Duration.ofSeconds(esperaMaximaSegundos), Clock.systemUTC());
+    }
+    
+    RegistroIdempotencia(int tamanoMaximo, Duration ttl, Duration esperaMaxima, Clock reloj) {
+        this.tamanoMaximo = tamanoMaximo;
+        this.ttlMillis = ttl.toMillis();
+        this.esperaMaximaMillis = esperaMaxima.toMillis();
+        this.reloj = reloj;
+        this.entradas = new LinkedHashMap<>();
+    }
+    
+    public Resultado ejecutar(String clave, FacturaDTO solicitud, Supplier<FacturaDTO> operacion) {
+        if (clave == null || clave.isBlank() || clave.length() > LONGITUD_MAXIMA_CLAVE) {
+            throw new IllegalArgumentException("Clave de idempotencia inválida");
+        }
+        byte[] huella = huella(solicitud);
+        Entrada propia = new Entrada(new CompletableFuture<>(), huella, reloj.millis() + ttlMillis);
+        Entrada existente;
+        synchronized (this) {
+            purgarVencidas();
+            existente = entradas.putIfAbsent(clave, propia);
+            if (existente == null) {
+                desalojarExcedente();
+            }
+        }
+        
+        if (existente != null) {
+            if (!MessageDigest.isEqual(existente.huella, huella)) {
+                throw new ConflictoIdempotenciaException("La clave de idempotencia ya se usó con otra solicitud");
+            }
+            return new Resultado(esperar(existente.resultado), true);
+        }
+        
+        try {
+            FacturaDTO factura = operacion.get();
+            propia.resultado.complete(factura);
+            return new Resultado(factura, false);
+        } catch (RuntimeException e) {
+            // Los errores no se recuerdan: un reintento con la misma clave puede volver a intentarlo
+            synchronized (this) {
+                entradas.remove(clave, propia);
+            }
+            propia.resultado.completeExceptionally(e);
+            throw e;
+        }
+    }
+    
+    public synchronized int tamano() {
+        return entradas.size();
+    }
+    
+    private FacturaDTO esperar(CompletableFuture<FacturaDTO> resultado) {
+        try {
+            return resultado.get(esperaMaximaMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException causa) {
+                throw causa;
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new ConflictoIdempotenciaException("La solicitud original con esta clave todavía está en proceso");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConflictoIdempotenciaException("Espera interrumpida");
+        }
+    }
+    
+    // SHA-256 del cuerpo de la solicitud: con un hash de 32 bits dos cuerpos distintos podían coincidir y el
+    // segundo recibía la factura del primero en lugar de un conflicto
+    static byte[] huella(FacturaDTO solicitud) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(JSON_CANONICO.writeValueAsBytes(solicitud));
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("No se pudo calcular la huella de la solicitud", e);
+        }
+    }
+    
+    private void purgarVencidas() {
+        long ahora = reloj.millis();
+        Iterator<Entrada> iterador = entradas.values().iterator();
+        while (iterador.hasNext()) {
+            Entrada entrada = iterador.next();
+            if (entrada.expiraEn > ahora) {
+                break;
+            }
+            if (entrada.resultado.isDone()) {
+                iterador.remove();
+            }
+        }
+    }
+    
+    // Sobre el tamaño máximo se quitan las terminadas más viejas; las que siguen en curso se saltean, así que el
+    // registro puede excederse a lo sumo en la cantidad de solicitudes concurrentes
+    private void desalojarExcedente() {
+        Iterator<Entrada> iterador = entradas.values().iterator();
+        while (entradas.size() > tamanoMaximo && iterador.hasNext()) {
+            if (iterador.next().resultado.isDone()) {
+                iterador.remove();
+            }
+        }
+    }
+    
+    public record Resultado(FacturaDTO factura, boolean repetida) {
+    }
+    
+    public static class ConflictoIdempotenciaException extends RuntimeException {
+        public ConflictoIdempotenciaException(String mensaje) {
+            super(mensaje);
+        }
+    }
+    
+    private static final class Entrada {
+        private final CompletableFuture<FacturaDTO> resultado;
+        private final byte[] huella;
+        private final long expiraEn;
+        
+        private Entrada(CompletableFuture<FacturaDTO> resultado, byte[] huella, long expiraEn) {
+            this.resultado = resultado;
+            this.huella = huella;
+            this.expiraEn = expiraEn;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.tup.examen.service;
+
+import com.tup.examen.model.EventoOutbox;
+import com.tup.examen.repository.EventoOutboxRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Publica los eventos pendientes del outbox de a lotes. El lote se marca como entregado en la misma
+// transacción en la que se leyó y solo después de que el sink aceptó todo: si el sink falla no se marca
+// nada y el lote se reintenta en la próxima pasada
+@Component
+public class RelayOutbox {
+    
+    @Autowired
+    private EventoOutboxRepository eventoOutboxRepository;
+    
+    @Autowired
+    private SinkEventos sinkEventos;
+    
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    @Value("${outbox.relay.habilitado:true}")
+    private boolean habilitado;
+    
+    @Value("${outbox.relay.tamano-lote:500}")
+    private int tamanoLote;
+    
+    private TransactionTemplate transaccion;
+    
+    @PostConstruct
+    void iniciar() {
+        transaccion = new TransactionTemplate(transactionManager);
+    }
+    
+    @Scheduled(fixedDelayString = "${outbox.relay.intervalo-ms:1000}")
+    public void relay() {
+        if (!habilitado) {
+            return;
+        }
+        // Lotes completos indican que puede haber más pendientes; se sigue sin esperar al próximo intervalo
+        int entregados;
+        do {
+            entregados = entregarLote();
+        } while (entregados == tamanoLote);
+    }
+    
+    public int entregarLote() {
+        Integer entregados = transaccion.execute(status -> {
+            List<EventoOutbox> pendientes = eventoOutboxRepository.findByFechaEntregaIsNullOrderByIdAsc(Limit.of(tamanoLote));
+            if (pendientes.isEmpty()) {
+                return 0;
+            }
+            sinkEventos.entregar(pendientes);
+            eventoOutboxRepository.marcarEntregados(pendientes.stream().map(EventoOutbox::getId).toList(),
+                    LocalDateTime.now());
+            return pendientes.size();
+        });
+        return entregados != null ? entregados : 0;
+    }
+    
+    public long pendientes() {
+        return eventoOutboxRepository.countByFechaEntregaIsNull();
+    }
+}
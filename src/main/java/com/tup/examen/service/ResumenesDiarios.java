@@ -0,0 +1,127 @@
+package com.tup.examen.service;
+
+import com.tup.examen.model.Factura;
+import com.tup.examen.repository.FacturaRepository;
+import com.tup.examen.repository.ResumenDiarioRepository;
+import com.tup.examen.repository.ResumenDiarioRepositoryCustom.Variacion;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Mantenimiento y consulta de resumen_diario. Las estadísticas de un rango suman las filas de los días
+// completos y solo consultan facturas para las fracciones de día en los extremos del rango
+@Component
+public class ResumenesDiarios {
+    
+    @Autowired
+    private ResumenDiarioRepository resumenDiarioRepository;
+    
+    @Autowired
+    private FacturaRepository facturaRepository;
+    
+    // Las facturas existentes antes de la tabla (o cargadas por fuera de la aplicación) se vuelcan al iniciar
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void inicializar() {
+        if (resumenDiarioRepository.count() == 0 && facturaRepository.count() > 0) {
+            resumenDiarioRepository.reconstruir();
+        }
+    }
+    
+    public void registrarAlta(Factura factura) {
+        registrarAltas(List.of(factura));
+    }
+    
+    // Agrupa las facturas por (día, estado) para enviar una sola variación por fila
+    public void registrarAltas(Collection<Factura> facturas) {
+        Map<String, Variacion> porFila = new HashMap<>();
+        for (Factura factura : facturas) {
+            Variacion variacion = variacion(factura, factura.getEstado(), 1);
+            porFila.merge(variacion.fecha() + "|" + variacion.estado(), variacion, ResumenesDiarios::sumar);
+        }
+        resumenDiarioRepository.acumular(porFila.values());
+    }
+    
+    public void registrarCambioEstado(Factura factura, Factura.EstadoFactura anterior) {
+        if (anterior == factura.getEstado()) {
+            return;
+        }
+        List<Variacion> variaciones = new ArrayList<>(2);
+        variaciones.add(variacion(factura, anterior, -1));
+        variaciones.add(variacion(factura, factura.getEstado(), 1));
+        resumenDiarioRepository.acumular(variaciones);
+    }
+    
+    // Para transiciones hechas con un UPDATE por conjunto, sin la factura cargada
+    public void registrarCambioEstado(Long facturaId, Factura.EstadoFactura anterior, Factura.EstadoFactura nuevo) {
+        resumenDiarioRepository.moverFactura(facturaId, anterior, nuevo);
+    }
+    
+    @Transactional(readOnly = true)
+    public long contarFacturas(LocalDateTime fechaInicio, LocalDateTime fechaFin) {
+        Rango rango = Rango.de(fechaInicio, fechaFin);
+        if (rango == null) {
+            return facturaRepository.contarFacturasPorPeriodo(fechaInicio, fechaFin);
+        }
+        return facturaRepository.contarFacturasAntesDe(fechaInicio, rango.primerDia().atStartOfDay())
+                + resumenDiarioRepository.contarEntre(rango.primerDia(), rango.ultimoDia())
+                + facturaRepository.contarFacturasPorPeriodo(rango.ultimoDia().plusDays(1).atStartOfDay(), fechaFin);
+    }
+    
+    @Transactional(readOnly = true)
+    public BigDecimal sumarTotalPagadas(LocalDateTime fechaInicio, LocalDateTime fechaFin) {
+        Rango rango = Rango.de(fechaInicio, fechaFin);
+        if (rango == null) {
+            return valor(facturaRepository.sumarTotalFacturasPagadasPorPeriodo(fechaInicio, fechaFin));
+        }
+        return valor(facturaRepository.sumarTotalFacturasPagadasAntesDe(fechaInicio, rango.primerDia().atStartOfDay()))
+                .add(resumenDiarioRepository.sumarTotalEntre(rango.primerDia(), rango.ultimoDia(),
+                        Factura.EstadoFactura.PAGADA))
+                .add(valor(facturaRepository.sumarTotalFacturasPagadasPorPeriodo(
+                        rango.ultimoDia().plusDays(1).atStartOfDay(), fechaFin)));
+    }
+    
+    private static Variacion variacion(Factura factura, Factura.EstadoFactura estado, int signo) {
+        BigDecimal factor = BigDecimal.valueOf(signo);
+        return new Variacion(factura.getFechaCreacion().toLocalDate(), estado, signo,
+                factura.getSubtotal().multiply(factor), factura.getImpuesto().multiply(factor),
+                factura.getTotal().multiply(factor));
+    }
+    
+    private static Variacion sumar(Variacion a, Variacion b) {
+        return new Variacion(a.fecha(), a.estado(), a.cantidad() + b.cantidad(), a.subtotal().add(b.subtotal()),
+                a.impuesto().add(b.impuesto()), a.total().add(b.total()));
+    }
+    
+    private static BigDecimal valor(Double total) {
+        return total != null ? BigDecimal.valueOf(total) : BigDecimal.ZERO;
+    }
+    
+    private static BigDecimal valor(BigDecimal total) {
+        return total != null ? total : BigDecimal.ZERO;
+    }
+    
+    // Días enteramente dentro de [inicio, fin]; null si el rango no cubre ningún día completo
+    private record Rango(LocalDate primerDia, LocalDate ultimoDia) {
+        
+        static Rango de(LocalDateTime inicio, LocalDateTime fin) {
+            LocalDate primero = inicio.toLocalTime().equals(LocalTime.MIDNIGHT)
+                    ? inicio.toLocalDate() : inicio.toLocalDate().plusDays(1);
+            // fin es inclusivo: el día de fin solo está completo si fin llega al último instante del día
+            LocalDate ultimo = fin.toLocalTime().equals(LocalTime.MAX) ? fin.toLocalDate() : fin.toLocalDate().minusDays(1);
+            return primero.isAfter(ultimo) ? null : new Rango(primero, ultimo);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.tup.examen.service;
+
+import com.tup.examen.model.EventoOutbox;
+
+import java.util.List;
+
+// Destino de los eventos del outbox. Debe fallar con una excepción si no pudo entregar el lote completo:
+// el relay lo reintenta y los consumidores deben ignorar ids ya recibidos (entrega al menos una vez)
+public interface SinkEventos {
+    
+    void entregar(List<EventoOutbox> eventos);
+}
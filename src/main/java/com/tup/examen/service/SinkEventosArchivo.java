@@ -0,0 +1,59 @@
+package com.tup.examen.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.tup.examen.model.EventoOutbox;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+// Sink para desarrollo local: agrega cada evento como una línea JSON al final de un archivo
+@Component
+@ConditionalOnProperty(name = "outbox.sink.tipo", havingValue = "archivo", matchIfMissing = true)
+public class SinkEventosArchivo implements SinkEventos {
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Value("${outbox.sink.archivo:eventos-outbox.jsonl}")
+    private Path archivo;
+    
+    @Override
+    public synchronized void entregar(List<EventoOutbox> eventos) {
+        StringBuilder lineas = new StringBuilder();
+        for (EventoOutbox evento : eventos) {
+            lineas.append(aJson(evento)).append('\n');
+        }
+        try {
+            // Una sola escritura por lote
+            Files.writeString(archivo, lineas, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudieron escribir los eventos en " + archivo, e);
+        }
+    }
+    
+    private String aJson(EventoOutbox evento) {
+        try {
+            ObjectNode nodo = objectMapper.createObjectNode();
+            nodo.put("id", evento.getId());
+            nodo.put("tipo", evento.getTipo().name());
+            nodo.put("agregadoId", evento.getAgregadoId());
+            nodo.put("fecha", evento.getFechaCreacion().toString());
+            nodo.set("payload", objectMapper.readTree(evento.getPayload()));
+            return objectMapper.writeValueAsString(nodo);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Evento con payload inválido: " + evento.getId(), e);
+        }
+    }
+}
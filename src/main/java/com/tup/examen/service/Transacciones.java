@@ -0,0 +1,24 @@
+package com.tup.examen.service;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+final class Transacciones {
+    
+    private Transacciones() {
+    }
+    
+    // Ejecuta la acción cuando la transacción actual confirma; sin transacción activa se ejecuta en el momento
+    static void alConfirmar(Runnable accion) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    accion.run();
+                }
+            });
+        } else {
+            accion.run();
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.tup.examen.benchmark;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+// Línea base: solicitudes atendidas por el pool de hilos de Tomcat (200 hilos por defecto).
+// Ejecutar con: mvn test -Pbenchmark -Dtest=CargaHilosPlataformaBenchmarkTest
+@Tag("benchmark")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@DirtiesContext
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class CargaHilosPlataformaBenchmarkTest extends CargaHttpBenchmark {
+
+    @Override
+    String modo() {
+        return "plataforma";
+    }
+}
@@ -0,0 +1,25 @@
+package com.tup.examen.benchmark;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+// Misma carga con el perfil "virtual". Se omite en JVMs anteriores a Java 21.
+// Ejecutar con: mvn test -Pbenchmark,java21 -Dtest='CargaHilos*BenchmarkTest'
+@Tag("benchmark")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles({"test", "virtual"})
+@DirtiesContext
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@EnabledForJreRange(min = JRE.JAVA_21)
+class CargaHilosVirtualesBenchmarkTest extends CargaHttpBenchmark {
+
+    @Override
+    String modo() {
+        return "virtuales";
+    }
+}
@@ -0,0 +1,157 @@
+package com.tup.examen.benchmark;
+
+import com.tup.examen.model.Pieza;
+import com.tup.examen.repository.PiezaRepository;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Carga HTTP concurrente contra el servidor embebido: CLIENTES conexiones repiten la misma solicitud
+// durante DURACION y se informan throughput y percentiles de latencia. Las subclases fijan el modo de
+// ejecución del servidor (pool de hilos de Tomcat o hilos virtuales)
+abstract class CargaHttpBenchmark {
+
+    private static final int PIEZAS = 200;
+    private static final int CLIENTES = 400;
+    private static final Duration CALENTAMIENTO = Duration.ofSeconds(3);
+    private static final Duration DURACION = Duration.ofSeconds(10);
+
+    @LocalServerPort
+    private int puerto;
+
+    @Autowired
+    private PiezaRepository piezaRepository;
+
+    private ExecutorService clientes;
+    private HttpClient http;
+    private List<Long> piezaIds;
+    private final AtomicLong secuencia = new AtomicLong();
+
+    abstract String modo();
+
+    @BeforeAll
+    void preparar() {
+        List<Pieza> piezas = new ArrayList<>();
+        for (int i = 0; i < PIEZAS; i++) {
+            Pieza pieza = new Pieza();
+            pieza.setNombre("Pieza de carga " + i);
+            pieza.setCodigo("CARGA-" + modo() + "-" + i);
+            pieza.setPrecio(new BigDecimal("10.00"));
+            pieza.setStock(100_000_000);
+            pieza.setCategoria("Motor");
+            piezas.add(pieza);
+        }
+        piezaIds = piezaRepository.saveAll(piezas).stream().map(Pieza::getId).toList();
+        clientes = Executors.newFixedThreadPool(CLIENTES);
+        http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+    }
+
+    @AfterAll
+    void liberar() {
+        clientes.shutdownNow();
+    }
+
+    @Test
+    void listarPiezas() throws Exception {
+        Resultado resultado = cargar("GET /api/piezas", i -> HttpRequest.newBuilder(uri("/api/piezas?limit=50"))
+                .GET().build());
+        assertEquals(0, resultado.errores());
+    }
+
+    @Test
+    void crearFactura() throws Exception {
+        Resultado resultado = cargar("POST /api/facturas", i -> HttpRequest.newBuilder(uri("/api/facturas"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(factura()))
+                .build());
+        assertEquals(0, resultado.errores());
+    }
+
+    private String factura() {
+        long pieza = piezaIds.get(ThreadLocalRandom.current().nextInt(PIEZAS));
+        return "{\"numeroFactura\":\"CARGA-" + modo() + "-" + secuencia.incrementAndGet() + "\","
+                + "\"clienteNombre\":\"Cliente carga\","
+                + "\"items\":[{\"piezaId\":" + pieza + ",\"cantidad\":1}]}";
+    }
+
+    private Resultado cargar(String nombre, IntFunction<HttpRequest> solicitud) throws Exception {
+        correr(solicitud, CALENTAMIENTO);
+        Resultado resultado = correr(solicitud, DURACION);
+        System.out.printf("%-10s %-20s %9.0f req/s   p50 %7.2f ms   p99 %7.2f ms   errores %d%n", modo(), nombre,
+                resultado.solicitudes() / (DURACION.toMillis() / 1000.0), resultado.percentil(0.50),
+                resultado.percentil(0.99), resultado.errores());
+        return resultado;
+    }
+
+    private Resultado correr(IntFunction<HttpRequest> solicitud, Duration duracion) throws Exception {
+        long fin = System.nanoTime() + duracion.toNanos();
+        List<Future<long[]>> futuros = new ArrayList<>(CLIENTES);
+        AtomicLong errores = new AtomicLong();
+        for (int c = 0; c < CLIENTES; c++) {
+            futuros.add(clientes.submit(() -> {
+                long[] latencias = new long[1024];
+                int n = 0;
+                while (System.nanoTime() < fin) {
+                    long inicio = System.nanoTime();
+                    HttpResponse<Void> respuesta = http.send(solicitud.apply(n), HttpResponse.BodyHandlers.discarding());
+                    if (respuesta.statusCode() >= 300) {
+                        errores.incrementAndGet();
+                    }
+                    if (n == latencias.length) {
+                        latencias = Arrays.copyOf(latencias, n * 2);
+                    }
+                    latencias[n++] = System.nanoTime() - inicio;
+                }
+                return Arrays.copyOf(latencias, n);
+            }));
+        }
+        List<long[]> porCliente = new ArrayList<>(CLIENTES);
+        for (Future<long[]> futuro : futuros) {
+            porCliente.add(futuro.get());
+        }
+        long[] todas = porCliente.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+        return new Resultado(todas, errores.get());
+    }
+
+    private URI uri(String ruta) {
+        return URI.create("http://localhost:" + puerto + ruta);
+    }
+
+    private record Resultado(long[] latenciasOrdenadas, long errores) {
+
+        long solicitudes() {
+            return latenciasOrdenadas.length;
+        }
+
+        double percentil(double p) {
+            if (latenciasOrdenadas.length == 0) {
+                return 0;
+            }
+            int indice = (int) Math.ceil(p * latenciasOrdenadas.length) - 1;
+            return latenciasOrdenadas[Math.max(indice, 0)] / 1_000_000.0;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.tup.examen.benchmark;
+
+import com.tup.examen.dto.FacturaDTO;
+import com.tup.examen.dto.ItemFacturaDTO;
+import com.tup.examen.model.Factura;
+import com.tup.examen.model.ItemFactura;
+import com.tup.examen.model.Pieza;
+import com.tup.examen.repository.PiezaRepository;
+import com.tup.examen.service.FacturaService;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Compara el alta de facturas con un findById + UPDATE por item contra la carga en una consulta
+// y el descuento de stock en un único batch. Cada operación se revierte para no agotar el stock.
+// Ejecutar con: mvn test -Pbenchmark -Dtest=CrearFacturaBenchmarkTest
+@Tag("benchmark")
+@SpringBootTest
+@ActiveProfiles("test")
+@DirtiesContext
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class CrearFacturaBenchmarkTest {
+
+    private static final int PIEZAS = 200;
+
+    @Autowired
+    private PiezaRepository piezaRepository;
+
+    @Autowired
+    private FacturaService facturaService;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transaccion;
+    private List<Long> piezaIds;
+    private final AtomicLong secuencia = new AtomicLong();
+
+    @BeforeAll
+    void cargarDatos() {
+        transaccion = new TransactionTemplate(transactionManager);
+        piezaIds = transaccion.execute(status -> {
+            List<Long> ids = new ArrayList<>();
+            for (int i = 0; i < PIEZAS; i++) {
+                Pieza pieza = new Pieza();
+                pieza.setNombre("Pieza de prueba " + i);
+                pieza.setCodigo("BENCH-FAC-" + i);
+                pieza.setPrecio(new BigDecimal("10.00").add(BigDecimal.valueOf(i % 100)));
+                pieza.setStock(1_000_000);
+                pieza.setCategoria("Motor");
+                entityManager.persist(pieza);
+                ids.add(pieza.getId());
+            }
+            return ids;
+        });
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 10, 100})
+    void crearFactura_PorItemVsEnLote(int lineas) {
+        MedidorBenchmark.Resultado antes = MedidorBenchmark.medir("crear factura de " + lineas + " líneas: por item", 20, 100,
+                () -> revertir(() -> crearPorItem(nuevaFactura(lineas))));
+        MedidorBenchmark.Resultado despues = MedidorBenchmark.medir("crear factura de " + lineas + " líneas: en lote", 20, 100,
+                () -> revertir(() -> facturaService.crearFactura(nuevaFactura(lineas))));
+
+        assertEquals(lineas, revertir(() -> facturaService.crearFactura(nuevaFactura(lineas))).getItems().size());
+        System.out.printf("%d líneas: %.1fx menos latencia%n", lineas,
+                antes.milisPorOperacion() / despues.milisPorOperacion());
+    }
+
+    private FacturaDTO nuevaFactura(int lineas) {
+        FacturaDTO dto = new FacturaDTO();
+        dto.setNumeroFactura("BENCH-" + secuencia.incrementAndGet());
+        dto.setClienteNombre("Cliente benchmark");
+        List<ItemFacturaDTO> items = new ArrayList<>();
+        for (int i = 0; i < lineas; i++) {
+            // Ids desordenados, como llegan de la interfaz
+            items.add(new ItemFacturaDTO(null, piezaIds.get((i * 37) % PIEZAS), null, null, 1, null, null, null));
+        }
+        dto.setItems(items);
+        return dto;
+    }
+
+    private <T> T revertir(Supplier<T> operacion) {
+        return transaccion.execute(status -> {
+            T resultado = operacion.get();
+            // Se fuerzan los INSERT para medir el mismo trabajo en ambas variantes
+            entityManager.flush();
+            status.setRollbackOnly();
+            return resultado;
+        });
+    }
+
+    // Variante anterior: una lectura y un UPDATE condicional por cada línea de la factura
+    private Factura crearPorItem(FacturaDTO dto) {
+        Factura factura = new Factura();
+        factura.setNumeroFactura(dto.getNumeroFactura());
+        factura.setClienteNombre(dto.getClienteNombre());
+        BigDecimal subtotal = BigDecimal.ZERO;
+        LocalDateTime ahora = LocalDateTime.now();
+        for (ItemFacturaDTO itemDTO : dto.getItems()) {
+            Pieza pieza = piezaRepository.findById(itemDTO.getPiezaId()).orElseThrow();
+            if (!piezaRepository.descontarStockEnLote(new TreeMap<>(Map.of(pieza.getId(), itemDTO.getCantidad())), ahora)
+                    .isEmpty()) {
+                throw new RuntimeException("Stock insuficiente para la pieza: " + pieza.getCodigo());
+            }
+            ItemFactura item = new ItemFactura();
+            item.setFactura(factura);
+            item.setPieza(pieza);
+            item.setCantidad(itemDTO.getCantidad());
+            item.setPrecioUnitario(pieza.getPrecio());
+            subtotal = subtotal.add(pieza.getPrecio().multiply(BigDecimal.valueOf(itemDTO.getCantidad())));
+            factura.getItems().add(item);
+        }
+        factura.setSubtotal(subtotal);
+        factura.setImpuesto(subtotal.multiply(new BigDecimal("0.21")));
+        factura.setTotal(subtotal.add(factura.getImpuesto()));
+        entityManager.persist(factura);
+        return factura;
+    }
+}
@@ -0,0 +1,39 @@
+package com.tup.examen.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.Supplier;
+
+// Medición simple de latencia y bytes asignados por operación en el hilo actual
+final class MedidorBenchmark {
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private MedidorBenchmark() {
+    }
+
+    static Resultado medir(String nombre, int calentamiento, int iteraciones, Supplier<?> operacion) {
+        for (int i = 0; i < calentamiento; i++) {
+            operacion.get();
+        }
+        long hilo = Thread.currentThread().getId();
+        long bytesInicio = THREADS.getThreadAllocatedBytes(hilo);
+        long inicio = System.nanoTime();
+        for (int i = 0; i < iteraciones; i++) {
+            operacion.get();
+        }
+        long nanos = System.nanoTime() - inicio;
+        long bytes = THREADS.getThreadAllocatedBytes(hilo) - bytesInicio;
+        Resultado resultado = new Resultado(nombre, nanos / 1_000_000.0 / iteraciones, bytes / iteraciones);
+        System.out.println(resultado);
+        return resultado;
+    }
+
+    record Resultado(String nombre, double milisPorOperacion, long bytesPorOperacion) {
+
+        @Override
+        public String toString() {
+            return String.format("%-45s %10.3f ms/op %14d bytes/op", nombre, milisPorOperacion, bytesPorOperacion);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.tup.examen.benchmark;
+
+import com.tup.examen.dto.FacturaDTO;
+import com.tup.examen.dto.FacturaResumenDTO;
+import com.tup.examen.dto.PiezaDTO;
+import com.tup.examen.model.Factura;
+import com.tup.examen.model.ItemFactura;
+import com.tup.examen.model.Pieza;
+import com.tup.examen.repository.FacturaRepository;
+import com.tup.examen.repository.PiezaRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Compara la lectura con entidades administradas contra la proyección directa a DTO.
+// Ejecutar con: mvn test -Pbenchmark -Dtest=ProyeccionesBenchmarkTest
+@Tag("benchmark")
+@SpringBootTest
+@ActiveProfiles("test")
+@DirtiesContext
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class ProyeccionesBenchmarkTest {
+
+    private static final int PIEZAS = 20_000;
+    private static final int FACTURAS = 2_000;
+    private static final int ITEMS_POR_FACTURA = 3;
+
+    @Autowired
+    private PiezaRepository piezaRepository;
+
+    @Autowired
+    private FacturaRepository facturaRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transaccion;
+
+    @BeforeAll
+    void cargarDatos() {
+        transaccion = new TransactionTemplate(transactionManager);
+        transaccion.executeWithoutResult(status -> {
+            for (int i = 0; i < PIEZAS; i++) {
+                Pieza pieza = new Pieza();
+                pieza.setNombre("Pieza de prueba " + i);
+                pieza.setCodigo("BENCH-" + i);
+                pieza.setDescripcion("Descripción de la pieza de prueba número " + i);
+                pieza.setPrecio(new BigDecimal("10.00").add(BigDecimal.valueOf(i % 100)));
+                pieza.setStock(100);
+                pieza.setMarca("Marca " + (i % 20));
+                pieza.setModelo("Modelo " + (i % 50));
+                pieza.setCategoria("Motor");
+                entityManager.persist(pieza);
+                if (i % 500 == 0) {
+                    entityManager.flush();
+                    entityManager.clear();
+                }
+            }
+        });
+        transaccion.executeWithoutResult(status -> {
+            List<Pieza> piezas = piezaRepository.findAll();
+            for (int i = 0; i < FACTURAS; i++) {
+                Factura factura = new Factura();
+                factura.setNumeroFactura("BENCH-FAC-" + i);
+                factura.setClienteNombre("Cliente " + (i % 100));
+                factura.setSubtotal(new BigDecimal("100.00"));
+                factura.setImpuesto(new BigDecimal("21.00"));
+                factura.setTotal(new BigDecimal("121.00"));
+                for (int j = 0; j < ITEMS_POR_FACTURA; j++) {
+                    ItemFactura item = new ItemFactura();
+                    item.setFactura(factura);
+                    item.setPieza(piezas.get((i * ITEMS_POR_FACTURA + j) % piezas.size()));
+                    item.setCantidad(1);
+                    item.setPrecioUnitario(new BigDecimal("10.00"));
+                    factura.getItems().add(item);
+                }
+                entityManager.persist(factura);
+                if (i % 200 == 0) {
+                    entityManager.flush();
+                }
+            }
+        });
+    }
+
+    @Test
+    void listadoDePiezas_EntidadesVsProyeccion() {
+        MedidorBenchmark.Resultado entidades = MedidorBenchmark.medir("piezas: entidades + convertirADTO", 3, 10,
+                () -> transaccion.execute(status -> piezaRepository.findAll().stream()
+                        .map(ProyeccionesBenchmarkTest::convertirADTO)
+                        .collect(Collectors.toList())));
+        MedidorBenchmark.Resultado proyeccion = MedidorBenchmark.medir("piezas: proyección a PiezaDTO", 3, 10,
+                () -> transaccion.execute(status -> piezaRepository.listarDTOs()));
+
+        assertTrue(transaccion.execute(status -> piezaRepository.listarDTOs()).size() >= PIEZAS);
+        System.out.printf("piezas: %.1fx menos bytes, %.1fx menos latencia%n",
+                (double) entidades.bytesPorOperacion() / proyeccion.bytesPorOperacion(),
+                entidades.milisPorOperacion() / proyeccion.milisPorOperacion());
+    }
+
+    @Test
+    void listadoDeFacturas_EntidadesVsResumen() {
+        MedidorBenchmark.Resultado entidades = MedidorBenchmark.medir("facturas: entidades + items", 2, 5,
+                () -> transaccion.execute(status -> facturaRepository.findAll().stream()
+                        .map(FacturaDTO::fromEntity)
+                        .collect(Collectors.toList())));
+        MedidorBenchmark.Resultado resumen = MedidorBenchmark.medir("facturas: proyección a FacturaResumenDTO", 2, 5,
+                () -> transaccion.execute(status -> facturaRepository.listarResumenesPrimeraPagina(null, null,
+                        Limit.of(FACTURAS))));
+
+        List<FacturaResumenDTO> resumenes = transaccion.execute(status -> facturaRepository.listarResumenesPrimeraPagina(
+                null, null, Limit.of(FACTURAS)));
+        assertEquals(FACTURAS, resumenes.size());
+        System.out.printf("facturas: %.1fx menos bytes, %.1fx menos latencia%n",
+                (double) entidades.bytesPorOperacion() / resumen.bytesPorOperacion(),
+                entidades.milisPorOperacion() / resumen.milisPorOperacion());
+    }
+
+    private static PiezaDTO convertirADTO(Pieza pieza) {
+        return new PiezaDTO(pieza.getId(), pieza.getNombre(), pieza.getCodigo(), pieza.getDescripcion(),
+                pieza.getPrecio(), pieza.getStock(), pieza.getMarca(), pieza.getModelo(), pieza.getCategoria(),
+                pieza.getFechaRegistro(), pieza.getFechaActualizacion());
+    }
+}
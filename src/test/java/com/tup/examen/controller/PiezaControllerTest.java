@@ -1,7 +1,11 @@
 package com.tup.examen.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tup.examen.dto.PaginaDTO;
 import com.tup.examen.dto.PiezaDTO;
+import com.tup.examen.dto.RechazoCargaDTO;
+import com.tup.examen.dto.ResultadoCargaDTO;
+import com.tup.examen.service.PiezaLoteService;
 import com.tup.examen.service.PiezaService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -32,6 +36,9 @@ class PiezaControllerTest {
     @Mock
     private PiezaService piezaService;
 
+    @Mock
+    private PiezaLoteService piezaLoteService;
+
     private ObjectMapper objectMapper;
 
     @InjectMocks
@@ -90,6 +97,26 @@ class PiezaControllerTest {
         verify(piezaService).obtenerTodasLasPiezas();
     }
 
+    @Test
+    void obtenerTodasLasPiezas_ConCursor_DebeRetornarPagina() throws Exception {
+        // Arrange
+        PaginaDTO<PiezaDTO> pagina = new PaginaDTO<>(piezasList, "2", true, 2);
+        when(piezaService.obtenerPaginaDePiezas(0L, 2)).thenReturn(pagina);
+
+        // Act & Assert
+        mockMvc.perform(get("/api/piezas")
+                .param("after", "0")
+                .param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items").isArray())
+                .andExpect(jsonPath("$.items[1].codigo").value("BUJ002"))
+                .andExpect(jsonPath("$.siguienteCursor").value("2"))
+                .andExpect(jsonPath("$.hayMas").value(true));
+
+        verify(piezaService).obtenerPaginaDePiezas(0L, 2);
+        verify(piezaService, never()).obtenerTodasLasPiezas();
+    }
+
     @Test
     void obtenerPiezaPorId_CuandoExiste_DebeRetornarPieza() throws Exception {
         // Arrange
@@ -379,4 +406,54 @@ class PiezaControllerTest {
 
         verify(piezaService).eliminarPieza(999L);
     }
-} 
\ No newline at end of file
+
+    @Test
+    void crearPiezasEnLote_DebeRetornarResultadoDelLote() throws Exception {
+        // Arrange
+        ResultadoCargaDTO resultado = new ResultadoCargaDTO(2, 1, 0, 1, 5L, 400.0,
+                List.of(new RechazoCargaDTO(2, "FIL001", "Ya existe una pieza con el código: FIL001")));
+        when(piezaLoteService.crearLote(anyList())).thenReturn(resultado);
+        PiezaDTO nuevaPieza = new PiezaDTO();
+        nuevaPieza.setNombre("Nueva Pieza");
+        nuevaPieza.setCodigo("NUE001");
+        nuevaPieza.setPrecio(new BigDecimal("30.00"));
+        nuevaPieza.setStock(25);
+
+        // Act & Assert
+        mockMvc.perform(post("/api/piezas/lote")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(List.of(nuevaPieza, nuevaPieza))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.creadas").value(1))
+                .andExpect(jsonPath("$.rechazadas").value(1))
+                .andExpect(jsonPath("$.rechazos[0].fila").value(2));
+    }
+
+    @Test
+    void crearPiezasEnLote_CuandoEsInvalido_DebeRetornar400() throws Exception {
+        // Arrange
+        when(piezaLoteService.crearLote(anyList())).thenThrow(new RuntimeException("El lote no contiene piezas"));
+
+        // Act & Assert
+        mockMvc.perform(post("/api/piezas/lote")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[]"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void importarCsv_DebeRetornarResultadoDeLaImportacion() throws Exception {
+        // Arrange
+        ResultadoCargaDTO resultado = new ResultadoCargaDTO(3, 1, 1, 1, 2L, 1500.0, List.of());
+        when(piezaLoteService.importarCsv(any(), eq(';'))).thenReturn(resultado);
+
+        // Act & Assert
+        mockMvc.perform(post("/api/piezas/importar")
+                        .param("separador", ";")
+                        .contentType("text/csv")
+                        .content("codigo;nombre;precio;stock\n"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.actualizadas").value(1))
+                .andExpect(jsonPath("$.filasPorSegundo").value(1500.0));
+    }
+}
@@ -0,0 +1,177 @@
+package com.tup.examen.integration;
+
+import com.tup.examen.config.CacheSegundoNivelConfig;
+import com.tup.examen.dto.FacturaDTO;
+import com.tup.examen.dto.ItemFacturaDTO;
+import com.tup.examen.model.Pieza;
+import com.tup.examen.repository.PiezaRepository;
+import com.tup.examen.service.FacturaService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+// Sin @Transactional: la caché de segundo nivel solo se actualiza cuando las transacciones confirman
+@SpringBootTest
+@ActiveProfiles("test")
+@DirtiesContext
+class CacheSegundoNivelIntegrationTest {
+
+    @Autowired
+    private WebApplicationContext webApplicationContext;
+
+    @Autowired
+    private PiezaRepository piezaRepository;
+
+    @Autowired
+    private FacturaService facturaService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private TransactionTemplate transaccion;
+    private Statistics estadisticas;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        transaccion = new TransactionTemplate(transactionManager);
+        estadisticas = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
+    }
+
+    @Test
+    void findById_EnOtraTransaccion_DebeLeerDeLaCache() throws Exception {
+        // Given
+        Long id = crearPieza("L2-001", 10).getId();
+        piezaRepository.findById(id);
+
+        // When
+        estadisticas.clear();
+        Pieza pieza = piezaRepository.findById(id).orElseThrow();
+
+        // Then - Sin consultas a la base
+        assertEquals("L2-001", pieza.getCodigo());
+        assertEquals(0, estadisticas.getPrepareStatementCount());
+        CacheRegionStatistics region = estadisticas.getCacheRegionStatistics(CacheSegundoNivelConfig.REGION_PIEZAS);
+        assertEquals(1, region.getHitCount());
+        assertEquals(0, region.getMissCount());
+
+        mockMvc.perform(get("/api/piezas/cache/segundo-nivel"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.estadisticasHabilitadas").value(true))
+                .andExpect(jsonPath("$.regiones.piezas.aciertos").isNumber())
+                .andExpect(jsonPath("$.regiones.piezas.tasaAciertos").isNumber());
+    }
+
+    @Test
+    void crearFactura_DescuentoPorJdbc_NoDebeDejarStockViejoEnLaCache() {
+        // Given - La pieza queda en la caché con stock 10
+        Long id = crearPieza("L2-002", 10).getId();
+        assertEquals(10, piezaRepository.findById(id).orElseThrow().getStock());
+
+        // When
+        facturaService.crearFactura(factura(id, 3));
+
+        // Then
+        assertEquals(7, piezaRepository.findById(id).orElseThrow().getStock());
+        assertEquals(7, piezaRepository.findByCodigo("L2-002").orElseThrow().getStock());
+    }
+
+    @Test
+    void crearFactura_Revertida_DebeConservarElStockAnterior() {
+        // Given
+        Long id = crearPieza("L2-003", 10).getId();
+        piezaRepository.findById(id);
+
+        // When - El descuento se ejecuta y la transacción se revierte
+        transaccion.executeWithoutResult(status -> {
+            facturaService.crearFactura(factura(id, 4));
+            // El descuento por JDBC ya se ve en la base dentro de la transacción, todavía sin confirmar
+            assertEquals(6, jdbcTemplate.queryForObject("SELECT stock FROM piezas WHERE id = ?", Integer.class, id));
+            status.setRollbackOnly();
+        });
+
+        // Then
+        assertEquals(10, piezaRepository.findById(id).orElseThrow().getStock());
+    }
+
+    @Test
+    void findByCodigo_Repetida_DebeResolverseDesdeLaCacheDeConsultas() {
+        // Given
+        crearPieza("L2-004", 5);
+        piezaRepository.findByCodigo("L2-004");
+
+        // When
+        estadisticas.clear();
+        Pieza pieza = piezaRepository.findByCodigo("L2-004").orElseThrow();
+
+        // Then
+        assertEquals(5, pieza.getStock());
+        assertEquals(1, estadisticas.getQueryCacheHitCount());
+        assertEquals(0, estadisticas.getPrepareStatementCount());
+    }
+
+    @Test
+    void anularFactura_DebeInvalidarSoloLasPiezasDeLaFactura() {
+        // Given - Ambas piezas en la caché; solo la primera está en la factura
+        Long facturada = crearPieza("L2-005", 10).getId();
+        Long ajena = crearPieza("L2-006", 8).getId();
+        Long facturaId = facturaService.crearFactura(factura(facturada, 4)).getId();
+        piezaRepository.findById(facturada);
+        piezaRepository.findById(ajena);
+
+        // When
+        facturaService.anularFactura(facturaId);
+
+        // Then - La pieza ajena se sigue leyendo de la caché y la facturada muestra el stock repuesto
+        estadisticas.clear();
+        assertEquals(8, piezaRepository.findById(ajena).orElseThrow().getStock());
+        CacheRegionStatistics region = estadisticas.getCacheRegionStatistics(CacheSegundoNivelConfig.REGION_PIEZAS);
+        assertEquals(1, region.getHitCount());
+        assertEquals(0, region.getMissCount());
+        assertEquals(10, piezaRepository.findById(facturada).orElseThrow().getStock());
+    }
+
+    private Pieza crearPieza(String codigo, int stock) {
+        Pieza pieza = new Pieza();
+        pieza.setNombre("Pieza " + codigo);
+        pieza.setCodigo(codigo);
+        pieza.setPrecio(new BigDecimal("100.00"));
+        pieza.setStock(stock);
+        pieza.setCategoria("Frenos");
+        return piezaRepository.save(pieza);
+    }
+
+    private static FacturaDTO factura(Long piezaId, int cantidad) {
+        FacturaDTO dto = new FacturaDTO();
+        dto.setClienteNombre("Cliente caché");
+        dto.setItems(List.of(new ItemFacturaDTO(null, piezaId, null, null, cantidad, null, null, null)));
+        return dto;
+    }
+}
@@ -4,24 +4,59 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.tup.examen.dto.FacturaDTO;
 import com.tup.examen.dto.ItemFacturaDTO;
 import com.tup.examen.model.Factura;
+import com.tup.examen.model.ItemFactura;
+import com.tup.examen.model.MovimientoStock;
+import com.tup.examen.model.ResumenDiario;
+import com.tup.examen.repository.ContadorFacturaRepository;
 import com.tup.examen.repository.FacturaRepository;
+import com.tup.examen.repository.MovimientoStockRepository;
 import com.tup.examen.repository.PiezaRepository;
+import com.tup.examen.repository.ResumenDiarioRepository;
+import com.tup.examen.service.FacturaExportacionService;
+import com.tup.examen.service.FacturaService;
+import com.tup.examen.service.LibroStock;
+import com.tup.examen.service.NumeradorFacturas;
+import com.tup.examen.service.RelayOutbox;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.context.WebApplicationContext;
 
+import java.io.ByteArrayOutputStream;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
+import static org.junit.jupiter.api.Assertions.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -43,6 +78,36 @@ class FacturaIntegrationTest {
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private FacturaExportacionService facturaExportacionService;
+
+    @Autowired
+    private NumeradorFacturas numeradorFacturas;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private MovimientoStockRepository movimientoStockRepository;
+
+    @Autowired
+    private LibroStock libroStock;
+
+    @Autowired
+    private RelayOutbox relayOutbox;
+
+    @Autowired
+    private ResumenDiarioRepository resumenDiarioRepository;
+
+    @Autowired
+    private ContadorFacturaRepository contadorFacturaRepository;
+
+    @Value("${outbox.sink.archivo}")
+    private String archivoOutbox;
+
     private MockMvc mockMvc;
 
     @BeforeEach
@@ -399,4 +464,625 @@ class FacturaIntegrationTest {
         mockMvc.perform(get("/api/facturas/numero/FAC-INEXISTENTE"))
                 .andExpect(status().isNotFound());
     }
-} 
\ No newline at end of file
+
+    @Test
+    void obtenerResumenesDeFacturas_DeberiaRetornarSoloLaCabecera() throws Exception {
+        // Given - Crear facturas de prueba
+        var factura1 = new Factura();
+        factura1.setNumeroFactura("FAC-TEST-014");
+        factura1.setClienteNombre("Lucía Romero");
+        factura1.setSubtotal(new BigDecimal("100.00"));
+        factura1.setImpuesto(new BigDecimal("21.00"));
+        factura1.setTotal(new BigDecimal("121.00"));
+        factura1.setEstado(Factura.EstadoFactura.PAGADA);
+        facturaRepository.save(factura1);
+
+        var factura2 = new Factura();
+        factura2.setNumeroFactura("FAC-TEST-015");
+        factura2.setClienteNombre("Lucía Romero");
+        factura2.setSubtotal(new BigDecimal("50.00"));
+        factura2.setImpuesto(new BigDecimal("10.50"));
+        factura2.setTotal(new BigDecimal("60.50"));
+        factura2.setEstado(Factura.EstadoFactura.PENDIENTE);
+        facturaRepository.save(factura2);
+
+        // When & Then
+        mockMvc.perform(get("/api/facturas/resumen")
+                .param("cliente", "lucía")
+                .param("estado", "PAGADA"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items.length()").value(1))
+                .andExpect(jsonPath("$.items[0].numeroFactura").value("FAC-TEST-014"))
+                .andExpect(jsonPath("$.items[0].total").value(121.0))
+                .andExpect(jsonPath("$.items[0].items").doesNotExist())
+                .andExpect(jsonPath("$.limite").value(FacturaService.LIMITE_PAGINA_POR_DEFECTO));
+        mockMvc.perform(get("/api/facturas/resumen").param("limit", "100000"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.limite").value(FacturaService.LIMITE_PAGINA_MAXIMO));
+    }
+
+    @Test
+    void exportarFacturas_DeberiaEscribirUnaLineaPorFactura() throws Exception {
+        // Given - Crear facturas de prueba, una con coma en el nombre para ejercitar el escape CSV
+        var factura1 = new Factura();
+        factura1.setNumeroFactura("FAC-TEST-016");
+        factura1.setClienteNombre("Gómez, Ana");
+        factura1.setSubtotal(new BigDecimal("100.00"));
+        factura1.setImpuesto(new BigDecimal("21.00"));
+        factura1.setTotal(new BigDecimal("121.00"));
+        facturaRepository.save(factura1);
+
+        var factura2 = new Factura();
+        factura2.setNumeroFactura("FAC-TEST-017");
+        factura2.setClienteNombre("Pedro Díaz");
+        factura2.setSubtotal(new BigDecimal("50.00"));
+        factura2.setImpuesto(new BigDecimal("10.50"));
+        factura2.setTotal(new BigDecimal("60.50"));
+        facturaRepository.save(factura2);
+
+        LocalDateTime desde = LocalDateTime.now().minusHours(1);
+        LocalDateTime hasta = LocalDateTime.now().plusHours(1);
+
+        // When
+        ByteArrayOutputStream ndjson = new ByteArrayOutputStream();
+        long filasNdjson = facturaExportacionService.exportarPorPeriodo(desde, hasta, "ndjson", ndjson);
+        ByteArrayOutputStream csv = new ByteArrayOutputStream();
+        facturaExportacionService.exportarPorPeriodo(desde, hasta, "csv", csv);
+
+        // Then
+        assertEquals(2, filasNdjson);
+        String[] lineas = ndjson.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lineas.length);
+        assertEquals("FAC-TEST-016", objectMapper.readTree(lineas[0]).get("numeroFactura").asText());
+        assertEquals(121.0, objectMapper.readTree(lineas[0]).get("total").asDouble());
+
+        String[] filasCsv = csv.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(3, filasCsv.length);
+        assertTrue(filasCsv[0].startsWith("id,numeroFactura"));
+        assertTrue(filasCsv[1].contains(",\"Gómez, Ana\","));
+    }
+
+    @Test
+    void exportarFacturas_DeberiaRechazarFormatoDesconocido() throws Exception {
+        mockMvc.perform(get("/api/facturas/exportar")
+                .param("fechaInicio", "2024-01-01T00:00:00")
+                .param("fechaFin", "2024-12-31T23:59:59")
+                .param("formato", "xml"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void exportarFacturas_DeberiaResponderComoDescargaCsv() throws Exception {
+        MvcResult resultado = mockMvc.perform(get("/api/facturas/exportar")
+                .param("fechaInicio", "2024-01-01T00:00:00")
+                .param("fechaFin", "2024-12-31T23:59:59")
+                .param("formato", "csv"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(resultado))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Disposition", "attachment; filename=\"facturas.csv\""))
+                .andExpect(content().string(org.hamcrest.Matchers.startsWith("id,numeroFactura")));
+    }
+
+    @Test
+    void listarFacturas_DeberiaTraerLosItemsSinConsultasPorFactura() throws Exception {
+        // Given - Varias facturas con items, fuera del contexto de persistencia para forzar la lectura desde la base
+        var pieza = new com.tup.examen.model.Pieza();
+        pieza.setNombre("Freno de Disco");
+        pieza.setCodigo("FD010");
+        pieza.setPrecio(new BigDecimal("150.00"));
+        pieza.setStock(100);
+        pieza = piezaRepository.save(pieza);
+        for (int i = 0; i < 5; i++) {
+            var factura = new Factura();
+            factura.setNumeroFactura("FAC-N1-" + i);
+            factura.setClienteNombre("Cliente " + i);
+            factura.setSubtotal(new BigDecimal("300.00"));
+            factura.setImpuesto(new BigDecimal("63.00"));
+            factura.setTotal(new BigDecimal("363.00"));
+            for (int j = 0; j < 2; j++) {
+                var item = new ItemFactura();
+                item.setFactura(factura);
+                item.setPieza(pieza);
+                item.setCantidad(1);
+                item.setPrecioUnitario(new BigDecimal("150.00"));
+                factura.getItems().add(item);
+            }
+            facturaRepository.save(factura);
+        }
+        entityManager.flush();
+        entityManager.clear();
+        Statistics estadisticas = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        // When & Then - Lista completa: una sola sentencia
+        estadisticas.clear();
+        mockMvc.perform(get("/api/facturas"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(5))
+                .andExpect(jsonPath("$[0].items.length()").value(2));
+        assertEquals(1, estadisticas.getPrepareStatementCount());
+
+        // Página por cursor: una consulta de ids y otra con las facturas y sus items
+        entityManager.clear();
+        estadisticas.clear();
+        mockMvc.perform(get("/api/facturas").param("limit", "3"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items.length()").value(3))
+                .andExpect(jsonPath("$.items[2].items.length()").value(2))
+                .andExpect(jsonPath("$.hayMas").value(true));
+        assertEquals(2, estadisticas.getPrepareStatementCount());
+
+        // Búsqueda por término
+        entityManager.clear();
+        estadisticas.clear();
+        mockMvc.perform(get("/api/facturas/buscar").param("termino", "FAC-N1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(5));
+        assertEquals(1, estadisticas.getPrepareStatementCount());
+
+        // Búsqueda por monto mínimo: incluye nombre y código de la pieza sin consultas por item
+        entityManager.clear();
+        estadisticas.clear();
+        mockMvc.perform(get("/api/facturas/monto-minimo").param("montoMinimo", "300.0"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(5))
+                .andExpect(jsonPath("$[0].items[0].piezaCodigo").value("FD010"));
+        assertEquals(1, estadisticas.getPrepareStatementCount());
+    }
+
+    @Test
+    void obtenerResumenesPaginados_DeberiaRecorrerTodasLasFacturasPorCursor() throws Exception {
+        // Given
+        for (int i = 0; i < 5; i++) {
+            var factura = new Factura();
+            factura.setNumeroFactura("FAC-PAG-" + i);
+            factura.setClienteNombre("Cliente Paginado");
+            factura.setSubtotal(new BigDecimal("10.00"));
+            factura.setImpuesto(new BigDecimal("2.10"));
+            factura.setTotal(new BigDecimal("12.10"));
+            facturaRepository.save(factura);
+        }
+
+        // When & Then - Se recorren las páginas hasta que no haya más, sin repetir facturas
+        Set<String> vistas = new LinkedHashSet<>();
+        String cursor = null;
+        int paginas = 0;
+        do {
+            var request = get("/api/facturas/resumen").param("cliente", "paginado").param("limit", "2");
+            if (cursor != null) {
+                request.param("cursor", cursor);
+            }
+            MvcResult resultado = mockMvc.perform(request)
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.items[0].items").doesNotExist())
+                    .andReturn();
+            var pagina = objectMapper.readTree(resultado.getResponse().getContentAsString());
+            pagina.get("items").forEach(item -> vistas.add(item.get("numeroFactura").asText()));
+            cursor = pagina.get("hayMas").asBoolean() ? pagina.get("siguienteCursor").asText() : null;
+            paginas++;
+        } while (cursor != null);
+
+        assertEquals(3, paginas);
+        assertEquals(List.of("FAC-PAG-4", "FAC-PAG-3", "FAC-PAG-2", "FAC-PAG-1", "FAC-PAG-0"),
+                new ArrayList<>(vistas));
+    }
+
+    @Test
+    void obtenerResumenesPaginados_DeberiaRechazarCursorInvalido() throws Exception {
+        mockMvc.perform(get("/api/facturas/resumen").param("cursor", "no-es-un-cursor"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void numeradorFacturas_DeberiaEntregarNumerosUnicosEntreHilosYReinicios() throws Exception {
+        // Given
+        int hilos = 8;
+        int numerosPorHilo = 100;
+        ExecutorService executor = Executors.newFixedThreadPool(hilos);
+        Set<String> numeros = ConcurrentHashMap.newKeySet();
+
+        // When - Varios hilos piden números a la vez
+        List<Future<?>> tareas = new ArrayList<>();
+        for (int i = 0; i < hilos; i++) {
+            tareas.add(executor.submit(() -> {
+                for (int j = 0; j < numerosPorHilo; j++) {
+                    numeros.add(numeradorFacturas.siguiente());
+                }
+            }));
+        }
+        for (Future<?> tarea : tareas) {
+            tarea.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // Una instancia nueva (como tras un reinicio) continúa después del último bloque reservado
+        NumeradorFacturas reiniciado = webApplicationContext.getAutowireCapableBeanFactory()
+                .createBean(NumeradorFacturas.class);
+        String posterior = reiniciado.siguiente();
+
+        // Then
+        assertEquals(hilos * numerosPorHilo, numeros.size());
+        assertTrue(numeros.stream().allMatch(numero -> numero.matches("FAC-\\d{8}-\\d{6}")));
+        String mayor = numeros.stream().max(String::compareTo).orElseThrow();
+        assertFalse(numeros.contains(posterior));
+        assertTrue(posterior.compareTo(mayor) > 0);
+    }
+
+    @Test
+    void numeradorFacturas_DeberiaReservarElBloqueSiguienteAntesDeAgotarElActual() throws Exception {
+        // Given - Una instancia nueva reserva su primer bloque (50 números) al pedir el primero
+        NumeradorFacturas numerador = webApplicationContext.getAutowireCapableBeanFactory()
+                .createBean(NumeradorFacturas.class);
+        String primero = numerador.siguiente();
+        long inicio = Long.parseLong(primero.substring(primero.lastIndexOf('-') + 1));
+
+        // When - Al quedar 10 números en el bloque se pide el siguiente en segundo plano
+        for (int i = 1; i < 45; i++) {
+            numerador.siguiente();
+        }
+        long limite = System.currentTimeMillis() + 10_000;
+        while (ultimoNumeroReservado() < inicio + 99) {
+            assertTrue(System.currentTimeMillis() < limite, "El bloque siguiente no se reservó");
+            Thread.sleep(20);
+        }
+
+        // Then - Agotar el bloque actual no consulta la base desde el hilo que pide el número
+        Statistics estadisticas = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        estadisticas.clear();
+        String ultimo = null;
+        for (int i = 0; i < 6; i++) {
+            ultimo = numerador.siguiente();
+        }
+        assertEquals(0, estadisticas.getPrepareStatementCount());
+        assertEquals(inicio + 50, Long.parseLong(ultimo.substring(ultimo.lastIndexOf('-') + 1)));
+    }
+
+    @Test
+    void buscarUltimoSufijoConPrefijo_DeberiaCompararNumericamenteAlCambiarElAncho() {
+        // Given - "1000000" ordena antes que "999999" como texto; el sufijo no numérico se ignora
+        for (String numero : List.of("FAC-19990101-999999", "FAC-19990101-1000000", "FAC-19990101-MANUAL",
+                "FAC-19990102-2000000")) {
+            var factura = new Factura();
+            factura.setNumeroFactura(numero);
+            factura.setClienteNombre("Cliente Numerador");
+            factura.setSubtotal(new BigDecimal("10.00"));
+            factura.setImpuesto(new BigDecimal("2.10"));
+            factura.setTotal(new BigDecimal("12.10"));
+            facturaRepository.save(factura);
+        }
+        facturaRepository.flush();
+
+        // When & Then
+        assertEquals(Optional.of(1_000_000L), facturaRepository.buscarUltimoSufijoConPrefijo("FAC-19990101-"));
+        assertEquals(Optional.empty(), facturaRepository.buscarUltimoSufijoConPrefijo("FAC-19990103-"));
+    }
+
+    @Test
+    void crearFactura_ConIdempotencyKey_DeberiaCrearUnaSolaVez() throws Exception {
+        // Given
+        var pieza = new com.tup.examen.model.Pieza();
+        pieza.setNombre("Freno de Disco");
+        pieza.setCodigo("FD020");
+        pieza.setPrecio(new BigDecimal("150.00"));
+        pieza.setStock(10);
+        pieza = piezaRepository.save(pieza);
+
+        FacturaDTO facturaDTO = new FacturaDTO();
+        facturaDTO.setNumeroFactura("FAC-TEST-IDEM");
+        facturaDTO.setClienteNombre("Juan Pérez");
+        facturaDTO.setItems(Arrays.asList(
+            new ItemFacturaDTO(null, pieza.getId(), null, null, 2, null, null, "Freno delantero")
+        ));
+        String cuerpo = objectMapper.writeValueAsString(facturaDTO);
+        String clave = UUID.randomUUID().toString();
+
+        // When & Then - El reintento devuelve la misma factura sin volver a descontar stock
+        MvcResult primera = mockMvc.perform(post("/api/facturas")
+                .header("Idempotency-Key", clave)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(cuerpo))
+                .andExpect(status().isCreated())
+                .andExpect(header().string("Idempotent-Replayed", "false"))
+                .andReturn();
+        long id = objectMapper.readTree(primera.getResponse().getContentAsString()).get("id").asLong();
+
+        mockMvc.perform(post("/api/facturas")
+                .header("Idempotency-Key", clave)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(cuerpo))
+                .andExpect(status().isCreated())
+                .andExpect(header().string("Idempotent-Replayed", "true"))
+                .andExpect(jsonPath("$.id").value(id));
+
+        entityManager.flush();
+        entityManager.clear();
+        assertEquals(8, piezaRepository.findById(pieza.getId()).orElseThrow().getStock());
+
+        // La misma clave con otros datos es un conflicto
+        facturaDTO.setClienteNombre("Otro Cliente");
+        mockMvc.perform(post("/api/facturas")
+                .header("Idempotency-Key", clave)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(facturaDTO)))
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    void crearFacturasEnLote_DeberiaRepartirStockEInformarCadaFactura() throws Exception {
+        // Given
+        var piezaA = new com.tup.examen.model.Pieza();
+        piezaA.setNombre("Filtro de Aire");
+        piezaA.setCodigo("LOTE-A");
+        piezaA.setPrecio(new BigDecimal("10.00"));
+        piezaA.setStock(5);
+        piezaA = piezaRepository.save(piezaA);
+        var piezaB = new com.tup.examen.model.Pieza();
+        piezaB.setNombre("Bujía");
+        piezaB.setCodigo("LOTE-B");
+        piezaB.setPrecio(new BigDecimal("20.00"));
+        piezaB.setStock(10);
+        piezaB = piezaRepository.save(piezaB);
+
+        List<FacturaDTO> lote = List.of(
+                facturaDeLote(null, "Flota Norte", new ItemFacturaDTO(null, piezaA.getId(), null, null, 3, null, null, null)),
+                facturaDeLote(null, "Flota Sur", new ItemFacturaDTO(null, piezaA.getId(), null, null, 3, null, null, null)),
+                facturaDeLote("FAC-LOTE-1", "Flota Este",
+                        new ItemFacturaDTO(null, piezaB.getId(), null, null, 2, null, null, null),
+                        new ItemFacturaDTO(null, piezaA.getId(), null, null, 2, null, null, null)),
+                facturaDeLote("FAC-LOTE-1", "Flota Oeste", new ItemFacturaDTO(null, piezaB.getId(), null, null, 1, null, null, null)),
+                facturaDeLote(null, "Flota Centro", new ItemFacturaDTO(null, 999999L, null, null, 1, null, null, null)),
+                facturaDeLote(null, " ", new ItemFacturaDTO(null, piezaB.getId(), null, null, 1, null, null, null)));
+
+        // When & Then
+        mockMvc.perform(post("/api/facturas/lote")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(lote)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(6))
+                .andExpect(jsonPath("$[0].creada").value(true))
+                .andExpect(jsonPath("$[0].factura.numeroFactura").value(org.hamcrest.Matchers.startsWith("FAC-")))
+                .andExpect(jsonPath("$[0].factura.total").value(36.3))
+                .andExpect(jsonPath("$[1].creada").value(false))
+                .andExpect(jsonPath("$[1].motivo").value("Stock insuficiente para la pieza: LOTE-A"))
+                .andExpect(jsonPath("$[2].creada").value(true))
+                .andExpect(jsonPath("$[2].factura.numeroFactura").value("FAC-LOTE-1"))
+                .andExpect(jsonPath("$[2].factura.items.length()").value(2))
+                .andExpect(jsonPath("$[3].motivo").value("Número de factura repetido dentro del lote"))
+                .andExpect(jsonPath("$[4].motivo").value("Pieza no encontrada con id: 999999"))
+                .andExpect(jsonPath("$[5].motivo").value("El nombre del cliente es obligatorio"))
+                .andExpect(jsonPath("$[5].indice").value(6));
+
+        entityManager.flush();
+        entityManager.clear();
+        assertEquals(0, piezaRepository.findById(piezaA.getId()).orElseThrow().getStock());
+        assertEquals(8, piezaRepository.findById(piezaB.getId()).orElseThrow().getStock());
+        assertTrue(facturaRepository.existsByNumeroFactura("FAC-LOTE-1"));
+    }
+
+    @Test
+    void crearFacturasEnLote_DeberiaRechazarLoteVacio() throws Exception {
+        mockMvc.perform(post("/api/facturas/lote")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[]"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void anularFactura_DeberiaRestaurarStockUnaSolaVez() throws Exception {
+        // Given - Una factura con dos líneas de la misma pieza y una de otra
+        var piezaA = new com.tup.examen.model.Pieza();
+        piezaA.setNombre("Amortiguador");
+        piezaA.setCodigo("ANU-A");
+        piezaA.setPrecio(new BigDecimal("80.00"));
+        piezaA.setStock(10);
+        piezaA = piezaRepository.save(piezaA);
+        var piezaB = new com.tup.examen.model.Pieza();
+        piezaB.setNombre("Rótula");
+        piezaB.setCodigo("ANU-B");
+        piezaB.setPrecio(new BigDecimal("30.00"));
+        piezaB.setStock(10);
+        piezaB = piezaRepository.save(piezaB);
+
+        MvcResult creada = mockMvc.perform(post("/api/facturas")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(facturaDeLote("FAC-ANU-1", "Taller Anulación",
+                        new ItemFacturaDTO(null, piezaA.getId(), null, null, 2, null, null, null),
+                        new ItemFacturaDTO(null, piezaB.getId(), null, null, 4, null, null, null),
+                        new ItemFacturaDTO(null, piezaA.getId(), null, null, 3, null, null, null)))))
+                .andExpect(status().isCreated())
+                .andReturn();
+        long id = objectMapper.readTree(creada.getResponse().getContentAsString()).get("id").asLong();
+
+        // When - Se anula dos veces
+        mockMvc.perform(put("/api/facturas/{id}/anular", id)).andExpect(status().isOk());
+        mockMvc.perform(put("/api/facturas/{id}/anular", id)).andExpect(status().isOk());
+
+        // Then - El stock vuelve al valor inicial y no se duplica
+        entityManager.flush();
+        entityManager.clear();
+        assertEquals(10, piezaRepository.findById(piezaA.getId()).orElseThrow().getStock());
+        assertEquals(10, piezaRepository.findById(piezaB.getId()).orElseThrow().getStock());
+        assertEquals(Factura.EstadoFactura.ANULADA, facturaRepository.findById(id).orElseThrow().getEstado());
+    }
+
+    @Test
+    void anularFactura_DeberiaRechazarFacturaPagada() throws Exception {
+        var factura = new Factura();
+        factura.setNumeroFactura("FAC-ANU-PAGADA");
+        factura.setClienteNombre("Ana Martínez");
+        factura.setSubtotal(new BigDecimal("100.00"));
+        factura.setImpuesto(new BigDecimal("21.00"));
+        factura.setTotal(new BigDecimal("121.00"));
+        factura.setEstado(Factura.EstadoFactura.PAGADA);
+        factura = facturaRepository.save(factura);
+
+        mockMvc.perform(put("/api/facturas/{id}/anular", factura.getId()))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(put("/api/facturas/{id}/anular", 999999L))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void stockEnFecha_DeberiaReconstruirLaHistoriaDesdeElLibro() throws Exception {
+        // Given - Alta con 10 unidades, venta de 4 y anulación de esa venta
+        MvcResult alta = mockMvc.perform(post("/api/piezas")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"nombre\":\"Bujía\",\"codigo\":\"LIB-001\",\"precio\":12.50,\"stock\":10}"))
+                .andExpect(status().isCreated())
+                .andReturn();
+        long piezaId = objectMapper.readTree(alta.getResponse().getContentAsString()).get("id").asLong();
+        Thread.sleep(5);
+        MvcResult creada = mockMvc.perform(post("/api/facturas")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(facturaDeLote("FAC-LIB-1", "Taller Libro",
+                        new ItemFacturaDTO(null, piezaId, null, null, 4, null, null, null)))))
+                .andExpect(status().isCreated())
+                .andReturn();
+        long facturaId = objectMapper.readTree(creada.getResponse().getContentAsString()).get("id").asLong();
+
+        // When - Se compacta después de la venta; la anulación queda como movimiento suelto
+        libroStock.compactar();
+        Thread.sleep(5);
+        mockMvc.perform(put("/api/facturas/{id}/anular", facturaId)).andExpect(status().isOk());
+
+        List<MovimientoStock> movimientos = movimientoStockRepository.findByPiezaIdOrderByIdAsc(piezaId);
+        assertEquals(List.of(10, -4, 4), movimientos.stream().map(MovimientoStock::getCantidad).toList());
+        assertEquals("FAC-LIB-1", movimientos.get(2).getReferencia());
+
+        // Then
+        mockMvc.perform(get("/api/piezas/{id}/stock", piezaId)
+                        .param("fecha", movimientos.get(0).getFecha().minusSeconds(1).toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.stock").value(0));
+        mockMvc.perform(get("/api/piezas/{id}/stock", piezaId)
+                        .param("fecha", movimientos.get(0).getFecha().toString()))
+                .andExpect(jsonPath("$.stock").value(10));
+        mockMvc.perform(get("/api/piezas/{id}/stock", piezaId)
+                        .param("fecha", movimientos.get(1).getFecha().toString()))
+                .andExpect(jsonPath("$.stock").value(6));
+        mockMvc.perform(get("/api/piezas/{id}/stock", piezaId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.stock").value(10));
+        mockMvc.perform(get("/api/piezas/{id}/stock", 999999L))
+                .andExpect(status().isNotFound());
+
+        // Compactar todo deja el mismo stock que la pieza
+        libroStock.compactar();
+        entityManager.clear();
+        assertEquals(piezaRepository.findById(piezaId).orElseThrow().getStock(),
+                libroStock.stockEn(piezaId, LocalDateTime.now()));
+    }
+
+    @Test
+    void outbox_DeberiaRegistrarEventosEnLaTransaccionYEntregarlosPorElRelay() throws Exception {
+        // Given
+        var pieza = new com.tup.examen.model.Pieza();
+        pieza.setNombre("Radiador");
+        pieza.setCodigo("OUT-001");
+        pieza.setPrecio(new BigDecimal("200.00"));
+        pieza.setStock(5);
+        pieza = piezaRepository.save(pieza);
+        relayOutbox.entregarLote();
+
+        // When - Alta, cambio de estado y una alta rechazada
+        MvcResult creada = mockMvc.perform(post("/api/facturas")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(facturaDeLote("FAC-OUT-1", "Taller Outbox",
+                        new ItemFacturaDTO(null, pieza.getId(), null, null, 2, null, null, null)))))
+                .andExpect(status().isCreated())
+                .andReturn();
+        long id = objectMapper.readTree(creada.getResponse().getContentAsString()).get("id").asLong();
+        mockMvc.perform(put("/api/facturas/{id}/estado", id).param("nuevoEstado", "VENCIDA"))
+                .andExpect(status().isOk());
+        mockMvc.perform(post("/api/facturas")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(facturaDeLote("FAC-OUT-2", "Taller Outbox",
+                        new ItemFacturaDTO(null, pieza.getId(), null, null, 99, null, null, null)))))
+                .andExpect(status().isBadRequest());
+
+        // Then - Solo los cambios confirmados dejan evento, y el relay los marca como entregados
+        assertEquals(2, relayOutbox.pendientes());
+        assertEquals(2, relayOutbox.entregarLote());
+        assertEquals(0, relayOutbox.pendientes());
+        List<String> lineas = Files.readAllLines(Path.of(archivoOutbox));
+        var estado = objectMapper.readTree(lineas.get(lineas.size() - 1));
+        var alta = objectMapper.readTree(lineas.get(lineas.size() - 2));
+        assertEquals("FACTURA_CREADA", alta.get("tipo").asText());
+        assertEquals("FAC-OUT-1", alta.get("payload").get("numeroFactura").asText());
+        assertEquals(2, alta.get("payload").get("items").get(0).get("cantidad").asInt());
+        assertEquals("FACTURA_ESTADO_ACTUALIZADO", estado.get("tipo").asText());
+        assertEquals("VENCIDA", estado.get("payload").get("estado").asText());
+    }
+
+    @Test
+    void obtenerEstadisticasPorPeriodo_DeberiaCoincidirConRecorrerLasFacturas() throws Exception {
+        // Given - Facturas creadas por la API (alta individual y en lote), una pagada y otra anulada
+        resumenDiarioRepository.reconstruir();
+        var pieza = new com.tup.examen.model.Pieza();
+        pieza.setNombre("Correa de distribución");
+        pieza.setCodigo("RES-001");
+        pieza.setPrecio(new BigDecimal("50.00"));
+        pieza.setStock(100);
+        pieza = piezaRepository.save(pieza);
+        List<Long> ids = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            MvcResult creada = mockMvc.perform(post("/api/facturas")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(objectMapper.writeValueAsString(facturaDeLote("FAC-RES-" + i, "Taller Resumen",
+                            new ItemFacturaDTO(null, pieza.getId(), null, null, i, null, null, null)))))
+                    .andExpect(status().isCreated())
+                    .andReturn();
+            ids.add(objectMapper.readTree(creada.getResponse().getContentAsString()).get("id").asLong());
+        }
+        mockMvc.perform(post("/api/facturas/lote")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(List.of(facturaDeLote("FAC-RES-4", "Taller Resumen",
+                        new ItemFacturaDTO(null, pieza.getId(), null, null, 4, null, null, null))))))
+                .andExpect(status().isOk());
+        mockMvc.perform(put("/api/facturas/{id}/estado", ids.get(0)).param("nuevoEstado", "PAGADA"))
+                .andExpect(status().isOk());
+        mockMvc.perform(put("/api/facturas/{id}/estado", ids.get(1)).param("nuevoEstado", "VENCIDA"))
+                .andExpect(status().isOk());
+        mockMvc.perform(put("/api/facturas/{id}/anular", ids.get(1))).andExpect(status().isOk());
+        entityManager.flush();
+
+        // When & Then - Rangos con días completos y con fracciones de día en los extremos
+        LocalDateTime ahora = LocalDateTime.now();
+        List<LocalDateTime[]> rangos = List.of(
+                new LocalDateTime[]{ahora.minusDays(1), ahora.plusDays(1)},
+                new LocalDateTime[]{ahora.toLocalDate().atStartOfDay(), ahora.toLocalDate().atTime(LocalTime.MAX)},
+                new LocalDateTime[]{ahora.minusDays(3).toLocalDate().atStartOfDay(), ahora.plusMinutes(1)},
+                new LocalDateTime[]{ahora.plusMinutes(1), ahora.plusDays(2)});
+        for (LocalDateTime[] rango : rangos) {
+            long cantidad = facturaRepository.contarFacturasPorPeriodo(rango[0], rango[1]);
+            Double pagadas = facturaRepository.sumarTotalFacturasPagadasPorPeriodo(rango[0], rango[1]);
+            mockMvc.perform(get("/api/facturas/estadisticas/periodo")
+                    .param("fechaInicio", rango[0].toString())
+                    .param("fechaFin", rango[1].toString()))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.cantidadFacturas").value(cantidad))
+                    .andExpect(jsonPath("$.totalFacturasPagadas").value(pagadas != null ? pagadas : 0.0));
+        }
+        var anuladas = resumenDiarioRepository.findById(
+                new ResumenDiario.Clave(ahora.toLocalDate(), Factura.EstadoFactura.ANULADA)).orElseThrow();
+        assertEquals(1, anuladas.getCantidad());
+        assertEquals(0, new BigDecimal("121.00").compareTo(anuladas.getTotal()));
+    }
+
+    private long ultimoNumeroReservado() {
+        entityManager.clear();
+        return contadorFacturaRepository.findById(LocalDate.now())
+                .map(contador -> contador.getUltimoNumero())
+                .orElse(0L);
+    }
+
+    private static FacturaDTO facturaDeLote(String numero, String cliente, ItemFacturaDTO... items) {
+        FacturaDTO dto = new FacturaDTO();
+        dto.setNumeroFactura(numero);
+        dto.setClienteNombre(cliente);
+        dto.setItems(Arrays.asList(items));
+        return dto;
+    }
+}
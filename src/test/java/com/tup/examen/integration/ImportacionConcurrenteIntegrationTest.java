@@ -0,0 +1,115 @@
+package com.tup.examen.integration;
+
+import com.tup.examen.dto.FacturaDTO;
+import com.tup.examen.dto.ItemFacturaDTO;
+import com.tup.examen.dto.PiezaDTO;
+import com.tup.examen.dto.ResultadoCargaDTO;
+import com.tup.examen.model.MovimientoStock;
+import com.tup.examen.repository.MovimientoStockRepository;
+import com.tup.examen.repository.PiezaRepository;
+import com.tup.examen.service.FacturaService;
+import com.tup.examen.service.LibroStock;
+import com.tup.examen.service.PiezaLoteService;
+import com.tup.examen.service.PiezaService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Sin @Transactional: la venta y la importación corren en hilos distintos y cada una confirma por su cuenta
+@SpringBootTest
+@ActiveProfiles("test")
+@DirtiesContext
+// Base propia: otro contexto que se cierra con create-drop no le borra las tablas a este
+@TestPropertySource(properties = "spring.datasource.url=jdbc:h2:mem:importacion")
+class ImportacionConcurrenteIntegrationTest {
+
+    @Autowired
+    private PiezaService piezaService;
+
+    @Autowired
+    private FacturaService facturaService;
+
+    @Autowired
+    private PiezaLoteService piezaLoteService;
+
+    @Autowired
+    private PiezaRepository piezaRepository;
+
+    @Autowired
+    private MovimientoStockRepository movimientoStockRepository;
+
+    @Autowired
+    private LibroStock libroStock;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void importarCsv_ConUnaVentaEnCurso_DebeAjustarSobreElStockConfirmado() throws Exception {
+        // Given - Una venta de 5 unidades descontó el stock (20 -> 15) y todavía no confirmó
+        Long id = piezaService.crearPieza(pieza("IMP-CONC-1", 20)).getId();
+        CountDownLatch vendida = new CountDownLatch(1);
+        CountDownLatch confirmar = new CountDownLatch(1);
+        TransactionTemplate transaccion = new TransactionTemplate(transactionManager);
+        CompletableFuture<Void> venta = CompletableFuture.runAsync(() -> transaccion.executeWithoutResult(status -> {
+            facturaService.registrarFactura(factura(id, 5));
+            vendida.countDown();
+            try {
+                confirmar.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        assertTrue(vendida.await(10, TimeUnit.SECONDS));
+
+        // When - La importación fija el stock en 40 mientras la venta sigue abierta
+        String csv = "codigo,nombre,precio,stock\nIMP-CONC-1,Pieza importada,100.00,40\n";
+        CompletableFuture<ResultadoCargaDTO> importacion = CompletableFuture.supplyAsync(() -> piezaLoteService
+                .importarCsv(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), ','));
+        Thread.sleep(300);
+        confirmar.countDown();
+        venta.get(10, TimeUnit.SECONDS);
+        ResultadoCargaDTO resultado = importacion.get(10, TimeUnit.SECONDS);
+
+        // Then - El ajuste parte del stock que dejó la venta y el libro coincide con la pieza
+        assertEquals(1, resultado.getActualizadas());
+        assertEquals(40, piezaRepository.findById(id).orElseThrow().getStock());
+        List<MovimientoStock> movimientos = movimientoStockRepository.findByPiezaIdOrderByIdAsc(id);
+        MovimientoStock ajuste = movimientos.get(movimientos.size() - 1);
+        assertEquals(MovimientoStock.TipoMovimiento.AJUSTE, ajuste.getTipo());
+        assertEquals(25, ajuste.getCantidad());
+        assertEquals(40, libroStock.stockEn(id, LocalDateTime.now()));
+    }
+
+    private static PiezaDTO pieza(String codigo, int stock) {
+        PiezaDTO dto = new PiezaDTO();
+        dto.setNombre("Pieza " + codigo);
+        dto.setCodigo(codigo);
+        dto.setPrecio(new BigDecimal("100.00"));
+        dto.setStock(stock);
+        return dto;
+    }
+
+    private static FacturaDTO factura(Long piezaId, int cantidad) {
+        FacturaDTO dto = new FacturaDTO();
+        dto.setClienteNombre("Cliente importación");
+        dto.setItems(List.of(new ItemFacturaDTO(null, piezaId, null, null, cantidad, null, null, null)));
+        return dto;
+    }
+}
@@ -0,0 +1,201 @@
+package com.tup.examen.integration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tup.examen.dto.FacturaDTO;
+import com.tup.examen.dto.ItemFacturaDTO;
+import com.tup.examen.model.Pieza;
+import com.tup.examen.repository.FacturaRepository;
+import com.tup.examen.repository.PiezaRepository;
+import com.tup.examen.service.DifusorEventos;
+import com.tup.examen.service.IngestaFacturas;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+// Sin @Transactional: el escritor de la ingesta trabaja en su propio hilo y solo ve datos confirmados
+@SpringBootTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("test")
+@DirtiesContext
+@TestPropertySource(properties = "facturas.ingesta.espera-maxima-ms=200")
+class IngestaFacturasIntegrationTest {
+
+    @Autowired
+    private WebApplicationContext webApplicationContext;
+
+    @Autowired
+    private IngestaFacturas ingestaFacturas;
+
+    @Autowired
+    private PiezaRepository piezaRepository;
+
+    @Autowired
+    private FacturaRepository facturaRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private DifusorEventos difusorEventos;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext).build();
+    }
+
+    @Test
+    void encolar_DeberiaAislarLasFacturasConErrorDelRestoDelLote() throws Exception {
+        // Given
+        Pieza pieza = crearPieza("ING001", 10);
+
+        // When - Las solicitudes llegan dentro de la misma ventana, así que se confirman en un único lote
+        List<CompletableFuture<FacturaDTO>> resultados = new ArrayList<>();
+        resultados.add(ingestaFacturas.encolar(factura("FAC-ING-1", pieza.getId(), 3)));
+        resultados.add(ingestaFacturas.encolar(factura("FAC-ING-2", pieza.getId(), 50)));
+        resultados.add(ingestaFacturas.encolar(factura("FAC-ING-1", pieza.getId(), 1)));
+        resultados.add(ingestaFacturas.encolar(factura("FAC-ING-3", pieza.getId(), 4)));
+
+        // Then - Solo fallan la de stock insuficiente y la de número repetido
+        assertEquals("FAC-ING-1", resultados.get(0).get(10, TimeUnit.SECONDS).getNumeroFactura());
+        ExecutionException sinStock = assertThrows(ExecutionException.class,
+                () -> resultados.get(1).get(10, TimeUnit.SECONDS));
+        assertTrue(sinStock.getCause().getMessage().contains("Stock insuficiente"));
+        assertThrows(ExecutionException.class, () -> resultados.get(2).get(10, TimeUnit.SECONDS));
+        assertNotNull(resultados.get(3).get(10, TimeUnit.SECONDS).getId());
+
+        assertTrue(facturaRepository.existsByNumeroFactura("FAC-ING-1"));
+        assertFalse(facturaRepository.existsByNumeroFactura("FAC-ING-2"));
+        assertTrue(facturaRepository.existsByNumeroFactura("FAC-ING-3"));
+        assertEquals(3, piezaRepository.findById(pieza.getId()).orElseThrow().getStock());
+    }
+
+    @Test
+    void encolar_ConErrorDeLaBaseEnUnaFactura_DeberiaConfirmarLasDemas() throws Exception {
+        // Given - Los eventos en vivo muestran qué acciones post-commit se ejecutaron
+        Pieza pieza = crearPieza("ING003", 2_000_000);
+        List<DifusorEventos.EventoCambio> eventos = new CopyOnWriteArrayList<>();
+        DifusorEventos.Suscripcion suscripcion = difusorEventos.suscribir(null, new DifusorEventos.Canal() {
+            @Override
+            public void enviar(DifusorEventos.EventoCambio evento) {
+                eventos.add(evento);
+            }
+
+            @Override
+            public void cerrar() {
+            }
+        });
+
+        // When - La del medio pasa la validación, pero su total no entra en DECIMAL(10,2) y la base la rechaza
+        // al hacer flush, lo que deja la transacción del lote marcada como rollback-only
+        List<CompletableFuture<FacturaDTO>> resultados = new ArrayList<>();
+        resultados.add(ingestaFacturas.encolar(factura("FAC-ING-DB-1", pieza.getId(), 2)));
+        resultados.add(ingestaFacturas.encolar(factura("FAC-ING-DB-2", pieza.getId(), 1_000_000)));
+        resultados.add(ingestaFacturas.encolar(factura("FAC-ING-DB-3", pieza.getId(), 3)));
+
+        // Then
+        assertEquals("FAC-ING-DB-1", resultados.get(0).get(10, TimeUnit.SECONDS).getNumeroFactura());
+        assertThrows(ExecutionException.class, () -> resultados.get(1).get(10, TimeUnit.SECONDS));
+        assertEquals("FAC-ING-DB-3", resultados.get(2).get(10, TimeUnit.SECONDS).getNumeroFactura());
+        assertFalse(facturaRepository.existsByNumeroFactura("FAC-ING-DB-2"));
+        assertEquals(2_000_000 - 5, piezaRepository.findById(pieza.getId()).orElseThrow().getStock());
+
+        // Solo las facturas confirmadas publican sus eventos; los de la rechazada se descartan con su savepoint
+        long limite = System.currentTimeMillis() + 5000;
+        while (facturasCreadas(eventos).size() < 2 && System.currentTimeMillis() < limite) {
+            Thread.sleep(20);
+        }
+        Thread.sleep(200);
+        suscripcion.cancelar();
+        assertEquals(List.of("FAC-ING-DB-1", "FAC-ING-DB-3"), facturasCreadas(eventos));
+        assertEquals(List.of(-2L, -3L), eventos.stream()
+                .filter(evento -> "STOCK_ACTUALIZADO".equals(evento.tipo()))
+                .map(evento -> ((Number) evento.datos().get("variacion")).longValue())
+                .toList());
+    }
+
+    @Test
+    void encolar_ConDatosInvalidos_DeberiaRechazarSinEncolar() {
+        FacturaDTO sinCliente = factura("FAC-ING-INV", 1L, 1);
+        sinCliente.setClienteNombre(null);
+
+        CompletableFuture<FacturaDTO> resultado = ingestaFacturas.encolar(sinCliente);
+
+        assertTrue(resultado.isCompletedExceptionally());
+        ExecutionException error = assertThrows(ExecutionException.class, resultado::get);
+        assertEquals("El nombre del cliente es obligatorio", error.getCause().getMessage());
+    }
+
+    @Test
+    void ingestarFactura_DeberiaResponderCuandoElLoteConfirma() throws Exception {
+        // Given
+        Pieza pieza = crearPieza("ING002", 5);
+
+        // When & Then
+        MvcResult creada = mockMvc.perform(post("/api/facturas/ingesta")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(factura("FAC-ING-HTTP", pieza.getId(), 2))))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(creada))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.numeroFactura").value("FAC-ING-HTTP"));
+
+        MvcResult rechazada = mockMvc.perform(post("/api/facturas/ingesta")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(factura("FAC-ING-HTTP-2", pieza.getId(), 99))))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(rechazada))
+                .andExpect(status().isBadRequest());
+
+        assertEquals(3, piezaRepository.findById(pieza.getId()).orElseThrow().getStock());
+    }
+
+    private static List<String> facturasCreadas(List<DifusorEventos.EventoCambio> eventos) {
+        return eventos.stream()
+                .filter(evento -> "FACTURA_CREADA".equals(evento.tipo()))
+                .map(evento -> (String) evento.datos().get("numeroFactura"))
+                .toList();
+    }
+
+    private Pieza crearPieza(String codigo, int stock) {
+        Pieza pieza = new Pieza();
+        pieza.setNombre("Pieza " + codigo);
+        pieza.setCodigo(codigo);
+        pieza.setPrecio(new BigDecimal("100.00"));
+        pieza.setStock(stock);
+        return piezaRepository.save(pieza);
+    }
+
+    private static FacturaDTO factura(String numero, Long piezaId, int cantidad) {
+        FacturaDTO dto = new FacturaDTO();
+        dto.setNumeroFactura(numero);
+        dto.setClienteNombre("Cliente ingesta");
+        dto.setItems(List.of(new ItemFacturaDTO(null, piezaId, null, null, cantidad, null, null, null)));
+        return dto;
+    }
+}
@@ -0,0 +1,101 @@
+package com.tup.examen.integration;
+
+import com.tup.examen.dto.FacturaDTO;
+import com.tup.examen.dto.ItemFacturaDTO;
+import com.tup.examen.dto.PiezaDTO;
+import com.tup.examen.model.MovimientoStock;
+import com.tup.examen.repository.MovimientoStockRepository;
+import com.tup.examen.service.FacturaService;
+import com.tup.examen.service.LibroStock;
+import com.tup.examen.service.PiezaService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Sin @Transactional: la venta confirma en otro hilo después de que el compactador ya escribió su snapshot
+@SpringBootTest
+@ActiveProfiles("test")
+@DirtiesContext
+// Base propia: otro contexto que se cierra con create-drop no le borra las tablas a este
+@TestPropertySource(properties = "spring.datasource.url=jdbc:h2:mem:librostock")
+class LibroStockIntegrationTest {
+
+    @Autowired
+    private PiezaService piezaService;
+
+    @Autowired
+    private FacturaService facturaService;
+
+    @Autowired
+    private MovimientoStockRepository movimientoStockRepository;
+
+    @Autowired
+    private LibroStock libroStock;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void compactar_ConUnaVentaQueConfirmaDespues_NoDebePerderElMovimiento() throws Exception {
+        // Given - La venta ya insertó su movimiento (fecha de ahora) pero todavía no confirmó
+        Long id = piezaService.crearPieza(pieza("LIB-TARDE-1", 20)).getId();
+        CountDownLatch vendida = new CountDownLatch(1);
+        CountDownLatch confirmar = new CountDownLatch(1);
+        TransactionTemplate transaccion = new TransactionTemplate(transactionManager);
+        CompletableFuture<Void> venta = CompletableFuture.runAsync(() -> transaccion.executeWithoutResult(status -> {
+            facturaService.registrarFactura(factura(id, 5));
+            vendida.countDown();
+            try {
+                confirmar.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        assertTrue(vendida.await(10, TimeUnit.SECONDS));
+
+        // When - El compactador corre con la venta abierta y después la venta confirma con una fecha anterior
+        Thread.sleep(5);
+        libroStock.compactar();
+        confirmar.countDown();
+        venta.get(10, TimeUnit.SECONDS);
+
+        // Then - El movimiento tardío se cuenta antes y después de la próxima compactación, una sola vez
+        List<MovimientoStock> movimientos = movimientoStockRepository.findByPiezaIdOrderByIdAsc(id);
+        assertEquals(List.of(20, -5), movimientos.stream().map(MovimientoStock::getCantidad).toList());
+        assertEquals(15, libroStock.stockEn(id, LocalDateTime.now()));
+        libroStock.compactar();
+        assertEquals(15, libroStock.stockEn(id, LocalDateTime.now()));
+        assertEquals(20, libroStock.stockEn(id, movimientos.get(1).getFecha().minusNanos(1_000)));
+        assertEquals(15, libroStock.stockEn(id, movimientos.get(1).getFecha()));
+    }
+
+    private static PiezaDTO pieza(String codigo, int stock) {
+        PiezaDTO dto = new PiezaDTO();
+        dto.setNombre("Pieza " + codigo);
+        dto.setCodigo(codigo);
+        dto.setPrecio(new BigDecimal("100.00"));
+        dto.setStock(stock);
+        return dto;
+    }
+
+    private static FacturaDTO factura(Long piezaId, int cantidad) {
+        FacturaDTO dto = new FacturaDTO();
+        dto.setClienteNombre("Cliente libro");
+        dto.setItems(List.of(new ItemFacturaDTO(null, piezaId, null, null, cantidad, null, null, null)));
+        return dto;
+    }
+}
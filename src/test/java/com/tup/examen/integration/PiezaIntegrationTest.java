@@ -1,8 +1,11 @@
 package com.tup.examen.integration;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.tup.examen.dto.PiezaDTO;
+import com.tup.examen.model.EventoOutbox;
 import com.tup.examen.model.Pieza;
+import com.tup.examen.repository.EventoOutboxRepository;
 import com.tup.examen.repository.PiezaRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -11,12 +14,15 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.context.WebApplicationContext;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -37,6 +43,9 @@ class PiezaIntegrationTest {
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private EventoOutboxRepository eventoOutboxRepository;
+
     private MockMvc mockMvc;
 
     private Pieza piezaExistente;
@@ -302,6 +311,146 @@ class PiezaIntegrationTest {
                 .andExpect(jsonPath("$[0].nombre").value("Filtro de Aceite"));
     }
 
+    @Test
+    void buscarPorTermino_DebeReflejarAltasYModificaciones() throws Exception {
+        // Arrange
+        PiezaDTO nueva = new PiezaDTO();
+        nueva.setNombre("Radiador de Aluminio");
+        nueva.setCodigo("RAD010");
+        nueva.setPrecio(new BigDecimal("210.00"));
+        nueva.setStock(4);
+        nueva.setCategoria("Motor");
+        String respuesta = mockMvc.perform(post("/api/piezas")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(nueva)))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        PiezaDTO creada = objectMapper.readValue(respuesta, PiezaDTO.class);
+
+        // Act & Assert
+        mockMvc.perform(get("/api/piezas/buscar/termino").param("termino", "de Alumin"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].codigo").value("RAD010"));
+
+        nueva.setNombre("Radiador de Cobre");
+        mockMvc.perform(put("/api/piezas/" + creada.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(nueva)))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/api/piezas/buscar/termino").param("termino", "de Alumin"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(0));
+    }
+
+    @Test
+    void buscarPorFacetas_DebeCombinarFiltrosYContarPorFaceta() throws Exception {
+        // Arrange
+        Pieza disco = new Pieza();
+        disco.setNombre("Disco de Freno");
+        disco.setCodigo("DIS004");
+        disco.setPrecio(new BigDecimal("85.25"));
+        disco.setStock(3);
+        disco.setMarca("Brembo");
+        disco.setModelo("Ventilated");
+        disco.setCategoria("Frenos");
+        piezaRepository.save(disco);
+
+        // Act & Assert
+        mockMvc.perform(get("/api/piezas/facetas")
+                        .param("categoria", "Frenos")
+                        .param("stockMax", "5"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.total").value(1))
+                .andExpect(jsonPath("$.items[0].codigo").value("DIS004"))
+                .andExpect(jsonPath("$.facetas.marca.Brembo").value(1))
+                .andExpect(jsonPath("$.facetas.categoria.Frenos").value(1))
+                .andExpect(jsonPath("$.facetas.categoria.Motor").doesNotExist());
+    }
+
+    @Test
+    void crearPiezasEnLote_DebeInsertarPorBloquesYRechazarDuplicados() throws Exception {
+        // Arrange: más filas que el tamaño de bloque, un código existente, uno repetido y uno inválido
+        List<PiezaDTO> lote = new ArrayList<>();
+        for (int i = 0; i < 1200; i++) {
+            PiezaDTO pieza = new PiezaDTO();
+            pieza.setNombre("Pieza lote " + i);
+            pieza.setCodigo("LOT" + i);
+            pieza.setPrecio(new BigDecimal("10.00"));
+            pieza.setStock(5);
+            pieza.setCategoria("Motor");
+            lote.add(pieza);
+        }
+        lote.get(10).setCodigo("FIL001");
+        lote.get(20).setCodigo("LOT0");
+        lote.get(30).setPrecio(null);
+
+        // Act & Assert
+        mockMvc.perform(post("/api/piezas/lote")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(lote)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.recibidas").value(1200))
+                .andExpect(jsonPath("$.creadas").value(1197))
+                .andExpect(jsonPath("$.rechazadas").value(3))
+                .andExpect(jsonPath("$.rechazos[?(@.fila == 11)].codigo").value("FIL001"));
+
+        assertEquals(1198, piezaRepository.count());
+        assertTrue(piezaRepository.findByCodigo("LOT1199").isPresent());
+    }
+
+    @Test
+    void crearPiezasEnLote_CuandoEstaVacio_DebeRetornar400() throws Exception {
+        mockMvc.perform(post("/api/piezas/lote")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[]"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void importarCsv_DebeCrearYActualizarPorCodigo() throws Exception {
+        // Arrange: actualiza FIL001, crea dos piezas y rechaza una fila sin precio válido
+        String csv = "codigo,nombre,descripcion,precio,stock,marca,modelo,categoria\n"
+                + "FIL001,Filtro de Aceite,\"Filtro, versión 2\",27.00,60,Bosch,Universal,Motor\n"
+                + "CSV001,Correa de Distribución,,80.00,12,Gates,PowerGrip,Motor\n"
+                + "CSV002,Amortiguador,,abc,4,Monroe,,Suspensión\n"
+                + "CSV003,Radiador,,150.00,3,Valeo,,Motor\n";
+
+        // Act & Assert
+        mockMvc.perform(post("/api/piezas/importar")
+                        .contentType("text/csv")
+                        .content(csv))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.recibidas").value(4))
+                .andExpect(jsonPath("$.creadas").value(2))
+                .andExpect(jsonPath("$.actualizadas").value(1))
+                .andExpect(jsonPath("$.rechazadas").value(1))
+                .andExpect(jsonPath("$.rechazos[0].fila").value(4));
+
+        Pieza actualizada = piezaRepository.findByCodigo("FIL001").orElseThrow();
+        assertEquals(60, actualizada.getStock());
+        assertEquals("Filtro, versión 2", actualizada.getDescripcion());
+        assertTrue(piezaRepository.findByCodigo("CSV003").isPresent());
+        // El ajuste de stock queda en el outbox en la misma transacción que el bloque
+        List<EventoOutbox> ajustes = eventoOutboxRepository.findAll().stream()
+                .filter(e -> e.getTipo() == EventoOutbox.TipoEvento.STOCK_AJUSTADO
+                        && e.getAgregadoId().equals(actualizada.getId()))
+                .toList();
+        assertEquals(1, ajustes.size());
+        JsonNode payload = objectMapper.readTree(ajustes.get(0).getPayload());
+        assertEquals(10, payload.get("variacion").asInt());
+        assertEquals(60, payload.get("stock").asInt());
+    }
+
+    @Test
+    void importarCsv_CuandoFaltaColumnaObligatoria_DebeRetornar400() throws Exception {
+        mockMvc.perform(post("/api/piezas/importar")
+                        .contentType("text/csv")
+                        .content("codigo,nombre\nX1,Pieza\n"))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     void flujoCompletoCRUD_DebeFuncionarCorrectamente() throws Exception {
         // 1. Crear una nueva pieza
@@ -356,4 +505,88 @@ class PiezaIntegrationTest {
         mockMvc.perform(get("/api/piezas/" + piezaCreada.getId()))
                 .andExpect(status().isNotFound());
     }
-} 
\ No newline at end of file
+
+    @Test
+    void obtenerDashboard_DebeCalcularLosIndicadoresEnElServidor() throws Exception {
+        // Arrange - Una segunda pieza con stock bajo
+        Pieza stockBajo = new Pieza();
+        stockBajo.setNombre("Lámpara H4");
+        stockBajo.setCodigo("LAM001");
+        stockBajo.setPrecio(new BigDecimal("10.00"));
+        stockBajo.setStock(3);
+        piezaRepository.save(stockBajo);
+
+        // Act & Assert - 50 x 25.50 + 3 x 10.00
+        mockMvc.perform(get("/api/dashboard"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalPiezas").value(2))
+                .andExpect(jsonPath("$.piezasStockBajo").value(1))
+                .andExpect(jsonPath("$.valorInventario").value(1305.0))
+                .andExpect(jsonPath("$.totalFacturas").isNumber())
+                .andExpect(jsonPath("$.totalVentas").isNumber())
+                .andExpect(jsonPath("$.generadoEn").exists());
+    }
+
+    @Test
+    void obtenerCambios_DebePaginarPorFechaDeActualizacion() throws Exception {
+        // Arrange
+        Pieza segunda = piezaRepository.save(nuevaPieza("CAM002"));
+        Pieza tercera = piezaRepository.save(nuevaPieza("CAM003"));
+
+        // Act & Assert - Descarga completa en páginas de 2
+        MvcResult primera = mockMvc.perform(get("/api/piezas/cambios").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.piezas.length()").value(2))
+                .andExpect(jsonPath("$.piezas[0].codigo").value("FIL001"))
+                .andExpect(jsonPath("$.piezas[1].codigo").value("CAM002"))
+                .andExpect(jsonPath("$.eliminadas.length()").value(0))
+                .andExpect(jsonPath("$.hayMas").value(true))
+                .andExpect(jsonPath("$.siguienteDespuesDe").value(segunda.getId()))
+                .andReturn();
+        JsonNode pagina = objectMapper.readTree(primera.getResponse().getContentAsString());
+
+        mockMvc.perform(get("/api/piezas/cambios")
+                        .param("desde", pagina.get("siguienteDesde").asText())
+                        .param("despuesDe", pagina.get("siguienteDespuesDe").asText())
+                        .param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.piezas.length()").value(1))
+                .andExpect(jsonPath("$.piezas[0].id").value(tercera.getId()))
+                .andExpect(jsonPath("$.hayMas").value(false))
+                .andExpect(jsonPath("$.siguienteDesde").exists())
+                .andExpect(jsonPath("$.siguienteDespuesDe").value(org.hamcrest.Matchers.nullValue()));
+    }
+
+    @Test
+    void obtenerCambios_DespuesDeEliminar_DebeRetornarLaMarcaDeBorrado() throws Exception {
+        // Arrange
+        LocalDateTime ultimaSincronizacion = LocalDateTime.now().minusSeconds(5);
+        Pieza modificada = piezaRepository.save(nuevaPieza("CAM004"));
+        mockMvc.perform(delete("/api/piezas/" + piezaExistente.getId()))
+                .andExpect(status().isNoContent());
+
+        // Act & Assert
+        mockMvc.perform(get("/api/piezas/cambios").param("desde", ultimaSincronizacion.toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.piezas.length()").value(1))
+                .andExpect(jsonPath("$.piezas[0].id").value(modificada.getId()))
+                .andExpect(jsonPath("$.eliminadas.length()").value(1))
+                .andExpect(jsonPath("$.eliminadas[0]").value(piezaExistente.getId()))
+                .andExpect(jsonPath("$.resincronizar").value(false));
+
+        // Una copia más vieja que la retención de borrados debe descargarse completa
+        mockMvc.perform(get("/api/piezas/cambios").param("desde", LocalDateTime.now().minusDays(90).toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.resincronizar").value(true))
+                .andExpect(jsonPath("$.piezas.length()").value(0));
+    }
+
+    private static Pieza nuevaPieza(String codigo) {
+        Pieza pieza = new Pieza();
+        pieza.setNombre("Pieza " + codigo);
+        pieza.setCodigo(codigo);
+        pieza.setPrecio(new BigDecimal("12.00"));
+        pieza.setStock(5);
+        return pieza;
+    }
+}
@@ -1,16 +1,20 @@
 package com.tup.examen.repository;
 
+import com.tup.examen.dto.PiezaDTO;
 import com.tup.examen.model.Pieza;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Limit;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -310,4 +314,69 @@ class PiezaRepositoryTest {
         // Assert
         assertEquals(3, resultado);
     }
-} 
\ No newline at end of file
+
+    @Test
+    void findByIdGreaterThanOrderByIdAsc_DebeRetornarPaginaSiguienteAlCursor() {
+        // Act
+        List<Pieza> primeraPagina = piezaRepository.findByIdGreaterThanOrderByIdAsc(0L, Limit.of(2));
+        List<Pieza> segundaPagina = piezaRepository.findByIdGreaterThanOrderByIdAsc(
+                primeraPagina.get(1).getId(), Limit.of(2));
+
+        // Assert
+        assertEquals(2, primeraPagina.size());
+        assertEquals("FIL001", primeraPagina.get(0).getCodigo());
+        assertEquals("BUJ002", primeraPagina.get(1).getCodigo());
+        assertEquals(1, segundaPagina.size());
+        assertEquals("PAST003", segundaPagina.get(0).getCodigo());
+    }
+
+    @Test
+    void listarDTOs_DebeProyectarTodasLasPiezasOrdenadasPorId() {
+        // Act
+        List<PiezaDTO> resultado = piezaRepository.listarDTOs();
+
+        // Assert
+        assertEquals(3, resultado.size());
+        assertEquals("FIL001", resultado.get(0).getCodigo());
+        assertEquals(new BigDecimal("25.50"), resultado.get(0).getPrecio());
+    }
+
+    @Test
+    void buscarDTOsPorCategoria_DebeIgnorarMayusculas() {
+        // Act
+        List<PiezaDTO> resultado = piezaRepository.buscarDTOsPorCategoria("MOT");
+
+        // Assert
+        assertEquals(2, resultado.size());
+        assertTrue(resultado.stream().allMatch(p -> "Motor".equals(p.getCategoria())));
+    }
+
+    @Test
+    void listarDTOsPorIds_DebeRetornarSoloLasPiezasPedidas() {
+        // Act
+        List<PiezaDTO> resultado = piezaRepository.listarDTOsPorIds(List.of(pieza3.getId(), pieza1.getId()));
+
+        // Assert
+        assertEquals(2, resultado.size());
+        assertEquals("FIL001", resultado.get(0).getCodigo());
+        assertEquals("PAST003", resultado.get(1).getCodigo());
+    }
+
+    @Test
+    void descontarStockEnLote_DebeInformarLasPiezasSinStock() {
+        // Arrange
+        SortedMap<Long, Integer> cantidades = new TreeMap<>();
+        cantidades.put(pieza1.getId(), 10);
+        cantidades.put(pieza2.getId(), pieza2.getStock() + 1);
+        cantidades.put(999999L, 1);
+
+        // Act
+        List<Long> rechazados = piezaRepository.descontarStockEnLote(cantidades, LocalDateTime.now());
+        entityManager.clear();
+
+        // Assert
+        assertEquals(List.of(pieza2.getId(), 999999L), rechazados);
+        assertEquals(40, piezaRepository.findById(pieza1.getId()).orElseThrow().getStock());
+        assertEquals(100, piezaRepository.findById(pieza2.getId()).orElseThrow().getStock());
+    }
+}
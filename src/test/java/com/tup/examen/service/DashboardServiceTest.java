@@ -0,0 +1,105 @@
+package com.tup.examen.service;
+
+import com.tup.examen.dto.DashboardDTO;
+import com.tup.examen.dto.TotalesInventarioDTO;
+import com.tup.examen.model.Factura;
+import com.tup.examen.repository.PiezaRepository;
+import com.tup.examen.repository.ResumenDiarioRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DashboardServiceTest {
+
+    @Mock
+    private PiezaRepository piezaRepository;
+
+    @Mock
+    private ResumenDiarioRepository resumenDiarioRepository;
+
+    private MutableClock reloj;
+    private DashboardService dashboardService;
+
+    @BeforeEach
+    void setUp() {
+        reloj = new MutableClock();
+        dashboardService = new DashboardService(piezaRepository, resumenDiarioRepository, 10, Duration.ofSeconds(5), reloj);
+        when(piezaRepository.calcularTotalesInventario(10))
+                .thenReturn(new TotalesInventarioDTO(8L, 2L, new BigDecimal("1500.00")));
+        when(resumenDiarioRepository.contarTodas()).thenReturn(4L);
+        when(resumenDiarioRepository.contarPorEstado(Factura.EstadoFactura.PAGADA)).thenReturn(2L);
+        when(resumenDiarioRepository.contarPorEstado(Factura.EstadoFactura.PENDIENTE)).thenReturn(1L);
+        when(resumenDiarioRepository.sumarTotalPorEstado(Factura.EstadoFactura.PAGADA)).thenReturn(new BigDecimal("242.00"));
+    }
+
+    @Test
+    void obtenerResumen_DeberiaCompartirElCalculoDuranteElTtl() {
+        DashboardDTO primero = dashboardService.obtenerResumen();
+        reloj.avanzar(Duration.ofSeconds(4));
+        DashboardDTO segundo = dashboardService.obtenerResumen();
+
+        assertSame(primero, segundo);
+        assertEquals(8L, primero.getTotalPiezas());
+        assertEquals(2L, primero.getPiezasStockBajo());
+        assertEquals(4L, primero.getTotalFacturas());
+        assertEquals(2L, primero.getFacturasPagadas());
+        assertEquals(1L, primero.getFacturasPendientes());
+        assertEquals(new BigDecimal("242.00"), primero.getTotalVentas());
+        verify(piezaRepository, times(1)).calcularTotalesInventario(10);
+    }
+
+    @Test
+    void obtenerResumen_DeberiaRecalcularAlVencerElTtl() {
+        dashboardService.obtenerResumen();
+        reloj.avanzar(Duration.ofSeconds(5));
+        dashboardService.obtenerResumen();
+
+        verify(piezaRepository, times(2)).calcularTotalesInventario(10);
+        verify(resumenDiarioRepository, times(2)).contarTodas();
+    }
+
+    @Test
+    void obtenerResumen_DeberiaDevolverCerosSinPiezas() {
+        when(piezaRepository.calcularTotalesInventario(10)).thenReturn(new TotalesInventarioDTO(0L, null, null));
+
+        DashboardDTO resumen = dashboardService.obtenerResumen();
+
+        assertEquals(0L, resumen.getPiezasStockBajo());
+        assertEquals(BigDecimal.ZERO, resumen.getValorInventario());
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant ahora = Instant.parse("2025-01-15T10:00:00Z");
+
+        void avanzar(Duration duracion) {
+            ahora = ahora.plus(duracion);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(java.time.ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return ahora;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.tup.examen.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DifusorEventosTest {
+
+    private EjecutorManual ejecutor;
+    private DifusorEventos difusor;
+
+    @BeforeEach
+    void setUp() {
+        ejecutor = new EjecutorManual();
+        difusor = new DifusorEventos(3, 2, ejecutor);
+    }
+
+    @Test
+    void publicar_DebeEntregarLosEventosEnOrdenACadaSuscriptor() {
+        CanalGrabador primero = new CanalGrabador();
+        CanalGrabador segundo = new CanalGrabador();
+        difusor.suscribir(null, primero);
+        difusor.suscribir(null, segundo);
+
+        difusor.publicar("STOCK_ACTUALIZADO", Map.of("piezaId", 1L));
+        difusor.publicar("FACTURA_CREADA", Map.of("id", 7L));
+        ejecutor.ejecutarPendientes();
+
+        assertEquals(List.of(1L, 2L), primero.ids());
+        assertEquals(List.of(1L, 2L), segundo.ids());
+        assertEquals("FACTURA_CREADA", primero.recibidos.get(1).tipo());
+    }
+
+    @Test
+    void suscribir_ConUltimoIdRecibido_DebeReenviarSoloLosEventosPosteriores() {
+        difusor = new DifusorEventos(3, 10, ejecutor);
+        difusor.publicar("A", Map.of());
+        difusor.publicar("B", Map.of());
+        difusor.publicar("C", Map.of());
+
+        CanalGrabador canal = new CanalGrabador();
+        difusor.suscribir(1L, canal);
+        difusor.publicar("D", Map.of());
+        ejecutor.ejecutarPendientes();
+
+        assertEquals(List.of(2L, 3L, 4L), canal.ids());
+    }
+
+    @Test
+    void suscribir_CuandoElHistorialYaNoCubreElHueco_DebePedirResincronizar() {
+        for (int i = 0; i < 5; i++) {
+            difusor.publicar("E" + i, Map.of());
+        }
+
+        CanalGrabador canal = new CanalGrabador();
+        difusor.suscribir(1L, canal);
+        ejecutor.ejecutarPendientes();
+
+        // El historial conserva 3 eventos (3, 4 y 5) y el buffer del cliente 2: quedan los más nuevos
+        assertSame(DifusorEventos.RESINCRONIZAR, canal.recibidos.get(0));
+        assertEquals(List.of(4L, 5L), canal.ids());
+        assertEquals(1L, difusor.obtenerEstadisticas().get("descartados"));
+    }
+
+    @Test
+    void suscribir_ConHuecoQueEntraEnElBuffer_DebeEnviarResincronizarPrimero() {
+        difusor = new DifusorEventos(3, 10, ejecutor);
+        for (int i = 0; i < 5; i++) {
+            difusor.publicar("E" + i, Map.of());
+        }
+
+        CanalGrabador canal = new CanalGrabador();
+        difusor.suscribir(1L, canal);
+        ejecutor.ejecutarPendientes();
+
+        assertSame(DifusorEventos.RESINCRONIZAR, canal.recibidos.get(0));
+        assertEquals(List.of(3L, 4L, 5L), canal.ids());
+    }
+
+    @Test
+    void suscribir_ConUnIdPosteriorAlUltimoPublicado_DebePedirResincronizar() {
+        // Un id que este servidor todavía no emitió viene de una ejecución anterior
+        difusor.publicar("A", Map.of());
+
+        CanalGrabador canal = new CanalGrabador();
+        difusor.suscribir(40L, canal);
+        difusor.publicar("B", Map.of());
+        ejecutor.ejecutarPendientes();
+
+        assertSame(DifusorEventos.RESINCRONIZAR, canal.recibidos.get(0));
+        assertEquals(List.of(2L), canal.ids());
+    }
+
+    @Test
+    void suscribir_TrasUnReinicio_DebePedirResincronizarAunqueHayaEventosNuevos() {
+        // La ejecución anterior llegó al id 40; la nueva arranca más arriba
+        difusor = new DifusorEventos(3, 10, ejecutor, 1000);
+        difusor.publicar("A", Map.of());
+        difusor.publicar("B", Map.of());
+
+        CanalGrabador canal = new CanalGrabador();
+        difusor.suscribir(40L, canal);
+        ejecutor.ejecutarPendientes();
+
+        assertSame(DifusorEventos.RESINCRONIZAR, canal.recibidos.get(0));
+        assertEquals(List.of(1001L, 1002L), canal.ids());
+    }
+
+    @Test
+    void publicar_ConClienteLento_DebeDescartarSusEventosMasViejosSinAfectarAlResto() {
+        CanalGrabador lento = new CanalGrabador();
+        difusor.suscribir(null, lento);
+
+        // Mientras el envío no corre el buffer (capacidad 2) se llena
+        difusor.publicar("A", Map.of());
+        difusor.publicar("B", Map.of());
+        difusor.publicar("C", Map.of());
+        difusor.publicar("D", Map.of());
+        ejecutor.ejecutarPendientes();
+
+        // Lo descartado se reemplaza por un aviso para que el cliente recargue el estado
+        assertSame(DifusorEventos.RESINCRONIZAR, lento.recibidos.get(0));
+        assertEquals(List.of(3L, 4L), lento.ids());
+        assertEquals(4L, difusor.obtenerEstadisticas().get("publicados"));
+        assertEquals(2L, difusor.obtenerEstadisticas().get("descartados"));
+        // Una sola tarea de envío por suscriptor aunque se publicaron varios eventos
+        assertEquals(1, ejecutor.ejecutadas);
+    }
+
+    @Test
+    void enviar_CuandoElCanalFalla_DebeQuitarAlSuscriptor() {
+        CanalGrabador caido = new CanalGrabador();
+        caido.fallar = true;
+        CanalGrabador sano = new CanalGrabador();
+        difusor.suscribir(null, caido);
+        difusor.suscribir(null, sano);
+
+        difusor.publicar("A", Map.of());
+        ejecutor.ejecutarPendientes();
+
+        assertTrue(caido.cerrado);
+        assertEquals(1, difusor.obtenerEstadisticas().get("suscriptores"));
+        assertEquals(List.of(1L), sano.ids());
+    }
+
+    @Test
+    void cancelar_DebeDejarDeEnviarEventos() {
+        CanalGrabador canal = new CanalGrabador();
+        DifusorEventos.Suscripcion suscripcion = difusor.suscribir(null, canal);
+
+        suscripcion.cancelar();
+        difusor.publicar("A", Map.of());
+        difusor.latido();
+        ejecutor.ejecutarPendientes();
+
+        assertTrue(canal.recibidos.isEmpty());
+        assertEquals(0, difusor.obtenerEstadisticas().get("suscriptores"));
+    }
+
+    @Test
+    void latido_NoDebeConsumirIdsNiQuedarEnElHistorial() {
+        CanalGrabador canal = new CanalGrabador();
+        difusor.suscribir(null, canal);
+
+        difusor.latido();
+        difusor.publicar("A", Map.of());
+        ejecutor.ejecutarPendientes();
+
+        assertSame(DifusorEventos.LATIDO, canal.recibidos.get(0));
+        assertEquals(1L, canal.recibidos.get(1).id());
+        assertEquals(1L, difusor.obtenerEstadisticas().get("ultimoId"));
+    }
+
+    private static class CanalGrabador implements DifusorEventos.Canal {
+
+        private final List<DifusorEventos.EventoCambio> recibidos = new ArrayList<>();
+        private boolean fallar;
+        private boolean cerrado;
+
+        @Override
+        public void enviar(DifusorEventos.EventoCambio evento) throws IOException {
+            if (fallar) {
+                throw new IOException("Conexión cerrada");
+            }
+            recibidos.add(evento);
+        }
+
+        @Override
+        public void cerrar() {
+            cerrado = true;
+        }
+
+        List<Long> ids() {
+            return recibidos.stream().map(DifusorEventos.EventoCambio::id).filter(id -> id != null).toList();
+        }
+    }
+
+    // Acumula las tareas de envío y las ejecuta en el hilo del test cuando se le pide
+    private static class EjecutorManual extends AbstractExecutorService {
+
+        private final List<Runnable> pendientes = new ArrayList<>();
+        private int ejecutadas;
+
+        void ejecutarPendientes() {
+            while (!pendientes.isEmpty()) {
+                pendientes.remove(0).run();
+                ejecutadas++;
+            }
+        }
+
+        @Override
+        public void execute(Runnable tarea) {
+            pendientes.add(tarea);
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return List.of();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+        }
+    }
+}
@@ -2,7 +2,9 @@ package com.tup.examen.service;
 
 import com.tup.examen.dto.FacturaDTO;
 import com.tup.examen.dto.ItemFacturaDTO;
+import com.tup.examen.model.EventoOutbox;
 import com.tup.examen.model.Factura;
+import com.tup.examen.model.MovimientoStock;
 import com.tup.examen.model.Pieza;
 import com.tup.examen.repository.FacturaRepository;
 import com.tup.examen.repository.PiezaRepository;
@@ -17,7 +19,9 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -33,6 +37,27 @@ class FacturaServiceTest {
     @Mock
     private PiezaRepository piezaRepository;
 
+    @Mock
+    private PiezaCache piezaCache;
+
+    @Mock
+    private IndiceFacetas indiceFacetas;
+
+    @Mock
+    private NumeradorFacturas numeradorFacturas;
+
+    @Mock
+    private LibroStock libroStock;
+
+    @Mock
+    private Outbox outbox;
+
+    @Mock
+    private ResumenesDiarios resumenesDiarios;
+
+    @Mock
+    private DifusorEventos difusorEventos;
+
     @InjectMocks
     private FacturaService facturaService;
 
@@ -88,9 +113,9 @@ class FacturaServiceTest {
     void crearFactura_DeberiaCrearFacturaExitosamente() {
         // TODO: Implementar test
         when(facturaRepository.existsByNumeroFactura("FAC-20241201-000001")).thenReturn(false);
-        when(piezaRepository.findById(1L)).thenReturn(Optional.of(pieza));
+        when(piezaRepository.cargarPorIds(anyCollection())).thenReturn(List.of(pieza));
         when(facturaRepository.save(any(Factura.class))).thenReturn(factura);
-        when(piezaRepository.save(any(Pieza.class))).thenReturn(pieza);
+        when(piezaRepository.descontarStockEnLote(any(), any(LocalDateTime.class))).thenReturn(List.of());
 
         FacturaDTO resultado = facturaService.crearFactura(facturaDTO);
 
@@ -98,66 +123,181 @@ class FacturaServiceTest {
         assertEquals("FAC-20241201-000001", resultado.getNumeroFactura());
         assertEquals("Rafa Rearte", resultado.getClienteNombre());
         verify(facturaRepository).existsByNumeroFactura("FAC-20241201-000001");
-        verify(piezaRepository).findById(1L);
+        verify(piezaRepository).cargarPorIds(anyCollection());
+        verify(piezaRepository, never()).findById(anyLong());
         verify(facturaRepository).save(any(Factura.class));
-        verify(piezaRepository).save(any(Pieza.class));
+        verify(piezaRepository).descontarStockEnLote(eq(new TreeMap<>(Map.of(1L, 2))), any(LocalDateTime.class));
+        verify(piezaRepository, never()).save(any(Pieza.class));
+        verify(outbox).registrar(EventoOutbox.TipoEvento.FACTURA_CREADA, factura.getId(), resultado);
+        verify(resumenesDiarios).registrarAlta(factura);
+        verify(piezaCache).invalidar(1L);
+    }
 
+    @Test
+    void crearFactura_DeberiaAgruparCantidadesDeLaMismaPieza() {
+        Pieza otra = new Pieza();
+        otra.setId(2L);
+        otra.setCodigo("BUJ002");
+        otra.setPrecio(new BigDecimal("10.00"));
+        otra.setStock(10);
+        facturaDTO.setItems(Arrays.asList(
+                new ItemFacturaDTO(null, 2L, null, null, 1, null, null, null),
+                itemDTO,
+                new ItemFacturaDTO(null, 1L, null, null, 3, null, null, null)));
+        when(facturaRepository.existsByNumeroFactura("FAC-20241201-000001")).thenReturn(false);
+        when(piezaRepository.cargarPorIds(anyCollection())).thenReturn(List.of(pieza, otra));
+        when(piezaRepository.descontarStockEnLote(any(), any(LocalDateTime.class))).thenReturn(List.of());
+        when(facturaRepository.save(any(Factura.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        FacturaDTO resultado = facturaService.crearFactura(facturaDTO);
+
+        assertEquals(3, resultado.getItems().size());
+        verify(piezaRepository).descontarStockEnLote(eq(new TreeMap<>(Map.of(1L, 5, 2L, 1))), any(LocalDateTime.class));
+        verify(libroStock).registrar(Map.of(1L, -5, 2L, -1), MovimientoStock.TipoMovimiento.VENTA, "FAC-20241201-000001");
+    }
+
+    @Test
+    void crearFactura_DeberiaAsignarNumeroSiNoSeInforma() {
+        facturaDTO.setNumeroFactura(null);
+        when(numeradorFacturas.siguiente()).thenReturn("FAC-20241201-000007");
+        when(facturaRepository.existsByNumeroFactura("FAC-20241201-000007")).thenReturn(false);
+        when(piezaRepository.cargarPorIds(anyCollection())).thenReturn(List.of(pieza));
+        when(piezaRepository.descontarStockEnLote(any(), any(LocalDateTime.class))).thenReturn(List.of());
+        when(facturaRepository.save(any(Factura.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        FacturaDTO resultado = facturaService.crearFactura(facturaDTO);
+
+        assertEquals("FAC-20241201-000007", resultado.getNumeroFactura());
+    }
+
+    @Test
+    void crearFactura_DeberiaLanzarExcepcionSiStockInsuficiente() {
+        pieza.setStock(1);
+        when(facturaRepository.existsByNumeroFactura("FAC-20241201-000001")).thenReturn(false);
+        when(piezaRepository.cargarPorIds(anyCollection())).thenReturn(List.of(pieza));
+
+        RuntimeException exception = assertThrows(RuntimeException.class,
+                () -> facturaService.crearFactura(facturaDTO));
+
+        assertTrue(exception.getMessage().contains("Stock insuficiente"));
+        verify(piezaRepository, never()).descontarStockEnLote(any(), any());
+        verify(facturaRepository, never()).save(any(Factura.class));
+        verify(piezaCache, never()).invalidar(anyLong());
+        verify(libroStock, never()).registrarAnulacion(anyLong());
+        verify(outbox, never()).registrar(any(), any(), any());
+    }
+
+    @Test
+    void crearFactura_DeberiaLanzarExcepcionSiElLoteRechazaUnaPieza() {
+        // Otra transacción descontó entre la lectura y el UPDATE condicional
+        when(facturaRepository.existsByNumeroFactura("FAC-20241201-000001")).thenReturn(false);
+        when(piezaRepository.cargarPorIds(anyCollection())).thenReturn(List.of(pieza));
+        when(piezaRepository.descontarStockEnLote(any(), any(LocalDateTime.class))).thenReturn(List.of(1L));
+
+        RuntimeException exception = assertThrows(RuntimeException.class,
+                () -> facturaService.crearFactura(facturaDTO));
+
+        assertTrue(exception.getMessage().contains("Stock insuficiente"));
+        verify(facturaRepository, never()).save(any(Factura.class));
+        verify(piezaCache, never()).invalidar(anyLong());
+    }
+
+    @Test
+    void crearFactura_ConDatosInvalidos_DeberiaRechazarSinTocarLaBase() {
+        facturaDTO.setNumeroFactura(null);
+        facturaDTO.setClienteNombre(" ");
+
+        RuntimeException exception = assertThrows(RuntimeException.class,
+                () -> facturaService.crearFactura(facturaDTO));
+
+        assertEquals("El nombre del cliente es obligatorio", exception.getMessage());
+        verifyNoInteractions(numeradorFacturas, facturaRepository, piezaRepository, outbox);
     }
 
     @Test
     void crearFactura_DeberiaLanzarExcepcionSiPiezaNoExiste() {
         // TODO: Implementar test
         when(facturaRepository.existsByNumeroFactura("FAC-20241201-000001")).thenReturn(false);
-        when(piezaRepository.findById(1L)).thenReturn(Optional.empty());
+        when(piezaRepository.cargarPorIds(anyCollection())).thenReturn(List.of());
 
         RuntimeException exception = assertThrows(RuntimeException.class,
                 () -> facturaService.crearFactura(facturaDTO));
 
         assertFalse(exception.getMessage().contains("No existe la pieza"));
         verify(facturaRepository).existsByNumeroFactura("FAC-20241201-000001");
-        verify(piezaRepository).findById(1L);
+        verify(piezaRepository).cargarPorIds(anyCollection());
         verify(facturaRepository, never()).save(any(Factura.class));
     }
 
     @Test
     void anularFactura_DeberiaAnularFacturaExitosamente() {
         // TODO: Implementar test
-        when(facturaRepository.findById(1L)).thenReturn(Optional.of(factura));
-        when(facturaRepository.save(any(Factura.class))).thenReturn(factura);
+        when(facturaRepository.marcarAnulada(eq(1L), eq(Factura.EstadoFactura.ANULADA), anyCollection())).thenReturn(1);
+        FacturaRepository.CantidadPorPieza linea = mock(FacturaRepository.CantidadPorPieza.class);
+        when(linea.getPiezaId()).thenReturn(1L);
+        when(linea.getCantidad()).thenReturn(2L);
+        when(facturaRepository.sumarCantidadesPorPieza(1L)).thenReturn(List.of(linea));
 
         boolean resultado = facturaService.anularFactura(1L);
 
         assertTrue(resultado);
-        verify(facturaRepository).findById(1L);
-        verify(facturaRepository).save(any(Factura.class));
+        verify(piezaRepository).reponerStockEnLote(eq(new TreeMap<>(Map.of(1L, 2))), any(LocalDateTime.class));
+        verify(piezaCache).invalidar(1L);
+        verify(libroStock).registrarAnulacion(1L);
+        verify(resumenesDiarios).registrarCambioEstado(1L, Factura.EstadoFactura.PENDIENTE, Factura.EstadoFactura.ANULADA);
+        verify(outbox).registrar(EventoOutbox.TipoEvento.FACTURA_ANULADA, 1L,
+                Map.of("id", 1L, "items", List.of(Map.of("piezaId", 1L, "cantidad", 2L))));
+        verify(difusorEventos).publicarAlConfirmar("STOCK_ACTUALIZADO", Map.of("piezaId", 1L, "variacion", 2L));
+        verify(facturaRepository, never()).findById(anyLong());
+        verify(piezaRepository, never()).save(any(Pieza.class));
     }
 
     @Test
     void anularFactura_DeberiaLanzarExcepcionSiFacturaYaPagada() {
         // TODO: Implementar test
-        factura.setEstado(Factura.EstadoFactura.PAGADA);
-        when(facturaRepository.findById(1L)).thenReturn(Optional.of(factura));
+        when(facturaRepository.marcarAnulada(eq(1L), eq(Factura.EstadoFactura.ANULADA), anyCollection())).thenReturn(0);
+        when(facturaRepository.buscarEstado(1L)).thenReturn(Optional.of(Factura.EstadoFactura.PAGADA));
 
         RuntimeException exception = assertThrows(RuntimeException.class,
                 () -> facturaService.anularFactura(1L));
 
         assertTrue(exception.getMessage().contains("No se puede anular una factura ya pagada"));
-        verify(facturaRepository).findById(1L);
+        verify(facturaRepository).buscarEstado(1L);
         verify(facturaRepository, never()).save(any(Factura.class));
+        verify(piezaRepository, never()).reponerStockEnLote(any(), any());
+
+    }
+
+    @Test
+    void anularFactura_NoDeberiaRestaurarStockSiYaEstabaAnulada() {
+        when(facturaRepository.marcarAnulada(eq(1L), eq(Factura.EstadoFactura.ANULADA), anyCollection())).thenReturn(0);
+        when(facturaRepository.buscarEstado(1L)).thenReturn(Optional.of(Factura.EstadoFactura.ANULADA));
+
+        assertTrue(facturaService.anularFactura(1L));
+        verify(piezaRepository, never()).reponerStockEnLote(any(), any());
+        verify(piezaCache, never()).invalidar(anyLong());
+    }
+
+    @Test
+    void anularFactura_DeberiaRetornarFalseSiNoExiste() {
+        when(facturaRepository.marcarAnulada(eq(99L), eq(Factura.EstadoFactura.ANULADA), anyCollection())).thenReturn(0);
+        when(facturaRepository.buscarEstado(99L)).thenReturn(Optional.empty());
 
+        assertFalse(facturaService.anularFactura(99L));
     }
 
     @Test
     void generarNumeroFactura_DeberiaGenerarNumeroUnico() {
         // TODO: Implementar test
-        when(facturaRepository.count()).thenReturn(5L);
+        when(numeradorFacturas.siguiente()).thenReturn("FAC-20241201-000006");
 
         String numero = facturaService.generarNumeroFactura();
 
         assertNotNull(numero);
         assertTrue(numero.startsWith("FAC-"));
-        assertTrue(numero.contains("0006")); // count + 1
-        verify(facturaRepository).count();
+        assertTrue(numero.contains("0006"));
+        verify(numeradorFacturas).siguiente();
+        verify(facturaRepository, never()).count();
     }
 
    
@@ -0,0 +1,95 @@
+package com.tup.examen.service;
+
+import com.tup.examen.model.Pieza;
+import com.tup.examen.repository.PiezaRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+class IndiceFacetasTest {
+
+    @Mock
+    private PiezaRepository piezaRepository;
+
+    @InjectMocks
+    private IndiceFacetas indiceFacetas;
+
+    @BeforeEach
+    void setUp() {
+        indiceFacetas.indexar(pieza(1L, "Bosch", "Motor", "Universal", "25.50", 50));
+        indiceFacetas.indexar(pieza(2L, "NGK", "Motor", "Iridium", "15.75", 100));
+        indiceFacetas.indexar(pieza(3L, "Brembo", "Frenos", "Sport", "45.00", 3));
+        indiceFacetas.indexar(pieza(4L, "Brembo", "Frenos", "Ventilated", "85.25", 20));
+    }
+
+    @Test
+    void buscar_SinFiltros_DebeRetornarTodasLasPiezasYSusConteos() {
+        IndiceFacetas.Resultado resultado = indiceFacetas.buscar(new HashMap<>(), null, null, null, null, 50);
+
+        assertEquals(4, resultado.getTotal());
+        assertEquals(List.of(1L, 2L, 3L, 4L), resultado.getIds());
+        assertEquals(2L, resultado.getFacetas().get(IndiceFacetas.CATEGORIA).get("Motor"));
+        assertEquals(2L, resultado.getFacetas().get(IndiceFacetas.MARCA).get("Brembo"));
+    }
+
+    @Test
+    void buscar_ConVariosFiltros_DebeIntersectarLosBitmaps() {
+        Map<String, List<String>> filtros = new HashMap<>();
+        filtros.put(IndiceFacetas.CATEGORIA, List.of("frenos"));
+
+        IndiceFacetas.Resultado resultado = indiceFacetas.buscar(filtros, new BigDecimal("40"), null, 10, null, 50);
+
+        assertEquals(List.of(4L), resultado.getIds());
+        assertEquals(Map.of("Ventilated", 1L), resultado.getFacetas().get(IndiceFacetas.MODELO));
+    }
+
+    @Test
+    void buscar_LosConteosDeUnaFacetaDebenIgnorarSuPropioFiltro() {
+        Map<String, List<String>> filtros = new HashMap<>();
+        filtros.put(IndiceFacetas.MARCA, List.of("Bosch"));
+
+        IndiceFacetas.Resultado resultado = indiceFacetas.buscar(filtros, null, null, null, null, 50);
+
+        assertEquals(List.of(1L), resultado.getIds());
+        assertEquals(3, resultado.getFacetas().get(IndiceFacetas.MARCA).size());
+        assertEquals(Map.of("Motor", 1L), resultado.getFacetas().get(IndiceFacetas.CATEGORIA));
+    }
+
+    @Test
+    void indexarYQuitar_DebenMantenerLosBitmapsAlDia() {
+        indiceFacetas.indexar(pieza(1L, "Bosch", "Frenos", "Universal", "25.50", 50));
+        indiceFacetas.quitar(4L);
+        indiceFacetas.actualizarStock(3L, 30);
+
+        Map<String, List<String>> filtros = new HashMap<>();
+        filtros.put(IndiceFacetas.CATEGORIA, List.of("Frenos"));
+        IndiceFacetas.Resultado resultado = indiceFacetas.buscar(filtros, null, null, 25, null, 1);
+
+        assertEquals(2, resultado.getTotal());
+        assertEquals(List.of(1L), resultado.getIds());
+        assertFalse(resultado.getFacetas().get(IndiceFacetas.MODELO).containsKey("Ventilated"));
+    }
+
+    private static Pieza pieza(Long id, String marca, String categoria, String modelo, String precio, int stock) {
+        Pieza pieza = new Pieza();
+        pieza.setId(id);
+        pieza.setCodigo("P" + id);
+        pieza.setMarca(marca);
+        pieza.setCategoria(categoria);
+        pieza.setModelo(modelo);
+        pieza.setPrecio(new BigDecimal(precio));
+        pieza.setStock(stock);
+        return pieza;
+    }
+}
@@ -0,0 +1,92 @@
+package com.tup.examen.service;
+
+import com.tup.examen.model.Pieza;
+import com.tup.examen.repository.PiezaRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class IndiceTrigramasTest {
+
+    @Mock
+    private PiezaRepository piezaRepository;
+
+    @InjectMocks
+    private IndiceTrigramas indiceTrigramas;
+
+    @BeforeEach
+    void setUp() {
+        indiceTrigramas.indexar(pieza(1L, "Filtro de Aceite", "Filtro de aceite de motor", "FIL001"));
+        indiceTrigramas.indexar(pieza(2L, "Bujía de Encendido", "Bujía de encendido de iridio", "BUJ002"));
+        indiceTrigramas.indexar(pieza(3L, "Aceite de Transmisión", "Aceite de transmisión automática", "ACE008"));
+    }
+
+    @Test
+    void buscar_DebeEncontrarSubcadenasEnNombreDescripcionYCodigo() {
+        assertEquals(List.of(1L), indiceTrigramas.buscar("FIL001"));
+        assertEquals(List.of(1L), indiceTrigramas.buscar("aceite de motor"));
+        assertEquals(List.of(1L, 3L), indiceTrigramas.buscar("ceite"));
+        assertEquals(List.of(2L), indiceTrigramas.buscar("iridio"));
+    }
+
+    @Test
+    void buscar_DebeRespetarMayusculasComoLike() {
+        assertEquals(List.of(3L), indiceTrigramas.buscar("Aceite de"));
+        assertTrue(indiceTrigramas.buscar("FILTRO").isEmpty());
+    }
+
+    @Test
+    void buscar_NoDebeDevolverFalsosPositivosDeLaInterseccion() {
+        // Todos los trigramas de "de Aceite de" aparecen en la pieza 3, pero no la secuencia completa
+        assertEquals(List.of(1L), indiceTrigramas.buscar("de Aceite"));
+    }
+
+    @Test
+    void buscar_ConTerminosCortos_DebeRecorrerElTextoIndexado() {
+        assertEquals(List.of(2L), indiceTrigramas.buscar("J0"));
+        assertEquals(3, indiceTrigramas.buscar("").size());
+    }
+
+    @Test
+    void indexar_CuandoLaPiezaCambia_DebeReemplazarSusTrigramas() {
+        indiceTrigramas.indexar(pieza(1L, "Filtro de Aire", "Filtro de aire", "FIL001"));
+
+        assertEquals(List.of(3L), indiceTrigramas.buscar("ceite"));
+        assertEquals(List.of(1L), indiceTrigramas.buscar("de Aire"));
+    }
+
+    @Test
+    void quitar_DebeEliminarLaPiezaDelIndice() {
+        indiceTrigramas.quitar(2L);
+
+        assertTrue(indiceTrigramas.buscar("Bujía").isEmpty());
+        assertEquals(2, indiceTrigramas.cantidadIndexada());
+    }
+
+    @Test
+    void buscar_ConPendientes_DebeResincronizarDesdeLaBase() {
+        when(piezaRepository.findAllById(List.of(2L))).thenReturn(List.of());
+        indiceTrigramas.marcarPendiente(2L);
+
+        assertTrue(indiceTrigramas.buscar("Bujía").isEmpty());
+        verify(piezaRepository).findAllById(List.of(2L));
+    }
+
+    private static Pieza pieza(Long id, String nombre, String descripcion, String codigo) {
+        Pieza pieza = new Pieza();
+        pieza.setId(id);
+        pieza.setNombre(nombre);
+        pieza.setDescripcion(descripcion);
+        pieza.setCodigo(codigo);
+        return pieza;
+    }
+}
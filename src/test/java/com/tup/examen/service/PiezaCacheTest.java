@@ -0,0 +1,127 @@
+package com.tup.examen.service;
+
+import com.tup.examen.dto.PiezaDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PiezaCacheTest {
+
+    private MutableClock reloj;
+    private PiezaCache piezaCache;
+
+    @BeforeEach
+    void setUp() {
+        reloj = new MutableClock();
+        piezaCache = new PiezaCache(2, Duration.ofSeconds(60), reloj);
+    }
+
+    @Test
+    void buscarPorIdYCodigo_DespuesDeGuardar_DebeRetornarAcierto() {
+        piezaCache.guardar(pieza(1L, "FIL001"), piezaCache.generacionActual());
+
+        assertTrue(piezaCache.buscarPorId(1L).isPresent());
+        assertEquals(1L, piezaCache.buscarPorCodigo("FIL001").get().getId());
+        assertFalse(piezaCache.buscarPorId(2L).isPresent());
+
+        Map<String, Object> estadisticas = piezaCache.obtenerEstadisticas();
+        assertEquals(2L, estadisticas.get("aciertos"));
+        assertEquals(1L, estadisticas.get("fallos"));
+    }
+
+    @Test
+    void guardar_CuandoSeSuperaElTamanoMaximo_DebeDesalojarLaMenosUsada() {
+        piezaCache.guardar(pieza(1L, "FIL001"), piezaCache.generacionActual());
+        piezaCache.guardar(pieza(2L, "BUJ002"), piezaCache.generacionActual());
+        piezaCache.buscarPorId(1L);
+        piezaCache.guardar(pieza(3L, "PAST003"), piezaCache.generacionActual());
+
+        assertTrue(piezaCache.buscarPorId(1L).isPresent());
+        assertFalse(piezaCache.buscarPorId(2L).isPresent());
+        assertFalse(piezaCache.buscarPorCodigo("BUJ002").isPresent());
+        assertEquals(1L, piezaCache.obtenerEstadisticas().get("desalojos"));
+    }
+
+    @Test
+    void buscarPorId_CuandoVenceElTtl_DebeRetornarFallo() {
+        piezaCache.guardar(pieza(1L, "FIL001"), piezaCache.generacionActual());
+
+        reloj.avanzar(Duration.ofSeconds(61));
+
+        assertFalse(piezaCache.buscarPorId(1L).isPresent());
+        assertEquals(1L, piezaCache.obtenerEstadisticas().get("desalojos"));
+    }
+
+    @Test
+    void invalidar_DebeQuitarLaPiezaPorIdYPorCodigo() {
+        piezaCache.guardar(pieza(1L, "FIL001"), piezaCache.generacionActual());
+
+        piezaCache.invalidar(1L);
+
+        assertFalse(piezaCache.buscarPorId(1L).isPresent());
+        assertFalse(piezaCache.buscarPorCodigo("FIL001").isPresent());
+        assertEquals(1L, piezaCache.obtenerEstadisticas().get("invalidaciones"));
+    }
+
+    @Test
+    void guardar_CuandoHuboUnaInvalidacionDuranteLaLectura_NoDebeCachear() {
+        long generacion = piezaCache.generacionActual();
+        piezaCache.invalidar(1L);
+
+        piezaCache.guardar(pieza(1L, "FIL001"), generacion);
+
+        assertFalse(piezaCache.buscarPorId(1L).isPresent());
+    }
+
+    @Test
+    void buscarPorId_DebeRetornarUnaCopiaQueNoAltereLaCache() {
+        piezaCache.guardar(pieza(1L, "FIL001"), piezaCache.generacionActual());
+
+        Optional<PiezaDTO> leida = piezaCache.buscarPorId(1L);
+        leida.get().setStock(0);
+
+        assertEquals(10, piezaCache.buscarPorId(1L).get().getStock());
+    }
+
+    private static PiezaDTO pieza(Long id, String codigo) {
+        PiezaDTO pieza = new PiezaDTO();
+        pieza.setId(id);
+        pieza.setCodigo(codigo);
+        pieza.setNombre("Pieza " + codigo);
+        pieza.setPrecio(new BigDecimal("10.00"));
+        pieza.setStock(10);
+        return pieza;
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant ahora = Instant.parse("2024-12-01T10:00:00Z");
+
+        void avanzar(Duration duracion) {
+            ahora = ahora.plus(duracion);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(java.time.ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return ahora;
+        }
+    }
+}
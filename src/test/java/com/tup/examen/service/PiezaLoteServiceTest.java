@@ -0,0 +1,85 @@
+package com.tup.examen.service;
+
+import com.tup.examen.dto.ResultadoCargaDTO;
+import com.tup.examen.model.Pieza;
+import com.tup.examen.repository.PiezaRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PiezaLoteServiceTest {
+
+    @Mock
+    private PiezaRepository piezaRepository;
+
+    @Mock
+    private PiezaCache piezaCache;
+
+    @Mock
+    private LibroStock libroStock;
+
+    @Mock
+    private Outbox outbox;
+
+    @Mock
+    private DifusorEventos difusorEventos;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Mock
+    private EntityManager entityManager;
+
+    @InjectMocks
+    private PiezaLoteService piezaLoteService;
+
+    @Test
+    void importarCsv_DebePublicarUnEventoPorBloqueConfirmado() {
+        Pieza existente = new Pieza();
+        existente.setId(1L);
+        existente.setCodigo("P1");
+        existente.setPrecio(new BigDecimal("9.00"));
+        existente.setStock(50);
+        when(piezaRepository.buscarIdsPorCodigos(any())).thenReturn(List.of(1L));
+        when(piezaRepository.bloquearPorIds(List.of(1L))).thenReturn(List.of(existente));
+        when(transactionTemplate.execute(any()))
+                .thenAnswer(invocation -> invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        String csv = "codigo,nombre,precio,stock\nP1,Uno,10.00,60\nP2,Dos,5.00,3\n";
+
+        ResultadoCargaDTO resultado = piezaLoteService.importarCsv(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), ',');
+
+        assertEquals(1, resultado.getCreadas());
+        assertEquals(1, resultado.getActualizadas());
+        verify(difusorEventos).publicarAlConfirmar(PiezaLoteService.CATALOGO_IMPORTADO,
+                Map.of("creadas", 1, "actualizadas", 1));
+    }
+
+    @Test
+    void importarCsv_CuandoElBloqueFalla_NoDebePublicar() {
+        when(transactionTemplate.execute(any())).thenThrow(new RuntimeException("Base no disponible"));
+        String csv = "codigo,nombre,precio,stock\nP1,Uno,10.00,60\n";
+
+        ResultadoCargaDTO resultado = piezaLoteService.importarCsv(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), ',');
+
+        assertEquals(1, resultado.getRechazadas());
+        verifyNoInteractions(difusorEventos);
+    }
+}
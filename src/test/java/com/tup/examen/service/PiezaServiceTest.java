@@ -1,7 +1,11 @@
 package com.tup.examen.service;
 
+import com.tup.examen.dto.PaginaDTO;
 import com.tup.examen.dto.PiezaDTO;
+import com.tup.examen.model.EventoOutbox;
+import com.tup.examen.model.MovimientoStock;
 import com.tup.examen.model.Pieza;
+import com.tup.examen.repository.PiezaEliminadaRepository;
 import com.tup.examen.repository.PiezaRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -9,6 +13,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
@@ -25,6 +30,27 @@ class PiezaServiceTest {
     @Mock
     private PiezaRepository piezaRepository;
 
+    @Mock
+    private PiezaCache piezaCache;
+
+    @Mock
+    private IndiceTrigramas indiceTrigramas;
+
+    @Mock
+    private IndiceFacetas indiceFacetas;
+
+    @Mock
+    private LibroStock libroStock;
+
+    @Mock
+    private DifusorEventos difusorEventos;
+
+    @Mock
+    private PiezaEliminadaRepository piezaEliminadaRepository;
+
+    @Mock
+    private Outbox outbox;
+
     @InjectMocks
     private PiezaService piezaService;
 
@@ -60,6 +86,20 @@ class PiezaServiceTest {
         verify(piezaRepository).findById(1L);
     }
 
+    @Test
+    void obtenerPiezaPorId_CuandoEstaEnCache_NoDebeConsultarRepositorio() {
+        PiezaDTO cacheada = new PiezaDTO();
+        cacheada.setId(1L);
+        cacheada.setCodigo("TEST001");
+        when(piezaCache.buscarPorId(1L)).thenReturn(Optional.of(cacheada));
+
+        Optional<PiezaDTO> resultado = piezaService.obtenerPiezaPorId(1L);
+
+        assertTrue(resultado.isPresent());
+        assertEquals("TEST001", resultado.get().getCodigo());
+        verify(piezaRepository, never()).findById(any());
+    }
+
     @Test
     void obtenerPiezaPorCodigo_CuandoExiste_DebeRetornarPieza() {
         // TODO: Implementar test
@@ -76,39 +116,81 @@ class PiezaServiceTest {
     @Test
     void buscarPorNombre_DebeRetornarPiezasCoincidentes() {
         // TODO: Implementar test
-        when(piezaRepository.findByNombreContainingIgnoreCase("filtro"))
-                .thenReturn(Arrays.asList(pieza));
+        piezaDTO.setId(1L);
+        when(piezaRepository.buscarDTOsPorNombre("filtro"))
+                .thenReturn(Arrays.asList(piezaDTO));
 
         List<PiezaDTO> resultado = piezaService.buscarPorNombre("filtro");
 
         assertEquals(1, resultado.size());
         assertEquals("Filtro Test", resultado.get(0).getNombre());
-        verify(piezaRepository).findByNombreContainingIgnoreCase("filtro");
+        verify(piezaRepository).buscarDTOsPorNombre("filtro");
+        verify(piezaRepository, never()).findByNombreContainingIgnoreCase(any());
+    }
+
+    @Test
+    void buscarPorTermino_DebeUsarElIndiceYCargarSoloLasCoincidencias() {
+        when(indiceTrigramas.buscar("Filtro")).thenReturn(List.of(1L));
+        when(piezaRepository.listarDTOsPorIds(List.of(1L))).thenReturn(List.of(piezaDTO));
+
+        List<PiezaDTO> resultado = piezaService.buscarPorTermino("Filtro");
+
+        assertEquals(1, resultado.size());
+        assertEquals("TEST001", resultado.get(0).getCodigo());
+        verify(piezaRepository, never()).buscarPorTermino(any());
     }
 
     @Test
     void buscarPorCategoria_DebeRetornarPiezasDeLaCategoria() {
         // TODO: Implementar test
-        when(piezaRepository.findByCategoriaContainingIgnoreCase("motor"))
-                .thenReturn(Arrays.asList(pieza));
+        when(piezaRepository.buscarDTOsPorCategoria("motor"))
+                .thenReturn(Arrays.asList(piezaDTO));
 
         List<PiezaDTO> resultado = piezaService.buscarPorCategoria("motor");
 
         assertEquals(1, resultado.size());
         assertEquals("Motor", resultado.get(0).getCategoria());
-        verify(piezaRepository).findByCategoriaContainingIgnoreCase("motor");
+        verify(piezaRepository).buscarDTOsPorCategoria("motor");
     }
 
    
     @Test
     void actualizarPieza_CuandoNoExiste_DebeRetornarVacio() {
        // TODO: Implementar test
-        when(piezaRepository.existsById(1L)).thenReturn(false);
+        when(piezaRepository.bloquearPorId(1L)).thenReturn(Optional.empty());
 
         Optional<PiezaDTO> resultado = piezaService.actualizarPieza(1L, piezaDTO);
 
         assertFalse(resultado.isPresent());
-        verify(piezaRepository).existsById(1L);
+        verify(piezaRepository).bloquearPorId(1L);
+        verify(piezaRepository, never()).save(any());
+    }
+
+    @Test
+    void actualizarPieza_DebeRegistrarElAjusteSobreElStockBloqueado() {
+        when(piezaRepository.bloquearPorId(1L)).thenReturn(Optional.of(pieza));
+        when(piezaRepository.save(any(Pieza.class))).thenAnswer(inv -> inv.getArgument(0));
+        piezaDTO.setStock(80);
+
+        Optional<PiezaDTO> resultado = piezaService.actualizarPieza(1L, piezaDTO);
+
+        assertTrue(resultado.isPresent());
+        verify(libroStock).registrar(1L, 30, MovimientoStock.TipoMovimiento.AJUSTE, "TEST001");
+        verify(outbox).registrar(EventoOutbox.TipoEvento.STOCK_AJUSTADO, 1L,
+                PiezaService.eventoAjuste(1L, 30, 80, "TEST001"));
+    }
+
+    @Test
+    void actualizarStock_DebeRegistrarElAjusteSobreElStockBloqueado() {
+        when(piezaRepository.bloquearPorId(1L)).thenReturn(Optional.of(pieza));
+
+        assertTrue(piezaService.actualizarStock(1L, 45));
+
+        assertEquals(45, pieza.getStock());
+        verify(libroStock).registrar(1L, -5, MovimientoStock.TipoMovimiento.AJUSTE, "TEST001");
+        verify(outbox).registrar(EventoOutbox.TipoEvento.STOCK_AJUSTADO, 1L,
+                PiezaService.eventoAjuste(1L, -5, 45, "TEST001"));
+        verify(piezaRepository, never()).findById(any());
     }
 
     @Test
@@ -121,6 +203,39 @@ class PiezaServiceTest {
         assertTrue(resultado);
         verify(piezaRepository).existsById(1L);
         verify(piezaRepository).deleteById(1L);
+        verify(piezaEliminadaRepository).save(argThat(marca -> marca.getPiezaId().equals(1L)
+                && marca.getFechaEliminacion() != null));
+        verify(piezaCache).invalidar(1L);
+    }
+
+    @Test
+    void obtenerPaginaDePiezas_CuandoHayMasResultados_DebeRetornarCursorSiguiente() {
+        piezaDTO.setId(1L);
+        PiezaDTO piezaDTO2 = new PiezaDTO();
+        piezaDTO2.setId(2L);
+        piezaDTO2.setCodigo("TEST002");
+        when(piezaRepository.listarDTOsDespuesDe(0L, Limit.of(2)))
+                .thenReturn(Arrays.asList(piezaDTO, piezaDTO2));
+
+        PaginaDTO<PiezaDTO> resultado = piezaService.obtenerPaginaDePiezas(null, 1);
+
+        assertEquals(1, resultado.getItems().size());
+        assertTrue(resultado.isHayMas());
+        assertEquals("1", resultado.getSiguienteCursor());
+        assertEquals(1, resultado.getLimite());
+    }
+
+    @Test
+    void obtenerPaginaDePiezas_CuandoEsLaUltimaPagina_NoDebeRetornarCursor() {
+        when(piezaRepository.listarDTOsDespuesDe(1L, Limit.of(PiezaService.LIMITE_PAGINA_MAXIMO + 1)))
+                .thenReturn(Arrays.asList(piezaDTO));
+
+        PaginaDTO<PiezaDTO> resultado = piezaService.obtenerPaginaDePiezas(1L, 10_000);
+
+        assertEquals(1, resultado.getItems().size());
+        assertFalse(resultado.isHayMas());
+        assertNull(resultado.getSiguienteCursor());
+        assertEquals(PiezaService.LIMITE_PAGINA_MAXIMO, resultado.getLimite());
     }
 
 }
@@ -0,0 +1,193 @@
+package com.tup.examen.service;
+
+import com.tup.examen.dto.FacturaDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RegistroIdempotenciaTest {
+
+    private MutableClock reloj;
+    private RegistroIdempotencia registro;
+
+    @BeforeEach
+    void setUp() {
+        reloj = new MutableClock();
+        registro = new RegistroIdempotencia(2, Duration.ofSeconds(60), Duration.ofSeconds(5), reloj);
+    }
+
+    @Test
+    void ejecutar_ConLaMismaClave_DebeDevolverElResultadoSinRepetirLaOperacion() {
+        AtomicInteger ejecuciones = new AtomicInteger();
+        FacturaDTO solicitud = solicitud("Juan");
+
+        RegistroIdempotencia.Resultado primero = registro.ejecutar("clave-1", solicitud,
+                () -> creada(ejecuciones.incrementAndGet()));
+        RegistroIdempotencia.Resultado repetido = registro.ejecutar("clave-1", solicitud("Juan"),
+                () -> creada(ejecuciones.incrementAndGet()));
+
+        assertEquals(1, ejecuciones.get());
+        assertFalse(primero.repetida());
+        assertTrue(repetido.repetida());
+        assertEquals(primero.factura().getId(), repetido.factura().getId());
+    }
+
+    @Test
+    void ejecutar_ConLaMismaClaveYOtraSolicitud_DebeLanzarConflicto() {
+        registro.ejecutar("clave-1", solicitud("Juan"), () -> creada(1));
+
+        assertThrows(RegistroIdempotencia.ConflictoIdempotenciaException.class,
+                () -> registro.ejecutar("clave-1", solicitud("Pedro"), () -> creada(2)));
+    }
+
+    @Test
+    void ejecutar_ConSolicitudesDeIgualHashCode_DebeLanzarConflicto() {
+        // "Aa" y "BB" tienen el mismo hashCode, y por lo tanto también las dos solicitudes
+        assertEquals(solicitud("Aa").hashCode(), solicitud("BB").hashCode());
+        registro.ejecutar("clave-1", solicitud("Aa"), () -> creada(1));
+
+        assertThrows(RegistroIdempotencia.ConflictoIdempotenciaException.class,
+                () -> registro.ejecutar("clave-1", solicitud("BB"), () -> creada(2)));
+    }
+
+    @Test
+    void ejecutar_CuandoLaOperacionFalla_NoDebeRecordarElError() {
+        FacturaDTO solicitud = solicitud("Juan");
+
+        assertThrows(RuntimeException.class, () -> registro.ejecutar("clave-1", solicitud, () -> {
+            throw new RuntimeException("Stock insuficiente");
+        }));
+        RegistroIdempotencia.Resultado reintento = registro.ejecutar("clave-1", solicitud, () -> creada(7));
+
+        assertFalse(reintento.repetida());
+        assertEquals(7L, reintento.factura().getId());
+    }
+
+    @Test
+    void ejecutar_CuandoVenceElTtlOSeSuperaElTamano_DebeOlvidarLaClave() {
+        FacturaDTO solicitud = solicitud("Juan");
+        registro.ejecutar("clave-1", solicitud, () -> creada(1));
+
+        reloj.avanzar(Duration.ofSeconds(61));
+        RegistroIdempotencia.Resultado vencido = registro.ejecutar("clave-1", solicitud, () -> creada(2));
+        registro.ejecutar("clave-2", solicitud, () -> creada(3));
+        registro.ejecutar("clave-3", solicitud, () -> creada(4));
+
+        assertFalse(vencido.repetida());
+        assertEquals(2, registro.tamano());
+    }
+
+    @Test
+    void ejecutar_ConSolicitudesConcurrentes_DebeEsperarALaPrimera() throws Exception {
+        AtomicInteger ejecuciones = new AtomicInteger();
+        CountDownLatch enCurso = new CountDownLatch(1);
+        CountDownLatch liberar = new CountDownLatch(1);
+        FacturaDTO solicitud = solicitud("Juan");
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        Future<RegistroIdempotencia.Resultado> primera = executor.submit(() -> registro.ejecutar("clave-1", solicitud, () -> {
+            ejecuciones.incrementAndGet();
+            enCurso.countDown();
+            try {
+                liberar.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return creada(1);
+        }));
+        assertTrue(enCurso.await(5, TimeUnit.SECONDS));
+        Future<RegistroIdempotencia.Resultado> duplicada = executor.submit(() -> registro.ejecutar("clave-1", solicitud,
+                () -> creada(ejecuciones.incrementAndGet())));
+        liberar.countDown();
+
+        assertFalse(primera.get(5, TimeUnit.SECONDS).repetida());
+        assertTrue(duplicada.get(5, TimeUnit.SECONDS).repetida());
+        assertEquals(1, ejecuciones.get());
+        executor.shutdown();
+    }
+
+    @Test
+    void ejecutar_AlSuperarElTamano_NoDebeDesalojarSolicitudesEnCurso() throws Exception {
+        AtomicInteger ejecuciones = new AtomicInteger();
+        CountDownLatch enCurso = new CountDownLatch(1);
+        CountDownLatch liberar = new CountDownLatch(1);
+        FacturaDTO solicitud = solicitud("Juan");
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        Future<RegistroIdempotencia.Resultado> primera = executor.submit(() -> registro.ejecutar("clave-1", solicitud, () -> {
+            ejecuciones.incrementAndGet();
+            enCurso.countDown();
+            try {
+                liberar.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return creada(1);
+        }));
+        assertTrue(enCurso.await(5, TimeUnit.SECONDS));
+        // Con capacidad 2 se desaloja clave-2, la más vieja terminada, y clave-1 sigue registrada
+        registro.ejecutar("clave-2", solicitud, () -> creada(2));
+        registro.ejecutar("clave-3", solicitud, () -> creada(3));
+        Future<RegistroIdempotencia.Resultado> duplicada = executor.submit(() -> registro.ejecutar("clave-1", solicitud,
+                () -> creada(ejecuciones.incrementAndGet())));
+        liberar.countDown();
+
+        assertEquals(2, registro.tamano());
+        assertTrue(duplicada.get(5, TimeUnit.SECONDS).repetida());
+        assertEquals(1L, primera.get(5, TimeUnit.SECONDS).factura().getId());
+        assertEquals(1, ejecuciones.get());
+        executor.shutdown();
+    }
+
+    @Test
+    void ejecutar_ConClaveInvalida_DebeLanzarExcepcion() {
+        assertThrows(IllegalArgumentException.class, () -> registro.ejecutar(" ", solicitud("Juan"), () -> creada(1)));
+    }
+
+    private static FacturaDTO solicitud(String cliente) {
+        FacturaDTO factura = new FacturaDTO();
+        factura.setClienteNombre(cliente);
+        return factura;
+    }
+
+    private static FacturaDTO creada(long id) {
+        FacturaDTO factura = new FacturaDTO();
+        factura.setId(id);
+        return factura;
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant ahora = Instant.parse("2024-12-01T10:00:00Z");
+
+        void avanzar(Duration duracion) {
+            ahora = ahora.plus(duracion);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(java.time.ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return ahora;
+        }
+    }
+}